@@ -0,0 +1,77 @@
+package com.amazon.aws.benchmark;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * Local stand-in for a finished Bedrock batch-inference job. Every input shard {@code name.jsonl} gets an output
+ * file {@code name.jsonl.out} with the same recordId and modelInput and a canned modelOutput, laid out the way
+ * Bedrock writes them. A share of records can be written as failed, to exercise the on-demand fallback.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.amazon.aws.benchmark.BatchOutputStub \
+ *     --input batch/input --output batch/output --response-chars 2048 --error-rate 0.01
+ * </pre>
+ */
+public final class BatchOutputStub {
+
+    private BatchOutputStub() {
+    }
+
+    public static int write(Path inputDirectory, Path outputDirectory, int responseChars, double errorRate)
+            throws IOException {
+        JSONObject modelOutput = new JSONObject(RecordGenerator.anthropicResponse(responseChars));
+        Files.createDirectories(outputDirectory);
+
+        List<Path> shards;
+        try (Stream<Path> files = Files.list(inputDirectory)) {
+            shards = files.filter(file -> file.getFileName().toString().endsWith(".jsonl")).sorted().toList();
+        }
+        int records = 0;
+        for (Path shard : shards) {
+            Path output = outputDirectory.resolve(shard.getFileName() + ".out");
+            try (BufferedReader reader = Files.newBufferedReader(shard, StandardCharsets.UTF_8);
+                 BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    JSONObject record = new JSONObject(line);
+                    if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                        record.put("error", new JSONObject()
+                            .put("errorCode", 400)
+                            .put("errorMessage", "Stand-in failure"));
+                    } else {
+                        record.put("modelOutput", modelOutput);
+                    }
+                    writer.write(record.toString());
+                    writer.newLine();
+                    records++;
+                }
+            }
+        }
+        return records;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = BedrockStub.parseOptions(args);
+        int records = write(
+            Paths.get(options.getOrDefault("input", "batch/input")),
+            Paths.get(options.getOrDefault("output", "batch/output")),
+            Integer.parseInt(options.getOrDefault("response-chars", "2048")),
+            Double.parseDouble(options.getOrDefault("error-rate", "0")));
+        System.out.println("Wrote " + records + " stand-in batch outputs");
+    }
+}
@@ -0,0 +1,231 @@
+package com.amazon.aws.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Local stand-in for the Bedrock runtime InvokeModel and InvokeModelWithResponseStream APIs.
+ * Latency follows a log-normal distribution given by its median and p99, a share of calls can be throttled with
+ * the same 429 ThrottlingException Bedrock returns, and the response text has a configurable size.
+ * With {@code --throttle-model} only calls to that model are throttled, to exercise model fallback.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.amazon.aws.benchmark.BedrockStub \
+ *     --port 9000 --median-ms 800 --p99-ms 4000 --throttle-rate 0.05 --response-chars 2048
+ * </pre>
+ * Then point the application at it with {@code BEDROCK_ENDPOINT=http://127.0.0.1:9000}.
+ */
+public class BedrockStub implements AutoCloseable {
+
+    // z-score of the 99th percentile of a standard normal distribution
+    private static final double Z_99 = 2.326;
+    private static final int STREAM_CHUNK_CHARS = 16;
+
+    private final HttpServer server;
+    private final String responseText;
+    private final byte[] response;
+    private final double mu;
+    private final double sigma;
+    private final double throttleRate;
+    private final String throttleModel;
+    private final long chunkDelayMillis;
+
+    private final AtomicLong invocations = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    public BedrockStub(int port, int responseChars) throws IOException {
+        this(port, responseChars, 0, 0, 0.0, 0);
+    }
+
+    public BedrockStub(int port, int responseChars, long medianMillis, long p99Millis, double throttleRate,
+                       long chunkDelayMillis) throws IOException {
+        this(port, responseChars, medianMillis, p99Millis, throttleRate, null, chunkDelayMillis);
+    }
+
+    public BedrockStub(int port, int responseChars, long medianMillis, long p99Millis, double throttleRate,
+                       String throttleModel, long chunkDelayMillis) throws IOException {
+        if (p99Millis < medianMillis) {
+            throw new IllegalArgumentException("'p99Millis' must not be lower than 'medianMillis'");
+        }
+        this.responseText = RecordGenerator.record(responseChars).substring(0, responseChars);
+        this.response = RecordGenerator.anthropicResponse(responseChars).getBytes(StandardCharsets.UTF_8);
+        this.mu = medianMillis > 0 ? Math.log(medianMillis) : Double.NEGATIVE_INFINITY;
+        this.sigma = medianMillis > 0 ? (Math.log(p99Millis) - mu) / Z_99 : 0;
+        this.throttleRate = throttleRate;
+        this.throttleModel = throttleModel;
+        this.chunkDelayMillis = chunkDelayMillis;
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        this.server.createContext("/model/", this::handle);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.start();
+    }
+
+    public URI endpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    public long invocations() {
+        return invocations.get();
+    }
+
+    public long throttled() {
+        return throttled.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            body.transferTo(OutputStream.nullOutputStream());
+        }
+        invocations.incrementAndGet();
+
+        // The path is /model/{modelId}/invoke or /model/{modelId}/invoke-with-response-stream
+        String path = exchange.getRequestURI().getPath();
+        boolean throttleable = throttleModel == null || path.startsWith("/model/" + throttleModel + "/");
+        if (throttleable && ThreadLocalRandom.current().nextDouble() < throttleRate) {
+            throttled.incrementAndGet();
+            byte[] error = new JSONObject()
+                .put("message", "Too many requests, please wait before trying again.")
+                .toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.getResponseHeaders().add("x-amzn-ErrorType", "ThrottlingException");
+            exchange.sendResponseHeaders(429, error.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(error);
+            }
+            return;
+        }
+
+        sleep(sampleLatency());
+        if (path.endsWith("/invoke-with-response-stream")) {
+            stream(exchange);
+        } else {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        }
+    }
+
+    private void stream(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "application/vnd.amazon.eventstream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(chunkEvent(new JSONObject().put("type", "message_start")));
+            for (int i = 0; i < responseText.length(); i += STREAM_CHUNK_CHARS) {
+                String text = responseText.substring(i, Math.min(responseText.length(), i + STREAM_CHUNK_CHARS));
+                out.write(chunkEvent(new JSONObject()
+                    .put("type", "content_block_delta")
+                    .put("index", 0)
+                    .put("delta", new JSONObject().put("type", "text_delta").put("text", text))));
+                out.flush();
+                sleep(chunkDelayMillis);
+            }
+            out.write(chunkEvent(new JSONObject().put("type", "message_stop")));
+        }
+    }
+
+    private long sampleLatency() {
+        if (sigma == 0) {
+            return mu == Double.NEGATIVE_INFINITY ? 0 : Math.round(Math.exp(mu));
+        }
+        return Math.round(Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    // Encodes one "chunk" event in the binary application/vnd.amazon.eventstream framing
+    private static byte[] chunkEvent(JSONObject chunk) {
+        String encoded = Base64.getEncoder().encodeToString(chunk.toString().getBytes(StandardCharsets.UTF_8));
+        byte[] payload = new JSONObject().put("bytes", encoded).toString().getBytes(StandardCharsets.UTF_8);
+
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        writeHeader(headers, ":event-type", "chunk");
+        writeHeader(headers, ":content-type", "application/json");
+        writeHeader(headers, ":message-type", "event");
+        byte[] headerBytes = headers.toByteArray();
+
+        int totalLength = 12 + headerBytes.length + payload.length + 4;
+        ByteBuffer message = ByteBuffer.allocate(totalLength);
+        message.putInt(totalLength);
+        message.putInt(headerBytes.length);
+        message.putInt((int) crc32(message.array(), 0, 8));
+        message.put(headerBytes);
+        message.put(payload);
+        message.putInt((int) crc32(message.array(), 0, totalLength - 4));
+        return message.array();
+    }
+
+    private static void writeHeader(ByteArrayOutputStream out, String name, String value) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(nameBytes.length);
+        out.writeBytes(nameBytes);
+        out.write(7); // header value type: string
+        out.write(valueBytes.length >> 8);
+        out.write(valueBytes.length);
+        out.writeBytes(valueBytes);
+    }
+
+    private static long crc32(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return crc.getValue();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        BedrockStub stub = new BedrockStub(
+            Integer.parseInt(options.getOrDefault("port", "9000")),
+            Integer.parseInt(options.getOrDefault("response-chars", "2048")),
+            Long.parseLong(options.getOrDefault("median-ms", "800")),
+            Long.parseLong(options.getOrDefault("p99-ms", "4000")),
+            Double.parseDouble(options.getOrDefault("throttle-rate", "0")),
+            options.get("throttle-model"),
+            Long.parseLong(options.getOrDefault("chunk-delay-ms", "0")));
+        System.out.println("Bedrock stub listening on " + stub.endpoint());
+    }
+
+    static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected '--name value' pairs but got: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+}
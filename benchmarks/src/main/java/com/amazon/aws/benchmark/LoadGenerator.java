@@ -0,0 +1,152 @@
+package com.amazon.aws.benchmark;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Open-loop load generator for /api/generate and /api/upload. Requests are fired at a fixed rate regardless of
+ * how fast the service answers, so queueing shows up in the latency percentiles instead of lowering the load.
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.amazon.aws.benchmark.LoadGenerator \
+ *     --url http://127.0.0.1:8080 --endpoint generate --rps 5 --duration-s 60 --record-chars 65536
+ * java -cp target/benchmarks.jar com.amazon.aws.benchmark.LoadGenerator \
+ *     --endpoint upload --rps 2 --word-file 123.docx --excel-file 123.xlsx
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private final HttpClient client = HttpClient.newBuilder()
+        .executor(Executors.newVirtualThreadPerTaskExecutor())
+        .connectTimeout(Duration.ofSeconds(10))
+        .build();
+
+    private final List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicLong errors = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = BedrockStub.parseOptions(args);
+        String baseUrl = options.getOrDefault("url", "http://127.0.0.1:8080");
+        String endpoint = options.getOrDefault("endpoint", "generate");
+        double rps = Double.parseDouble(options.getOrDefault("rps", "1"));
+        long durationSeconds = Long.parseLong(options.getOrDefault("duration-s", "60"));
+
+        HttpRequest request;
+        switch (endpoint) {
+            case "generate":
+            case "generate/async":
+                String record = RecordGenerator.record(Integer.parseInt(options.getOrDefault("record-chars", "65536")));
+                request = HttpRequest.newBuilder(URI.create(baseUrl + "/api/" + endpoint))
+                    .header("Content-Type", "application/json")
+                    .timeout(Duration.ofMinutes(10))
+                    .POST(HttpRequest.BodyPublishers.ofString(new JSONObject().put("prompt", record).toString()))
+                    .build();
+                break;
+            case "upload":
+                request = uploadRequest(baseUrl, Path.of(options.get("word-file")), Path.of(options.get("excel-file")));
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported endpoint: " + endpoint);
+        }
+
+        new LoadGenerator().run(request, rps, durationSeconds);
+    }
+
+    private void run(HttpRequest request, double rps, long durationSeconds) throws InterruptedException {
+        List<CompletableFuture<Void>> inFlight = Collections.synchronizedList(new ArrayList<>());
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        long periodNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rps);
+
+        long start = System.nanoTime();
+        scheduler.scheduleAtFixedRate(() -> inFlight.add(send(request)), 0, periodNanos, TimeUnit.NANOSECONDS);
+        scheduler.awaitTermination(durationSeconds, TimeUnit.SECONDS);
+        scheduler.shutdownNow();
+
+        List<CompletableFuture<Void>> sent;
+        synchronized (inFlight) {
+            sent = new ArrayList<>(inFlight);
+        }
+        CompletableFuture.allOf(sent.toArray(new CompletableFuture[0])).exceptionally(e -> null).join();
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        report(sent.size(), elapsedSeconds);
+    }
+
+    private CompletableFuture<Void> send(HttpRequest request) {
+        long sentAt = System.nanoTime();
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+            .handle((response, e) -> {
+                latencies.add(System.nanoTime() - sentAt);
+                // The controllers answer failures with 200 and an error message as the body
+                if (e != null || response.statusCode() != 200 || response.body().startsWith("Error")
+                    || response.body().startsWith("Failed")) {
+                    errors.incrementAndGet();
+                }
+                return null;
+            });
+    }
+
+    private void report(int sent, double elapsedSeconds) {
+        List<Long> sorted;
+        synchronized (latencies) {
+            sorted = new ArrayList<>(latencies);
+        }
+        Collections.sort(sorted);
+
+        System.out.printf("requests:   %d sent, %d completed, %d errors%n", sent, sorted.size(), errors.get());
+        System.out.printf("throughput: %.2f req/s over %.1f s%n", sorted.size() / elapsedSeconds, elapsedSeconds);
+        System.out.printf("latency:    p50 %d ms, p95 %d ms, p99 %d ms, max %d ms%n",
+            percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99), percentile(sorted, 1.0));
+    }
+
+    private static long percentile(List<Long> sorted, double quantile) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sorted.size()) - 1;
+        return TimeUnit.NANOSECONDS.toMillis(sorted.get(Math.max(0, index)));
+    }
+
+    private static HttpRequest uploadRequest(String baseUrl, Path wordFile, Path excelFile) throws IOException {
+        String boundary = "----bedrock-load-" + UUID.randomUUID();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writePart(body, boundary, "wordFile", wordFile);
+        writePart(body, boundary, "excelFile", excelFile);
+        body.writeBytes(("--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
+
+        return HttpRequest.newBuilder(URI.create(baseUrl + "/api/upload"))
+            .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+            .timeout(Duration.ofMinutes(10))
+            .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))
+            .build();
+    }
+
+    private static void writePart(ByteArrayOutputStream body, String boundary, String name, Path file) throws IOException {
+        String header = "--" + boundary + "\r\n"
+            + "Content-Disposition: form-data; name=\"" + name + "\"; filename=\"" + file.getFileName() + "\"\r\n"
+            + "Content-Type: application/octet-stream\r\n\r\n";
+        body.writeBytes(header.getBytes(StandardCharsets.UTF_8));
+        body.writeBytes(Files.readAllBytes(file));
+        body.writeBytes("\r\n".getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,64 @@
+package com.amazon.aws.benchmark;
+
+import com.amazon.aws.ClaudeContentGeneration;
+import io.github.cdimascio.dotenv.Dotenv;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end generateContent against a local Bedrock stub: segmentation, preprocessing, request building,
+ * HTTP round-trips, response parsing and the final reduce call, without network latency or cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PipelineBenchmark {
+
+    @Param({"65536", "1048576"})
+    public int recordChars;
+
+    private BedrockStub stub;
+    private ClaudeContentGeneration contentGeneration;
+    private String record;
+
+    @Setup
+    public void setUp() throws IOException {
+        stub = new BedrockStub(0, 2048);
+
+        Path directory = Files.createTempDirectory("bedrock-benchmark");
+        Files.writeString(directory.resolve("prompt.txt"), RecordGenerator.readClasspath("/prompt.txt"), StandardCharsets.UTF_8);
+        Files.writeString(directory.resolve("preprompt.txt"), RecordGenerator.readClasspath("/preprompt.txt"), StandardCharsets.UTF_8);
+        Files.writeString(directory.resolve(".env"), String.join("\n",
+            "AWS_ACCESS_KEY_ID=benchmark",
+            "AWS_SECRET_ACCESS_KEY=benchmark",
+            "AWS_REGION=us-west-2",
+            "MODEL_NAME=anthropic.claude-v2",
+            "BEDROCK_ENDPOINT=" + stub.endpoint(),
+            "RESOURCE_DIR=" + directory,
+            "PROCESSED_PROMPT_FILE=",
+            // Every iteration must reach the stub, so keep the summary cache empty
+            "SUMMARY_CACHE_SIZE=0"), StandardCharsets.UTF_8);
+
+        contentGeneration = new ClaudeContentGeneration(Dotenv.configure().directory(directory.toString()).load());
+        record = RecordGenerator.record(recordChars);
+    }
+
+    @TearDown
+    public void tearDown() {
+        contentGeneration.shutdown();
+        stub.close();
+    }
+
+    @Benchmark
+    public String generateContent() {
+        return contentGeneration.generateContent(record);
+    }
+}
@@ -0,0 +1,55 @@
+package com.amazon.aws.benchmark;
+
+import com.amazon.aws.util.RecordSegmenter;
+import com.amazon.aws.util.TextPreprocessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PreprocessingBenchmark {
+
+    @Param({"1024", "65536", "1048576", "33554432"})
+    public int recordChars;
+
+    private String record;
+    private RecordSegmenter segmenter;
+    private TextPreprocessor dropEducation;
+    private TextPreprocessor stripWhitespace;
+    private TextPreprocessor pipeline;
+
+    @Setup
+    public void setUp() {
+        record = RecordGenerator.record(recordChars);
+        segmenter = RecordSegmenter.forModel("anthropic.claude-v2", 0);
+        dropEducation = new TextPreprocessor(List.of(TextPreprocessor.dropEducationSections()));
+        stripWhitespace = new TextPreprocessor(List.of(TextPreprocessor.stripWhitespace()));
+        pipeline = TextPreprocessor.defaultPipeline();
+    }
+
+    @Benchmark
+    public List<String> splitIntoSegments() {
+        return segmenter.segment(record);
+    }
+
+    @Benchmark
+    public String removeEducationSections() {
+        return dropEducation.process(record);
+    }
+
+    @Benchmark
+    public String removeAllWhitespace() {
+        return stripWhitespace.process(record);
+    }
+
+    @Benchmark
+    public String preprocessingPipeline() {
+        return pipeline.process(record);
+    }
+}
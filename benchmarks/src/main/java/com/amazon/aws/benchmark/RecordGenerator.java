@@ -0,0 +1,60 @@
+package com.amazon.aws.benchmark;
+
+import com.amazon.aws.util.RecordSegmenter;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Builds nursing records of a given size by cycling through the entries of sample.txt, so the benchmarks see the
+ * same entry lengths, timestamps and 衛教指導 density as real exports.
+ */
+public final class RecordGenerator {
+
+    private static final List<String> SAMPLE_ENTRIES = RecordSegmenter.splitEntries(readClasspath("/sample.txt"));
+
+    private RecordGenerator() {
+    }
+
+    public static String record(int targetChars) {
+        StringBuilder record = new StringBuilder(targetChars + 2048);
+        int i = 0;
+        while (record.length() < targetChars) {
+            record.append(SAMPLE_ENTRIES.get(i % SAMPLE_ENTRIES.size()));
+            i++;
+        }
+        return record.toString();
+    }
+
+    public static String anthropicResponse(int textChars) {
+        JSONObject text = new JSONObject()
+            .put("type", "text")
+            .put("text", record(textChars).substring(0, textChars));
+        return new JSONObject()
+            .put("id", "msg_bdrk_benchmark")
+            .put("type", "message")
+            .put("role", "assistant")
+            .put("model", "claude-instant-1.2")
+            .put("stop_sequence", JSONObject.NULL)
+            .put("usage", new JSONObject().put("input_tokens", textChars).put("output_tokens", textChars / 2))
+            .put("content", new JSONArray().put(text))
+            .put("stop_reason", "end_turn")
+            .toString();
+    }
+
+    public static String readClasspath(String name) {
+        try (InputStream in = RecordGenerator.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IllegalStateException("Missing classpath resource: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
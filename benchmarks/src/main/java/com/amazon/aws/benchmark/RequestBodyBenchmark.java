@@ -0,0 +1,51 @@
+package com.amazon.aws.benchmark;
+
+import com.amazon.aws.util.BedrockRequestBody;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestBodyBenchmark {
+
+    @Param({"1024", "65536", "1048576", "16777216"})
+    public int promptChars;
+
+    @Param({"anthropic.claude-v2", "anthropic.claude-3-haiku-20240307-v1:0"})
+    public String modelId;
+
+    private String prompt;
+
+    @Setup
+    public void setUp() {
+        prompt = RecordGenerator.record(promptChars);
+    }
+
+    @Benchmark
+    public String build() {
+        return builder().build();
+    }
+
+    @Benchmark
+    public byte[] buildBytes() {
+        return builder().buildBytes();
+    }
+
+    private BedrockRequestBody.BedrockRequestBodyBuilder builder() {
+        return BedrockRequestBody.builder()
+            .withModelId(modelId)
+            .withPrompt(prompt)
+            .withInferenceParameter("max_tokens_to_sample", 2048)
+            .withInferenceParameter("temperature", 0.5)
+            .withInferenceParameter("top_k", 250)
+            .withInferenceParameter("top_p", 1)
+            .withRole("user")
+            .withContentType("application/json")
+            .withAccept("application/json");
+    }
+}
@@ -0,0 +1,39 @@
+package com.amazon.aws.benchmark;
+
+import com.amazon.aws.util.ResponseParser;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseParserBenchmark {
+
+    @Param({"1024", "8192", "65536", "1048576"})
+    public int textChars;
+
+    private String response;
+    private byte[] responseBytes;
+
+    @Setup
+    public void setUp() {
+        response = RecordGenerator.anthropicResponse(textChars);
+        responseBytes = response.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public String extractTextFromResponse() {
+        return ResponseParser.extractTextFromResponse(response);
+    }
+
+    // The production path, parsing the SDK response bytes without decoding them to a String first
+    @Benchmark
+    public String parseBytes() {
+        return ResponseParser.parse("anthropic.claude-v2", responseBytes).text();
+    }
+}
@@ -0,0 +1,74 @@
+package com.amazon.aws.service;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to read one multi-sheet .xlsx workbook, with its sheets parsed one after another ({@code parseThreads=1})
+ * or in parallel. It lives in the service package because ExcelStreamReader is package-private.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class XlsxParseBenchmark {
+
+    @Param({"8"})
+    public int sheets;
+
+    @Param({"20000"})
+    public int rowsPerSheet;
+
+    @Param({"1", "4"})
+    public int parseThreads;
+
+    // Default of UPLOAD_SECTION_BUFFER_CHARS
+    @Param({"1000000"})
+    public long sectionBufferChars;
+
+    private Path workbook;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() throws Exception {
+        workbook = Files.createTempFile("xlsx-parse-", ".xlsx");
+        try (SXSSFWorkbook generated = new SXSSFWorkbook(100); OutputStream out = Files.newOutputStream(workbook)) {
+            for (int s = 0; s < sheets; s++) {
+                Sheet sheet = generated.createSheet("sheet" + s);
+                for (int r = 0; r < rowsPerSheet; r++) {
+                    Row row = sheet.createRow(r);
+                    row.createCell(0).setCellValue("2024-05-" + (10 + r % 20));
+                    row.createCell(1).setCellValue("生命徵象穩定，持續觀察 " + r);
+                    row.createCell(2).setCellValue(r * 0.5);
+                }
+            }
+            generated.write(out);
+            generated.dispose();
+        }
+        executor = Executors.newFixedThreadPool(parseThreads);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        Files.deleteIfExists(workbook);
+    }
+
+    @Benchmark
+    public void readXlsx(Blackhole blackhole) throws Exception {
+        ExcelStreamReader.readXlsx(workbook.toFile(), sheetIndex -> blackhole::consume, sectionBufferChars, executor)
+            .join();
+    }
+}
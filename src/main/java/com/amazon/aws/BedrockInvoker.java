@@ -0,0 +1,441 @@
+package com.amazon.aws;
+
+import com.amazon.aws.util.AdaptiveConcurrencyLimiter;
+import com.amazon.aws.util.BedrockRequestBody;
+import com.amazon.aws.util.ModelRoute;
+import com.amazon.aws.util.OutputBudget;
+import com.amazon.aws.util.PromptTooLargeException;
+import com.amazon.aws.util.ResponseParser;
+import com.amazon.aws.util.RetryBackoff;
+import io.github.cdimascio.dotenv.Dotenv;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryPolicy;
+import software.amazon.awssdk.http.async.SdkAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClientBuilder;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelWithResponseStreamResponseHandler;
+
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// 所有 Bedrock 呼叫的出口：依路由選擇模型、每個模型各自的並行上限、退避重試與備援，以及呼叫層級的指標與 span
+class BedrockInvoker {
+
+    private static final Logger logger = LoggerFactory.getLogger(BedrockInvoker.class);
+
+    private final BedrockRuntimeAsyncClient bedrockAsyncClient;
+    private final Map<String, ModelClient> models = new LinkedHashMap<>();
+    private final RetryBackoff retryBackoff;
+    private final OutputBudget outputBudget;
+    private final Tracer tracer;
+
+    // 實際回應的模型與摘要文字，改用備援模型時模型與路由的主要模型不同
+    record Completion(String model, String text) {
+    }
+
+    BedrockInvoker(Dotenv dotenv, List<ModelRoute> routes, OutputBudget outputBudget, MeterRegistry meterRegistry,
+                   Tracer tracer) {
+        String accessKeyId = dotenv.get("AWS_ACCESS_KEY_ID");
+        String secretAccessKey = dotenv.get("AWS_SECRET_ACCESS_KEY");
+        String region = dotenv.get("AWS_REGION");
+        String endpoint = dotenv.get("BEDROCK_ENDPOINT", "");
+        int initialConcurrency = Integer.parseInt(dotenv.get("BEDROCK_INITIAL_CONCURRENCY", "10"));
+        int maxConcurrency = Integer.parseInt(dotenv.get("BEDROCK_MAX_CONCURRENCY", "100"));
+        int maxRetries = Integer.parseInt(dotenv.get("BEDROCK_MAX_RETRIES", "6"));
+        long retryBaseMillis = Long.parseLong(dotenv.get("BEDROCK_RETRY_BASE_MS", "500"));
+        long retryCapMillis = Long.parseLong(dotenv.get("BEDROCK_RETRY_CAP_MS", "20000"));
+
+        AwsBasicCredentials awsCreds = AwsBasicCredentials.create(accessKeyId, secretAccessKey);
+
+        // 重試由 RetryBackoff 處理，讓 throttling 能回饋給 AdaptiveConcurrencyLimiter
+        ClientOverrideConfiguration overrideConfiguration = ClientOverrideConfiguration.builder()
+            .retryPolicy(RetryPolicy.none())
+            .build();
+
+        // 所有呼叫都走非阻塞的 Netty NIO client，等待回應時不佔用任何執行緒
+        SdkAsyncHttpClient asyncHttpClient = NettyNioAsyncHttpClient.builder().maxConcurrency(10000).build();
+
+        BedrockRuntimeAsyncClientBuilder asyncClientBuilder = BedrockRuntimeAsyncClient.builder()
+            .region(Region.of(region))
+            .credentialsProvider(StaticCredentialsProvider.create(awsCreds))
+            .overrideConfiguration(overrideConfiguration)
+            .httpClient(asyncHttpClient);
+
+        // BEDROCK_ENDPOINT 可指向本機的 Bedrock stub，供 benchmark 與壓力測試使用
+        if (!endpoint.isBlank()) {
+            asyncClientBuilder.endpointOverride(URI.create(endpoint));
+        }
+        this.bedrockAsyncClient = asyncClientBuilder.build();
+
+        // 依 throttling 與延遲動態調整同時呼叫 Bedrock 的數量 (AIMD)，每個模型各自計算；失敗的呼叫以 jitter 指數退避重試。
+        // 名額多半在 Netty 的執行緒上歸還，等待中的呼叫改在虛擬執行緒上取得名額並送出下一個請求，不佔用 event loop
+        for (ModelRoute route : routes) {
+            for (String model : route.models()) {
+                models.computeIfAbsent(model, key -> new ModelClient(key,
+                    new AdaptiveConcurrencyLimiter(Math.min(initialConcurrency, maxConcurrency), 1, maxConcurrency,
+                        Thread::startVirtualThread),
+                    meterRegistry));
+            }
+        }
+        this.retryBackoff = new RetryBackoff(maxRetries, retryBaseMillis, retryCapMillis);
+        this.outputBudget = outputBudget;
+        this.tracer = tracer;
+    }
+
+    // 依模型列出並行上限與重試次數
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        models.forEach((model, client) -> {
+            Map<String, Object> modelStats = client.limiter.stats();
+            modelStats.put("retries", (long) client.retries.count());
+            stats.put(model, modelStats);
+        });
+        return stats;
+    }
+
+    void close() {
+        bedrockAsyncClient.close();
+    }
+
+    // 完成回呼在 Netty 執行緒上執行，沒有目前的 span，因此由呼叫端傳入
+    CompletableFuture<Completion> invoke(ModelRoute route, String completePrompt, Span parent) {
+        return invokeWithRetryAsync(route, route.primaryModel(), completePrompt, parent, 0);
+    }
+
+    // 每段輸出一到達就交給 deltas，完成時回傳完整的摘要；取消回傳的 future 會中止進行中的串流，之後也不再重試
+    CompletableFuture<Completion> stream(ModelRoute route, String completePrompt, Consumer<String> deltas, Span parent) {
+        StreamCall call = new StreamCall();
+        CompletableFuture<Completion> result =
+            streamWithRetry(route, route.primaryModel(), completePrompt, deltas, parent, 0, call);
+        result.whenComplete((completion, e) -> {
+            if (result.isCancelled()) {
+                call.cancel();
+            }
+        });
+        return result;
+    }
+
+    private CompletableFuture<Completion> invokeWithRetryAsync(ModelRoute route, String model, String completePrompt,
+                                                               Span parent, int attempt) {
+        ModelClient client = models.get(model);
+        SdkBytes body;
+        try {
+            body = requestBody(model, route.parameters(), completePrompt);
+        } catch (PromptTooLargeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        InvokeModelRequest request = InvokeModelRequest.builder()
+            .modelId(model)
+            .body(body)
+            .contentType("application/json")  // Ensure contentType is set
+            .accept("application/json")  // Ensure accept is set
+            .build();
+        long queued = System.nanoTime();
+        return client.limiter.acquireAsync()
+            .thenCompose(permit -> {
+                long start = System.nanoTime();
+                Span span = startCallSpan(parent, model, "invoke", attempt, start - queued);
+                return bedrockAsyncClient.invokeModel(request)
+                    .whenComplete((response, e) -> finishCall(permit, model, "invoke", start, e, span));
+            })
+            .handle((response, e) -> {
+                if (e == null) {
+                    return CompletableFuture.completedFuture(
+                        new Completion(model, parse(model, response.body().asByteArrayUnsafe())));
+                }
+                if (attempt >= retryBackoff.getMaxRetries() || !RetryBackoff.isRetryable(e)) {
+                    return CompletableFuture.<Completion>failedFuture(e);
+                }
+                String next = nextModel(route, model, e);
+                if (!next.equals(model)) {
+                    return invokeWithRetryAsync(route, next, completePrompt, parent, attempt + 1);
+                }
+                long delay = retryBackoff.delayMillis(attempt);
+                client.retries.increment();
+                logger.warn("Bedrock call failed ({}), retry {} in {} ms", RetryBackoff.unwrap(e).getMessage(), attempt + 1, delay);
+                return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                    .thenCompose(ignored -> invokeWithRetryAsync(route, model, completePrompt, parent, attempt + 1));
+            })
+            .thenCompose(Function.identity());
+    }
+
+    // 尚未推送任何內容前的失敗與一般呼叫相同：throttling 時改用備援模型或退避重試；
+    // 已推送的內容無法收回，開始推送之後的失敗直接結束串流
+    private CompletableFuture<Completion> streamWithRetry(ModelRoute route, String model, String completePrompt,
+                                                          Consumer<String> deltas, Span parent, int attempt,
+                                                          StreamCall call) {
+        ModelClient client = models.get(model);
+        SdkBytes body;
+        try {
+            body = requestBody(model, route.parameters(), completePrompt);
+        } catch (PromptTooLargeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        StringBuilder streamed = new StringBuilder();
+        AtomicBoolean delivered = new AtomicBoolean();
+        // 串流的長度取決於輸出，並行上限以第一段輸出到達的時間判斷延遲
+        AtomicReference<AdaptiveConcurrencyLimiter.Permit> streamPermit = new AtomicReference<>();
+        InvokeModelWithResponseStreamRequest request = InvokeModelWithResponseStreamRequest.builder()
+            .modelId(model)
+            .body(body)
+            .contentType("application/json")
+            .accept("application/json")
+            .build();
+
+        InvokeModelWithResponseStreamResponseHandler handler = InvokeModelWithResponseStreamResponseHandler.builder()
+            .subscriber(InvokeModelWithResponseStreamResponseHandler.Visitor.builder()
+                .onChunk(chunk -> {
+                    AdaptiveConcurrencyLimiter.Permit permit = streamPermit.get();
+                    if (permit != null) {
+                        permit.onFirstByte();
+                    }
+                    String text = ResponseParser.extractTextFromStreamChunk(model, chunk.bytes().asByteArrayUnsafe());
+                    if (!text.isEmpty()) {
+                        delivered.set(true);
+                        streamed.append(text);
+                        deltas.accept(text);
+                    }
+                })
+                .build())
+            .build();
+
+        long queued = System.nanoTime();
+        return client.limiter.acquireAsync()
+            .thenCompose(permit -> {
+                if (call.isCancelled()) {
+                    permit.onDropped();
+                    return CompletableFuture.failedFuture(new CancellationException("Stream cancelled"));
+                }
+                streamPermit.set(permit);
+                long start = System.nanoTime();
+                Span span = startCallSpan(parent, model, "stream", attempt, start - queued);
+                return call.start(bedrockAsyncClient.invokeModelWithResponseStream(request, handler))
+                    .whenComplete((ignored, e) -> finishCall(permit, model, "stream", start, e, span));
+            })
+            .handle((ignored, e) -> {
+                if (e == null) {
+                    return CompletableFuture.completedFuture(new Completion(model, streamed.toString()));
+                }
+                if (delivered.get() || call.isCancelled() || attempt >= retryBackoff.getMaxRetries()
+                    || !RetryBackoff.isRetryable(e)) {
+                    return CompletableFuture.<Completion>failedFuture(e);
+                }
+                String next = nextModel(route, model, e);
+                if (!next.equals(model)) {
+                    return streamWithRetry(route, next, completePrompt, deltas, parent, attempt + 1, call);
+                }
+                long delay = retryBackoff.delayMillis(attempt);
+                client.retries.increment();
+                logger.warn("Bedrock stream failed before the first delta ({}), retry {} in {} ms",
+                    RetryBackoff.unwrap(e).getMessage(), attempt + 1, delay);
+                return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                    .thenCompose(retry -> streamWithRetry(route, model, completePrompt, deltas, parent, attempt + 1, call));
+            })
+            .thenCompose(Function.identity());
+    }
+
+    // 主要模型被 throttling 時改用備援模型，備援模型也被 throttling 時留在備援模型上退避重試
+    private String nextModel(ModelRoute route, String model, Throwable error) {
+        if (!route.hasFallback() || !model.equals(route.primaryModel()) || !RetryBackoff.isThrottling(error)) {
+            return model;
+        }
+        models.get(model).fallbacks(route.fallbackModel()).increment();
+        logger.warn("Model {} is throttled, falling back to {}", model, route.fallbackModel());
+        return route.fallbackModel();
+    }
+
+    // 歸還並行名額，並依結果記錄這次呼叫的延遲與 span
+    private void finishCall(AdaptiveConcurrencyLimiter.Permit permit, String model, String operation, long startNanos,
+                            Throwable error, Span span) {
+        String outcome;
+        if (error == null) {
+            permit.onSuccess();
+            outcome = "success";
+        } else if (RetryBackoff.isThrottling(error)) {
+            permit.onThrottled();
+            outcome = "throttled";
+        } else {
+            permit.onDropped();
+            outcome = "error";
+        }
+        models.get(model).callTimer(operation, outcome).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        Spans.end(span.tag("outcome", outcome), error);
+    }
+
+    private Span startCallSpan(Span parent, String model, String operation, int attempt, long waitNanos) {
+        return Spans.start(tracer, "bedrock." + operation, parent)
+            .tag("model", model)
+            .tag("attempt", attempt)
+            .tag("limiter.wait.ms", TimeUnit.NANOSECONDS.toMillis(waitNanos));
+    }
+
+    // 直接由回應位元組解析，格式不符時丟出 ResponseParseException，錯誤不會被當成摘要
+    String parse(String model, byte[] body) {
+        ResponseParser.ModelResponse parsed = ResponseParser.parse(model, body);
+        // 未回報用量的回應不計入
+        if (parsed.inputTokens() > 0 || parsed.outputTokens() > 0) {
+            ModelClient client = models.get(model);
+            client.inputTokens.record(parsed.inputTokens());
+            client.outputTokens.record(parsed.outputTokens());
+        }
+        logger.debug("Model {} usage: {} input tokens, {} output tokens, stop reason {}",
+            model, parsed.inputTokens(), parsed.outputTokens(), parsed.stopReason());
+        return parsed.text();
+    }
+
+    // 輸出上限依預估的輸入 token 數與預期的摘要長度決定，*_INFERENCE_PARAMETERS 明確設定時以設定為準；
+    // 放不進模型 context 的提示在呼叫 Bedrock 之前就以 PromptTooLargeException 拒絕，非同步的呼叫以失敗的 future 回傳
+    SdkBytes requestBody(String model, Map<String, Object> parameters, String completePrompt) {
+        ModelClient client = models.get(model);
+        int inputTokens = outputBudget.inputTokens(completePrompt);
+        if (!outputBudget.fits(model, inputTokens)) {
+            client.rejectedPrompts.increment();
+        } else {
+            client.estimatedInputTokens.record(inputTokens);
+        }
+        BedrockRequestBody.BedrockRequestBodyBuilder builder = BedrockRequestBody.builder()
+            .withModelId(model)
+            .withPrompt(completePrompt)
+            .withRole("user")
+            .withContentType("application/json")
+            .withAccept("application/json");
+        outputBudget.parameters(model, parameters, inputTokens).forEach(builder::withInferenceParameter);
+
+        // 直接取得 UTF-8 位元組，不經過中間的 String，也不依賴平台預設編碼
+        return SdkBytes.fromByteArrayUnsafe(builder.buildBytes());
+    }
+
+    // 一次串流 (包括重試) 目前進行中的 SDK 呼叫；取消後進行中的呼叫被中止，尚未送出的重試不再送出
+    private static final class StreamCall {
+
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final AtomicReference<CompletableFuture<?>> current = new AtomicReference<>();
+
+        <T> CompletableFuture<T> start(CompletableFuture<T> sdkCall) {
+            current.set(sdkCall);
+            if (cancelled.get()) {
+                sdkCall.cancel(true);
+            }
+            return sdkCall;
+        }
+
+        boolean isCancelled() {
+            return cancelled.get();
+        }
+
+        void cancel() {
+            cancelled.set(true);
+            CompletableFuture<?> sdkCall = current.get();
+            if (sdkCall != null) {
+                sdkCall.cancel(true);
+            }
+        }
+    }
+
+    // 每個模型各自的並行上限與指標，某個模型被 throttling 不會降低其他模型的上限；
+    // 依呼叫結果而定的 meter 第一次用到時註冊一次，之後每次呼叫只查表，不再經過 builder 與 registry
+    private static final class ModelClient {
+
+        private final String model;
+        private final MeterRegistry meterRegistry;
+        private final Map<String, Timer> callTimers = new ConcurrentHashMap<>();
+        private final Map<String, Counter> fallbacks = new ConcurrentHashMap<>();
+
+        final AdaptiveConcurrencyLimiter limiter;
+        final Counter retries;
+        final DistributionSummary inputTokens;
+        final DistributionSummary outputTokens;
+        final DistributionSummary estimatedInputTokens;
+        final Counter rejectedPrompts;
+
+        ModelClient(String model, AdaptiveConcurrencyLimiter limiter, MeterRegistry meterRegistry) {
+            this.model = model;
+            this.meterRegistry = meterRegistry;
+            this.limiter = limiter;
+            this.retries = Counter.builder("bedrock.retries")
+                .description("Bedrock calls retried after throttling or a transient error")
+                .tag("model", model)
+                .register(meterRegistry);
+            FunctionCounter.builder("bedrock.throttles", limiter, AdaptiveConcurrencyLimiter::getThrottles)
+                .description("Bedrock calls rejected with throttling")
+                .tag("model", model)
+                .register(meterRegistry);
+            Gauge.builder("bedrock.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive limit on concurrent Bedrock calls")
+                .tag("model", model)
+                .register(meterRegistry);
+            Gauge.builder("bedrock.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .tag("model", model)
+                .register(meterRegistry);
+            Gauge.builder("bedrock.queue.depth", limiter, AdaptiveConcurrencyLimiter::getQueueDepth)
+                .tag("model", model)
+                .register(meterRegistry);
+            this.inputTokens = DistributionSummary.builder("bedrock.tokens")
+                .description("Tokens per Bedrock call as reported in the response")
+                .tag("model", model)
+                .tag("direction", "input")
+                .baseUnit("tokens")
+                .register(meterRegistry);
+            this.outputTokens = DistributionSummary.builder("bedrock.tokens")
+                .description("Tokens per Bedrock call as reported in the response")
+                .tag("model", model)
+                .tag("direction", "output")
+                .baseUnit("tokens")
+                .register(meterRegistry);
+            this.estimatedInputTokens = DistributionSummary.builder("bedrock.tokens.estimated")
+                .description("Input tokens per Bedrock call as estimated before sending")
+                .tag("model", model)
+                .baseUnit("tokens")
+                .register(meterRegistry);
+            this.rejectedPrompts = Counter.builder("bedrock.prompts.rejected")
+                .description("Prompts not sent because they would not fit the model context")
+                .tag("model", model)
+                .register(meterRegistry);
+        }
+
+        Timer callTimer(String operation, String outcome) {
+            return callTimers.computeIfAbsent(operation + "/" + outcome, key -> Timer.builder("bedrock.call")
+                .description("Latency of one Bedrock call attempt")
+                .tag("model", model)
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+        }
+
+        Counter fallbacks(String fallbackModel) {
+            return fallbacks.computeIfAbsent(fallbackModel, key -> Counter.builder("bedrock.fallbacks")
+                .description("Calls moved to the fallback model after the primary model throttled them")
+                .tag("from", model)
+                .tag("to", fallbackModel)
+                .register(meterRegistry));
+        }
+    }
+}
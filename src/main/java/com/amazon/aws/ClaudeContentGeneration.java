@@ -1,166 +1,680 @@
 package com.amazon.aws;
 
-import com.amazon.aws.util.BedrockRequestBody;
-import com.amazon.aws.util.ResponseParser;
+import com.amazon.aws.util.AdaptiveConcurrencyLimiter;
+import com.amazon.aws.util.IncrementalSummaryStore;
+import com.amazon.aws.util.ModelProfile;
+import com.amazon.aws.util.ModelRoute;
+import com.amazon.aws.util.OutputBudget;
+import com.amazon.aws.util.RecordSegmenter;
+import com.amazon.aws.util.RetryBackoff;
+import com.amazon.aws.util.SingleFlight;
+import com.amazon.aws.util.SummaryCache;
+import com.amazon.aws.util.SummaryReducer;
+import com.amazon.aws.util.TextPreprocessor;
+import com.amazon.aws.util.TokenEstimator;
 import io.github.cdimascio.dotenv.Dotenv;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
-import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
-import software.amazon.awssdk.core.SdkBytes;
-import software.amazon.awssdk.http.SdkHttpClient;
-import software.amazon.awssdk.http.apache.ApacheHttpClient;
-import software.amazon.awssdk.regions.Region;
-import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
-import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelRequest;
-import software.amazon.awssdk.services.bedrockruntime.model.InvokeModelResponse;
 
 import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 @Service
 public class ClaudeContentGeneration {
 
     private static final Logger logger = LoggerFactory.getLogger(ClaudeContentGeneration.class);
 
-    private final BedrockRuntimeClient bedrockClient;
-    private final String modelName;
+    private static final Map<String, Object> SUMMARY_PARAMETERS = new LinkedHashMap<>();
+    static {
+        SUMMARY_PARAMETERS.put("temperature", 0.5);
+        SUMMARY_PARAMETERS.put("top_k", 250);
+        SUMMARY_PARAMETERS.put("top_p", 1);
+    }
+
+    private final BedrockInvoker invoker;
+    private final ModelRoute mapRoute;
+    private final ModelRoute reduceRoute;
+    private final ExecutorService segmentExecutor;
+    private final AdaptiveConcurrencyLimiter segmentSlots;
+    private final SummaryCache summaryCache;
+    private final SingleFlight<String> documentFlights = new SingleFlight<>();
+    private final SingleFlight<String> summaryFlights = new SingleFlight<>();
+    private final IncrementalSummaryStore incrementalStore;
+    private final RecordSegmenter segmenter;
+    private final SummaryMerger merger;
+    private final TextPreprocessor preprocessor = TextPreprocessor.defaultPipeline();
+    private final TokenEstimator tokenEstimator;
+    private final Path resourceDirectory;
+    private final Map<String, String> resources = new ConcurrentHashMap<>();
+    private final String processedPromptFile;
+    private final DistributionSummary segmentCount;
+    private final DistributionSummary segmentPromptChars;
+    private final DistributionSummary segmentPromptTokens;
+    private final Timer preprocessTimer;
+    private final Tracer tracer;
 
     public ClaudeContentGeneration() {
-        Dotenv dotenv = Dotenv.load();
+        this(Dotenv.load());
+    }
+
+    @Autowired
+    public ClaudeContentGeneration(MeterRegistry meterRegistry, Tracer tracer) {
+        this(Dotenv.load(), meterRegistry, tracer);
+    }
+
+    public ClaudeContentGeneration(Dotenv dotenv) {
+        this(dotenv, Metrics.globalRegistry, Tracer.NOOP);
+    }
+
+    public ClaudeContentGeneration(Dotenv dotenv, MeterRegistry meterRegistry, Tracer tracer) {
+        String modelName = dotenv.get("MODEL_NAME", "");
+        int segmentConcurrency = Integer.parseInt(dotenv.get("SEGMENT_CONCURRENCY", "10"));
+        int cacheSize = Integer.parseInt(dotenv.get("SUMMARY_CACHE_SIZE", "1000"));
+        long cacheTtlMinutes = Long.parseLong(dotenv.get("SUMMARY_CACHE_TTL_MINUTES", "1440"));
+        String cacheDirectory = dotenv.get("SUMMARY_CACHE_DIR", "");
+        long cacheDiskMaxMegabytes = Long.parseLong(dotenv.get("SUMMARY_CACHE_DISK_MAX_MB", "1024"));
+        int incrementalRecords = Integer.parseInt(dotenv.get("INCREMENTAL_RECORDS", "1000"));
+        String segmentMaxChars = dotenv.get("SEGMENT_MAX_CHARS", "");
+        String segmentMaxTokens = dotenv.get("SEGMENT_MAX_TOKENS", "");
+        String reduceMaxChars = dotenv.get("REDUCE_MAX_CHARS", "");
+        String reduceMaxTokens = dotenv.get("REDUCE_MAX_TOKENS", "");
+        int segmentOverlap = Integer.parseInt(dotenv.get("SEGMENT_OVERLAP_ENTRIES", "0"));
+        this.tokenEstimator = new TokenEstimator(Double.parseDouble(dotenv.get("TOKEN_ESTIMATE_FACTOR", "1.0")));
+        double summaryOutputRatio = Double.parseDouble(dotenv.get("SUMMARY_OUTPUT_RATIO", "0.25"));
+        int summaryMinOutputTokens = Integer.parseInt(dotenv.get("SUMMARY_MIN_OUTPUT_TOKENS", "256"));
+        this.resourceDirectory = Paths.get(dotenv.get("RESOURCE_DIR", "src/main/resources"));
+        this.processedPromptFile = dotenv.get("PROCESSED_PROMPT_FILE",
+            "D:\\Project\\amazon-bedrock-with-builder-and-command-patterns\\tmp\\processed_prompt.txt");
 
-        String accessKeyId = dotenv.get("AWS_ACCESS_KEY_ID");
-        String secretAccessKey = dotenv.get("AWS_SECRET_ACCESS_KEY");
-        String region = dotenv.get("AWS_REGION");
-        this.modelName = dotenv.get("MODEL_NAME");
+        // 分段摘要 (map) 與最終摘要 (reduce) 可使用不同的模型與參數，未設定時都使用 MODEL_NAME
+        // 推論參數的名稱在此依模型檢查，拼錯或模型不支援的參數讓啟動失敗，而不是在每次請求中被略過
+        this.mapRoute = ModelRoute.of(dotenv.get("MAP_MODEL_NAME", modelName),
+            dotenv.get("MAP_FALLBACK_MODEL_NAME", ""),
+            SUMMARY_PARAMETERS, dotenv.get("MAP_INFERENCE_PARAMETERS", ""));
+        this.reduceRoute = ModelRoute.of(dotenv.get("REDUCE_MODEL_NAME", modelName),
+            dotenv.get("REDUCE_FALLBACK_MODEL_NAME", ""),
+            SUMMARY_PARAMETERS, dotenv.get("REDUCE_INFERENCE_PARAMETERS", ""));
 
-        AwsBasicCredentials awsCreds = AwsBasicCredentials.create(accessKeyId, secretAccessKey);
-        
-        // Configure HTTP client with infinite timeout
-        SdkHttpClient httpClient = ApacheHttpClient.builder().maxConnections(10000).build();
+        // Bedrock 呼叫的並行上限、重試與備援由 BedrockInvoker 依模型處理；輸出上限依預估的輸入 token 數決定
+        this.invoker = new BedrockInvoker(dotenv, List.of(mapRoute, reduceRoute),
+            new OutputBudget(tokenEstimator, summaryOutputRatio, summaryMinOutputTokens), meterRegistry, tracer);
+
+        // 同時進行的分段摘要以 SEGMENT_CONCURRENCY 限制 (上下限相同，即固定的上限)，分段的前處理在虛擬執行緒上執行
+        this.segmentSlots = new AdaptiveConcurrencyLimiter(segmentConcurrency, segmentConcurrency, segmentConcurrency);
+        this.segmentExecutor = Executors.newFixedThreadPool(segmentConcurrency,
+            Thread.ofVirtual().name("segment-summary-", 0).factory());
+
+        // 相同模型、參數與提示的摘要直接由快取取得，SUMMARY_CACHE_DIR 設定後重啟仍保留，磁碟上最多 SUMMARY_CACHE_DISK_MAX_MB
+        this.summaryCache = new SummaryCache(cacheSize, Duration.ofMinutes(cacheTtlMinutes),
+            cacheDirectory.isBlank() ? null : Paths.get(cacheDirectory), cacheDiskMaxMegabytes * 1024 * 1024);
+
+        // 以病歷 ID 記住上次的分段與摘要，只重送新增或變動的分段
+        this.incrementalStore = new IncrementalSummaryStore(incrementalRecords);
+
+        // 依 map 模型的預估 token 預算打包分段，備援模型的預算較小時以備援模型為準；設定 SEGMENT_MAX_CHARS 時改以字元計算
+        this.segmenter = !segmentMaxChars.isBlank()
+            ? new RecordSegmenter(Integer.parseInt(segmentMaxChars), segmentOverlap)
+            : new RecordSegmenter(segmentMaxTokens.isBlank()
+                ? mapRoute.models().stream().mapToInt(model -> ModelProfile.of(model).segmentMaxTokens()).min().getAsInt()
+                : Integer.parseInt(segmentMaxTokens), segmentOverlap, tokenEstimator);
+
+        // 摘要合計超過 reduce 模型的 token 預算時分層合併；設定 REDUCE_MAX_CHARS 時改以字元計算
+        SummaryReducer reducer = !reduceMaxChars.isBlank()
+            ? new SummaryReducer(Integer.parseInt(reduceMaxChars))
+            : new SummaryReducer(reduceMaxTokens.isBlank()
+                ? reduceRoute.models().stream().mapToInt(model -> ModelProfile.of(model).reduceMaxTokens()).min().getAsInt()
+                : Integer.parseInt(reduceMaxTokens), tokenEstimator);
+        this.merger = new SummaryMerger(reducer,
+            (mergePrompt, span) -> generateSummaryAsync(reduceRoute, mergePrompt, span), tracer, meterRegistry);
+
+        // 各階段的指標，由 /actuator/prometheus 提供
+        this.segmentCount = DistributionSummary.builder("summary.segments")
+            .description("Segments per summarized record")
+            .register(meterRegistry);
+        this.segmentPromptChars = DistributionSummary.builder("summary.segment.prompt.chars")
+            .description("Characters per segment prompt after preprocessing")
+            .baseUnit("chars")
+            .register(meterRegistry);
+        this.segmentPromptTokens = DistributionSummary.builder("summary.segment.prompt.tokens")
+            .description("Estimated tokens per segment prompt after preprocessing")
+            .baseUnit("tokens")
+            .register(meterRegistry);
+        this.preprocessTimer = Timer.builder("summary.preprocess")
+            .description("Time to preprocess one segment into its prompt")
+            .register(meterRegistry);
+        FunctionCounter.builder("summary.cache.requests", summaryCache, SummaryCache::getMemoryHits)
+            .tag("result", "memory_hit")
+            .register(meterRegistry);
+        FunctionCounter.builder("summary.cache.requests", summaryCache, SummaryCache::getDiskHits)
+            .tag("result", "disk_hit")
+            .register(meterRegistry);
+        FunctionCounter.builder("summary.cache.requests", summaryCache, SummaryCache::getMisses)
+            .tag("result", "miss")
+            .register(meterRegistry);
+        Gauge.builder("summary.cache.size", summaryCache, SummaryCache::size)
+            .register(meterRegistry);
+
+        // 同時進行中的相同請求共用一次計算：整份文件與每個摘要提示各自合併
+        for (Map.Entry<String, SingleFlight<String>> flights
+                : Map.of("document", documentFlights, "summary", summaryFlights).entrySet()) {
+            FunctionCounter.builder("summary.flight.requests", flights.getValue(), SingleFlight::getLeaders)
+                .description("Requests that started a computation or joined one already in flight")
+                .tags("level", flights.getKey(), "result", "leader")
+                .register(meterRegistry);
+            FunctionCounter.builder("summary.flight.requests", flights.getValue(), SingleFlight::getCoalesced)
+                .description("Requests that started a computation or joined one already in flight")
+                .tags("level", flights.getKey(), "result", "coalesced")
+                .register(meterRegistry);
+            Gauge.builder("summary.flight.active", flights.getValue(), SingleFlight::size)
+                .tag("level", flights.getKey())
+                .register(meterRegistry);
+        }
 
-        this.bedrockClient = BedrockRuntimeClient.builder()
-            .region(Region.of(region))
-            .credentialsProvider(StaticCredentialsProvider.create(awsCreds))
-            .httpClient(httpClient)
-            .build();
+        // 每個分段與每次 Bedrock 呼叫各有一個 span，掛在請求的 span 之下
+        this.tracer = tracer;
+    }
+
+    public Map<String, Object> getCacheStats() {
+        return summaryCache.stats();
+    }
+
+    // 依模型列出並行上限與重試次數
+    public Map<String, Object> getLimiterStats() {
+        return invoker.stats();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        segmentExecutor.shutdownNow();
+        invoker.close();
     }
 
     public String generateContent(String prompt) {
-        try {
-            // 讀取檔案內容
-            String fileContent = new String(Files.readAllBytes(Paths.get("src/main/resources/prompt.txt")), StandardCharsets.UTF_8);
-            String prePrompt = new String(Files.readAllBytes(Paths.get("src/main/resources/preprompt.txt")), StandardCharsets.UTF_8);
-
-            // 分段處理
-            List<String> segments = splitIntoSegments(prompt, 20);
-            List<String> summaries = new ArrayList<>();
-
-            for (String segment : segments) {
-                // 刪除包含 "衛教指導" 的段落直到下一個時間段
-                segment = removeEducationSections(segment);
-                
-                // 移除所有空格和換行符號
-                segment = removeAllWhitespace(segment);
-                
-                // 組合 preprompt 和 segment
-                String completePrompt = prePrompt + segment;
-                
-                // 計算提示字元數並記錄長度
-                int promptLength = completePrompt.length();
-                logger.info("Prompt length: " + promptLength);
-                
-                String summary = generateSummary(completePrompt);
-                summaries.add(summary);
+        return generateContent(prompt, null);
+    }
+
+    public String generateContent(String prompt, String recordId) {
+        return generateContent(prompt, recordId, (done, total) -> { });
+    }
+
+    // 同一份病歷同時被多次請求時只計算一次，後到的請求等待同一個結果，也收到同一份進度
+    public String generateContent(String prompt, String recordId, SummaryProgressListener progress) {
+        return await(summarizeDocument(prompt, recordId, progress));
+    }
+
+    // 上傳的檔案邊讀取邊分段，每個分段一完成就送出摘要，不先組成完整文字
+    public String generateContent(RecordSource source, String recordId) {
+        return await(summarize(segments(source), recordId, List.of(), PipelineListener.NONE, false));
+    }
+
+    // 批次模式：依分段順序傳入 batch inference 產生的分段摘要 (缺少的為 null，改為即時摘要)，不經過快取
+    public String generateContent(String prompt, String recordId, List<String> segmentSummaries) {
+        return await(summarize(segments(prompt), recordId, segmentSummaries, PipelineListener.NONE, false));
+    }
+
+    public CompletableFuture<String> generateContentAsync(String prompt) {
+        return generateContentAsync(prompt, null);
+    }
+
+    public CompletableFuture<String> generateContentAsync(String prompt, String recordId) {
+        return summarizeDocument(prompt, recordId, (done, total) -> { });
+    }
+
+    // 每個呼叫端登記自己的進度接收者，由帶頭計算的流程轉給所有等待中的呼叫端；同步與非同步的請求可互相合併
+    // 進度轉發與該次計算一起建立、一起結束，計算完成後才到的呼叫端會開始新的一輪並收到自己的進度
+    private CompletableFuture<String> summarizeDocument(String prompt, String recordId,
+                                                        SummaryProgressListener progress) {
+        List<ProgressFanOut> joined = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> result = documentFlights.execute(documentKey(prompt, recordId), ProgressFanOut::new,
+            fanOut -> joined.add(fanOut.add(progress)),
+            fanOut -> summarize(segments(prompt), recordId, List.of(), progressListener(fanOut), false));
+        // 呼叫端先行取消時不再收到進度
+        result.whenComplete((content, e) -> joined.forEach(fanOut -> fanOut.remove(progress)));
+        return result;
+    }
+
+    public CompletableFuture<Void> generateContentStream(String prompt, SummaryStreamListener listener) {
+        return generateContentStream(prompt, null, listener);
+    }
+
+    // 每個分段摘要完成後立即推送，最終摘要以 token 串流方式推送
+    // 取消回傳的 future (例如 SSE 連線中斷) 會停止尚未完成的分段與最終摘要的串流
+    public CompletableFuture<Void> generateContentStream(String prompt, String recordId, SummaryStreamListener listener) {
+        CompletableFuture<String> result = summarize(segments(prompt), recordId, List.of(), new PipelineListener() {
+                @Override
+                public void onSegmentSummary(int index, int total, String summary) {
+                    listener.onSegmentSummary(index, total, summary);
+                }
+
+                @Override
+                public void onFinalSummaryDelta(String text) {
+                    listener.onFinalSummaryDelta(text);
+                }
+            }, true);
+        CompletableFuture<Void> stream = result
+            .whenComplete((content, e) -> {
+                if (e != null) {
+                    listener.onError(e);
+                } else {
+                    listener.onComplete();
+                }
+            })
+            .thenApply(content -> null);
+        stream.whenComplete((ignored, e) -> {
+            if (stream.isCancelled()) {
+                result.cancel(true);
             }
+        });
+        return stream;
+    }
 
-            // 組合所有摘要與 prompt.txt
-            String finalPrompt = String.join("", summaries) + fileContent;
-            saveToTmpFile(finalPrompt);
-            
-            // 生成最終內容
-            String finalContent = "摘要檢視：\n"+generateSummary(finalPrompt)+"\n詳細日期摘要：\n"+String.join("", summaries);
+    // 所有入口共用的流程：分段、沿用已有的分段摘要、平行摘要其餘分段、過長時分層合併，最後產生最終摘要
+    private CompletableFuture<String> summarize(SegmentSource source, String recordId, List<String> knownSummaries,
+                                                PipelineListener listener, boolean streamFinal) {
+        Span parent = tracer.currentSpan();
+        List<String> segments = new ArrayList<>();
+        List<CompletableFuture<String>> pending = new ArrayList<>();
+        AtomicBoolean abandoned = new AtomicBoolean();
+        try {
+            String prePrompt = readResource("preprompt.txt");
 
-            return finalContent;
+            // 分段一產生就送出；開頭未變動的分段沿用上次的摘要，第一個變動的分段之後都重新摘要
+            AtomicInteger reused = new AtomicInteger();
+            source.emit(segment -> {
+                int index = segments.size();
+                segments.add(segment);
+                String knownSummary = index < knownSummaries.size() ? knownSummaries.get(index) : null;
+                if (knownSummary != null) {
+                    pending.add(CompletableFuture.completedFuture(knownSummary));
+                    return;
+                }
+                String stableSummary = reused.get() == index
+                    ? incrementalStore.stableSummary(recordId, index, segment) : null;
+                if (stableSummary != null) {
+                    reused.incrementAndGet();
+                    pending.add(CompletableFuture.completedFuture(stableSummary));
+                } else {
+                    pending.add(summarizeSegmentAsync(parent, index, prePrompt, segment, abandoned));
+                }
+            });
+            segmentCount.record(segments.size());
+            if (recordId != null) {
+                logger.info("Record {}: reusing {} of {} segment summaries", recordId, reused.get(), segments.size());
+            }
         } catch (Exception e) {
+            // 讀取檔案失敗時，已送出的分段不再需要
+            abandon(abandoned, pending);
             logger.error("Error invoking Bedrock model", e);
-            throw new RuntimeException("Error invoking Bedrock model: " + e.getMessage(), e);
+            return CompletableFuture.failedFuture(e);
         }
+
+        // 任一分段失敗時取消其餘分段，並以第一個錯誤結束
+        int total = segments.size();
+        listener.onSegments(total);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < total; i++) {
+            int index = i;
+            pending.get(i).whenComplete((summary, e) -> {
+                if (e == null) {
+                    listener.onSegmentSummary(index, total, summary);
+                } else if (failure.compareAndSet(null, e)) {
+                    abandon(abandoned, pending);
+                }
+            });
+        }
+
+        // 取消時一併取消進行中的最終摘要
+        AtomicReference<CompletableFuture<String>> finalSummary = new AtomicReference<>();
+        CompletableFuture<String> result = CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]))
+            .handle((ignored, e) -> e != null
+                ? CompletableFuture.<String>failedFuture(failure.get() != null ? failure.get() : e)
+                : finishSummary(segments, pending.stream().map(CompletableFuture::join).toList(), recordId,
+                    listener, streamFinal, parent, call -> {
+                        finalSummary.set(call);
+                        if (abandoned.get()) {
+                            call.cancel(true);
+                        }
+                    }))
+            .thenCompose(Function.identity());
+        result.whenComplete((content, e) -> {
+            if (e != null) {
+                abandon(abandoned, pending);
+                CompletableFuture<String> call = finalSummary.get();
+                if (call != null) {
+                    call.cancel(true);
+                }
+                if (result.isCancelled()) {
+                    logger.info("Summary cancelled by the caller");
+                } else {
+                    logger.error("Error invoking Bedrock model", e);
+                }
+            }
+        });
+        return result;
     }
 
-    private List<String> splitIntoSegments(String input, int segmentSize) {
-        List<String> segments = new ArrayList<>();
-        String[] parts = input.split("(?=\\d{4}-\\d{2}-\\d{2}\t\\d{2}：\\d{2}\t)");
-        StringBuilder segment = new StringBuilder();
-        
-        for (int i = 0; i < parts.length; i++) {
-            segment.append(parts[i]);
-            if ((i + 1) % segmentSize == 0 || i == parts.length - 1) {
-                segments.add(segment.toString());
-                segment = new StringBuilder();
+    private CompletableFuture<String> finishSummary(List<String> segments, List<String> summaries, String recordId,
+                                                    PipelineListener listener, boolean streamFinal, Span parent,
+                                                    Consumer<CompletableFuture<String>> finalStarted) {
+        incrementalStore.update(recordId, segments, summaries);
+        String fileContent;
+        String mergePrompt;
+        try {
+            fileContent = readResource("prompt.txt");
+            mergePrompt = readResource("mergeprompt.txt");
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        // 組合所有摘要與 prompt.txt，過長時先分層合併
+        return merger.reduce(summaries, fileContent, mergePrompt, parent)
+            .thenCompose(reduced -> {
+                String finalPrompt = String.join("", reduced) + fileContent;
+                try {
+                    saveToTmpFile(finalPrompt);
+                } catch (IOException e) {
+                    logger.warn("Unable to save final prompt", e);
+                }
+                CompletableFuture<String> call = streamFinal
+                    ? streamSummary(finalPrompt, listener, parent)
+                    : generateSummaryAsync(reduceRoute, finalPrompt, parent);
+                finalStarted.accept(call);
+                return call;
+            })
+            // 分段摘要原樣接在後面；SEGMENT_OVERLAP_ENTRIES 大於 0 時重疊的紀錄在相鄰兩段的摘要中各出現一次，
+            // 模型產生的摘要無法可靠地切出重疊的部分，因此不做刪除
+            .thenApply(summary -> "摘要檢視：\n"+summary+"\n詳細日期摘要：\n"+String.join("", summaries));
+    }
+
+    private SegmentSource segments(String prompt) {
+        return segmentConsumer -> segmenter.segment(prompt).forEach(segmentConsumer);
+    }
+
+    private SegmentSource segments(RecordSource source) {
+        return segmentConsumer -> {
+            try (RecordSegmenter.Incremental incremental = segmenter.incremental(segmentConsumer)) {
+                source.emit(incremental);
+            }
+        };
+    }
+
+    // 沿用的摘要直接算已完成，其餘分段完成時回報進度
+    private PipelineListener progressListener(SummaryProgressListener progress) {
+        AtomicInteger done = new AtomicInteger();
+        return new PipelineListener() {
+            @Override
+            public void onSegments(int total) {
+                progress.onProgress(0, total);
+            }
+
+            @Override
+            public void onSegmentSummary(int index, int total, String summary) {
+                progress.onProgress(done.incrementAndGet(), total);
             }
+        };
+    }
+
+    private void abandon(AtomicBoolean abandoned, List<CompletableFuture<String>> pending) {
+        abandoned.set(true);
+        pending.forEach(future -> future.cancel(true));
+    }
+
+    // 同步的入口等待非同步流程的結果，等待中被中斷時放棄這次請求
+    private String await(CompletableFuture<String> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Error invoking Bedrock model: interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = RetryBackoff.unwrap(e);
+            throw new RuntimeException("Error invoking Bedrock model: " + cause.getMessage(), cause);
+        }
+    }
+
+    // 批次模式 (batch inference)：分段與前處理和線上流程相同，送出的提示與快取鍵也相同
+    public List<String> segmentPrompts(String prompt) throws IOException {
+        String prePrompt = readResource("preprompt.txt");
+        List<String> segments = segmenter.segment(prompt);
+        List<String> prompts = new ArrayList<>(segments.size());
+        for (String segment : segments) {
+            prompts.add(buildSegmentPrompt(prePrompt, segment));
         }
-        return segments;
+        return prompts;
+    }
+
+    public String getBatchModel() {
+        return mapRoute.primaryModel();
     }
 
-    private String removeEducationSections(String input) {
-        // Regular expression pattern to identify date and time sections
-        String dateTimePattern = "\\d{4}-\\d{2}-\\d{2}\t\\d{2}：\\d{2}\t";
+    public String segmentSummaryKey(String segmentPrompt) {
+        return SummaryCache.key(mapRoute.primaryModel(), mapRoute.parameters(), segmentPrompt);
+    }
 
-        // Pattern to match "衛教指導" and everything until the next date and time section
-        Pattern pattern = Pattern.compile("衛教指導.*?(?=" + dateTimePattern + ")", Pattern.DOTALL);
+    // 只檢查快取中是否已有摘要，不計入命中統計
+    public String cachedSegmentSummary(String segmentPrompt) {
+        return summaryCache.peek(segmentSummaryKey(segmentPrompt));
+    }
 
-        // Remove the matched sections
-        Matcher matcher = pattern.matcher(input);
-        return matcher.replaceAll("");
+    // batch inference 每一行的 modelInput 就是 InvokeModel 的 request body
+    public JSONObject batchModelInput(String segmentPrompt) {
+        return new JSONObject(invoker.requestBody(mapRoute.primaryModel(), mapRoute.parameters(), segmentPrompt).asUtf8String());
     }
 
-    private String removeAllWhitespace(String input) {
-        // Replace all spaces and newlines with empty string
-        return input.replaceAll("\\s+", "");
+    // modelOutput 與 InvokeModel 的回應格式相同
+    public String parseSegmentSummary(JSONObject modelOutput) {
+        return invoker.parse(mapRoute.primaryModel(), modelOutput.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private CompletableFuture<String> streamSummary(String completePrompt, PipelineListener listener, Span parent) {
+        String cacheKey = SummaryCache.key(reduceRoute.primaryModel(), reduceRoute.parameters(), completePrompt);
+        String cached = summaryCache.get(cacheKey);
+        if (cached != null) {
+            listener.onFinalSummaryDelta(cached);
+            return CompletableFuture.completedFuture(cached);
+        }
+        CompletableFuture<BedrockInvoker.Completion> call =
+            invoker.stream(reduceRoute, completePrompt, listener::onFinalSummaryDelta, parent);
+        CompletableFuture<String> summary = call.thenApply(completion -> cacheSummary(reduceRoute, completion, cacheKey));
+        summary.whenComplete((ignored, e) -> {
+            if (summary.isCancelled()) {
+                call.cancel(true);
+            }
+        });
+        return summary;
+    }
+
+    // 病歷 ID 與原始內容都相同的請求視為同一份文件；前處理是確定的，不需為了算鍵值先處理整份文件
+    private String documentKey(String prompt, String recordId) {
+        return SummaryCache.key(reduceRoute.primaryModel(), reduceRoute.parameters(),
+            (recordId == null ? "" : recordId) + '\0' + prompt);
+    }
+
+    // 提示檔只在第一次使用時讀取
+    private String readResource(String name) throws IOException {
+        String content = resources.get(name);
+        if (content == null) {
+            content = new String(Files.readAllBytes(resourceDirectory.resolve(name)), StandardCharsets.UTF_8);
+            resources.putIfAbsent(name, content);
+        }
+        return content;
+    }
+
+    private String buildSegmentPrompt(String prePrompt, String segment) {
+        // 組合 preprompt 和 segment，分段只掃描一次：
+        // 刪除包含 "衛教指導" 的段落直到下一個時間段，並移除所有空格和換行符號
+        Span span = tracer.nextSpan().name("summary.preprocess").start();
+        long start = System.nanoTime();
+        StringBuilder completePrompt = new StringBuilder(prePrompt.length() + segment.length());
+        completePrompt.append(prePrompt);
+        preprocessor.processInto(segment, completePrompt);
+        preprocessTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        // 計算提示字元數與預估 token 數並記錄
+        int promptLength = completePrompt.length();
+        int promptTokens = tokenEstimator.estimate(completePrompt);
+        segmentPromptChars.record(promptLength);
+        segmentPromptTokens.record(promptTokens);
+        span.tag("prompt.chars", promptLength).tag("prompt.tokens", promptTokens).end();
+        logger.info("Prompt length: {} chars, about {} tokens", promptLength, promptTokens);
+
+        return completePrompt.toString();
     }
 
     private void saveToTmpFile(String content) throws IOException {
-        String tmpFilePath = "D:\\Project\\amazon-bedrock-with-builder-and-command-patterns\\tmp\\processed_prompt.txt";
-        try (FileWriter writer = new FileWriter(tmpFilePath)) {
+        // PROCESSED_PROMPT_FILE 設為空白時不保存
+        if (processedPromptFile.isBlank()) {
+            return;
+        }
+        try (FileWriter writer = new FileWriter(processedPromptFile)) {
             writer.write(content);
         }
     }
 
-    private String generateSummary(String completePrompt) throws Exception {
-        String bedrockBody = BedrockRequestBody.builder()
-            .withModelId(this.modelName)
-            .withPrompt(completePrompt)
-            .withInferenceParameter("max_tokens_to_sample", 2048)
-            .withInferenceParameter("temperature", 0.5)
-            .withInferenceParameter("top_k", 250)
-            .withInferenceParameter("top_p", 1)
-            .withRole("user")
-            .withContentType("application/json")
-            .withAccept("application/json")
-            .build();
-
-        InvokeModelRequest invokeModelRequest = InvokeModelRequest.builder()
-            .modelId(this.modelName)
-            .body(SdkBytes.fromString(bedrockBody, Charset.defaultCharset()))
-            .contentType("application/json")  // Ensure contentType is set
-            .accept("application/json")  // Ensure accept is set
-            .build();
-        InvokeModelResponse invokeModelResponse = bedrockClient.invokeModel(invokeModelRequest);
-
-        // Convert the InvokeModelResponse body to a string
-        String responseBody = invokeModelResponse.body().asString(Charset.defaultCharset());
-
-        // Extract text from the JSON response
-        return ResponseParser.extractTextFromResponse(responseBody);
+    public CompletableFuture<String> generateSummaryAsync(String completePrompt) {
+        return generateSummaryAsync(reduceRoute, completePrompt, tracer.currentSpan());
+    }
+
+    // 完成回呼在 Netty 執行緒上執行，沒有目前的 span，因此由呼叫端傳入
+    private CompletableFuture<String> generateSummaryAsync(ModelRoute route, String completePrompt, Span parent) {
+        String cacheKey = SummaryCache.key(route.primaryModel(), route.parameters(), completePrompt);
+        String cached = summaryCache.get(cacheKey);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        return summaryFlights.execute(cacheKey, () -> invoker.invoke(route, completePrompt, parent)
+            .thenApply(completion -> cacheSummary(route, completion, cacheKey)));
+    }
+
+    // 備援模型產生的摘要不放入快取，相同的提示下次仍由主要模型產生
+    private String cacheSummary(ModelRoute route, BedrockInvoker.Completion completion, String cacheKey) {
+        if (completion.model().equals(route.primaryModel())) {
+            summaryCache.put(cacheKey, completion.text());
+        }
+        return completion.text();
+    }
+
+    // 同時進行的分段以 SEGMENT_CONCURRENCY 限制，前處理在 segmentExecutor 上執行，不佔用 Netty 的執行緒
+    private CompletableFuture<String> summarizeSegmentAsync(Span parent, int index, String prePrompt, String segment,
+                                                            AtomicBoolean abandoned) {
+        // 被取消的分段不會執行下面的 lambda，已取得的名額由最後的 whenComplete 歸還；claimed 決定由哪一方歸還
+        AtomicBoolean claimed = new AtomicBoolean();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> slot = segmentSlots.acquireAsync();
+        CompletableFuture<String> result = slot.thenComposeAsync(permit -> {
+            if (!claimed.compareAndSet(false, true)) {
+                return CompletableFuture.<String>failedFuture(new CancellationException("Summary abandoned"));
+            }
+            if (abandoned.get()) {
+                permit.onDropped();
+                return CompletableFuture.<String>failedFuture(new CancellationException("Summary abandoned"));
+            }
+            Span span = Spans.start(tracer, "summary.segment", parent).tag("segment.index", index);
+            CompletableFuture<String> summary;
+            try (Tracer.SpanInScope ignored = tracer.withSpan(span)) {
+                summary = generateSummaryAsync(mapRoute, buildSegmentPrompt(prePrompt, segment), span);
+            } catch (RuntimeException e) {
+                summary = CompletableFuture.failedFuture(e);
+            }
+            return summary.whenComplete((ignored, e) -> {
+                Spans.end(span, e);
+                permit.onSuccess();
+            });
+        }, segmentExecutor);
+        result.whenComplete((summary, e) -> {
+            // 還在排隊時直接退出佇列，否則歸還 lambda 沒有接手的名額
+            if (e != null && !slot.cancel(false)) {
+                slot.thenAccept(permit -> {
+                    if (claimed.compareAndSet(false, true)) {
+                        permit.onDropped();
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    // 分段的來源：整份文字一次分段，或上傳檔案邊讀取邊分段
+    @FunctionalInterface
+    private interface SegmentSource {
+
+        void emit(Consumer<String> segmentConsumer) throws Exception;
+    }
+
+    // 流程中的事件，各入口只取需要的部分轉給呼叫端
+    private interface PipelineListener {
+
+        PipelineListener NONE = new PipelineListener() { };
+
+        default void onSegments(int total) {
+        }
+
+        default void onSegmentSummary(int index, int total, String summary) {
+        }
+
+        default void onFinalSummaryDelta(String text) {
+        }
+    }
+
+    // 同一份文件的進度轉給所有等待中的呼叫端，後加入的呼叫端先收到目前的進度
+    private static final class ProgressFanOut implements SummaryProgressListener {
+
+        private final List<SummaryProgressListener> listeners = new ArrayList<>();
+        private int done;
+        private int total = -1;
+
+        synchronized ProgressFanOut add(SummaryProgressListener listener) {
+            listeners.add(listener);
+            if (total >= 0) {
+                listener.onProgress(done, total);
+            }
+            return this;
+        }
+
+        synchronized void remove(SummaryProgressListener listener) {
+            listeners.remove(listener);
+        }
+
+        @Override
+        public synchronized void onProgress(int done, int total) {
+            this.done = done;
+            this.total = total;
+            listeners.forEach(listener -> listener.onProgress(done, total));
+        }
     }
 }
@@ -0,0 +1,12 @@
+package com.amazon.aws;
+
+import java.util.function.Consumer;
+
+/**
+ * Produces the lines of a record, such as the rows extracted from uploaded files, without joining them into one string.
+ */
+@FunctionalInterface
+public interface RecordSource {
+
+    void emit(Consumer<String> lineConsumer) throws Exception;
+}
@@ -0,0 +1,24 @@
+package com.amazon.aws;
+
+import com.amazon.aws.util.RetryBackoff;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+
+// 流程中各階段共用的 span 操作
+final class Spans {
+
+    private Spans() {
+    }
+
+    // parent 為 null 時以目前執行緒上的 span 為父節點
+    static Span start(Tracer tracer, String name, Span parent) {
+        return tracer.nextSpan(parent).name(name).start();
+    }
+
+    static void end(Span span, Throwable error) {
+        if (error != null) {
+            span.error(RetryBackoff.unwrap(error));
+        }
+        span.end();
+    }
+}
@@ -0,0 +1,125 @@
+package com.amazon.aws;
+
+import com.amazon.aws.util.SummaryReducer;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+// 摘要與最終指示超過 reduce 預算時，依 SummaryReducer 的分組平行合併，逐層縮短直到能放進最終 prompt
+class SummaryMerger {
+
+    private static final Logger logger = LoggerFactory.getLogger(SummaryMerger.class);
+
+    private final SummaryReducer reducer;
+    private final BiFunction<String, Span, CompletableFuture<String>> merge;
+    private final Tracer tracer;
+    private final DistributionSummary reduceLevels;
+
+    // merge 以合併提示與該組的 span 產生一份合併後的摘要
+    SummaryMerger(SummaryReducer reducer, BiFunction<String, Span, CompletableFuture<String>> merge, Tracer tracer,
+                  MeterRegistry meterRegistry) {
+        this.reducer = reducer;
+        this.merge = merge;
+        this.tracer = tracer;
+        this.reduceLevels = DistributionSummary.builder("summary.reduce.levels")
+            .description("Merge levels needed before the segment summaries fit the final prompt")
+            .register(meterRegistry);
+    }
+
+    CompletableFuture<List<String>> reduce(List<String> summaries, String instructions, String mergePrompt,
+                                           Span parent) {
+        return reduce(summaries, instructions, mergePrompt, parent, 0);
+    }
+
+    private CompletableFuture<List<String>> reduce(List<String> level, String instructions, String mergePrompt,
+                                                   Span parent, int depth) {
+        if (reducer.fits(level, instructions)) {
+            finish(level, instructions, depth);
+            return CompletableFuture.completedFuture(level);
+        }
+        // 過長的摘要 (包括只剩一份時) 先切成幾段，每組都不超過預算
+        List<List<String>> groups = reducer.groups(level, mergePrompt);
+        if (groups.stream().allMatch(group -> group.size() == 1)) {
+            finish(level, instructions, depth);
+            return CompletableFuture.completedFuture(level);
+        }
+
+        int levelIndex = depth + 1;
+        List<CompletableFuture<String>> pending = new ArrayList<>(groups.size());
+        try {
+            for (int i = 0; i < groups.size(); i++) {
+                List<String> group = groups.get(i);
+                if (group.size() == 1) {
+                    pending.add(CompletableFuture.completedFuture(group.get(0)));
+                    continue;
+                }
+                Span span = Spans.start(tracer, "summary.reduce", parent)
+                    .tag("reduce.level", levelIndex)
+                    .tag("reduce.group", i)
+                    .tag("reduce.inputs", group.size());
+                CompletableFuture<String> merged;
+                try {
+                    merged = merge.apply(String.join("", group) + mergePrompt, span);
+                } catch (RuntimeException e) {
+                    Spans.end(span, e);
+                    throw e;
+                }
+                merged.whenComplete((ignored, e) -> Spans.end(span, e));
+                pending.add(merged);
+            }
+        } catch (RuntimeException e) {
+            // 已送出的合併不再需要
+            pending.forEach(future -> future.cancel(true));
+            return CompletableFuture.failedFuture(e);
+        }
+
+        // 任一組失敗時取消其餘各組，並以第一個錯誤結束
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (CompletableFuture<String> future : pending) {
+            future.whenComplete((ignored, e) -> {
+                if (e != null && failure.compareAndSet(null, e)) {
+                    pending.forEach(other -> other.cancel(true));
+                }
+            });
+        }
+
+        int inputs = groups.stream().mapToInt(List::size).sum();
+        return CompletableFuture.allOf(pending.toArray(new CompletableFuture[0]))
+            .handle((ignored, e) -> e != null
+                ? CompletableFuture.<List<String>>failedFuture(failure.get() != null ? failure.get() : e)
+                : nextLevel(level, pending, inputs, instructions, mergePrompt, parent, levelIndex))
+            .thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<List<String>> nextLevel(List<String> level, List<CompletableFuture<String>> pending,
+                                                      int inputs, String instructions, String mergePrompt,
+                                                      Span parent, int levelIndex) {
+        List<String> merged = pending.stream().map(CompletableFuture::join).toList();
+        logger.info("Reduce level {}: merged {} summaries into {}", levelIndex, inputs, merged.size());
+        // 合併後沒有變短時再合併也不會收斂，以目前的結果送出，過長的 prompt 在送出前由 BedrockInvoker 拒絕
+        if (reducer.size(merged) >= reducer.size(level)) {
+            finish(merged, instructions, levelIndex);
+            return CompletableFuture.completedFuture(merged);
+        }
+        return reduce(merged, instructions, mergePrompt, parent, levelIndex);
+    }
+
+    private void finish(List<String> level, String instructions, int depth) {
+        reduceLevels.record(depth);
+        if (!reducer.fits(level, instructions)) {
+            // 無法再縮短時直接送出
+            logger.warn("Final prompt is still over the reduce budget of {} {} after {} merge levels",
+                reducer.getBudget(), reducer.getUnit(), depth);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.amazon.aws;
+
+/**
+ * Receives the number of segment summaries finished so far. Called from the segment threads as they complete.
+ */
+@FunctionalInterface
+public interface SummaryProgressListener {
+
+    void onProgress(int done, int total);
+}
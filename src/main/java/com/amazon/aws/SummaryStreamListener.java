@@ -0,0 +1,16 @@
+package com.amazon.aws;
+
+/**
+ * Receives the progress of a streamed summary generation.
+ * Segment summaries arrive in completion order, so {@code index} gives their position in the record.
+ */
+public interface SummaryStreamListener {
+
+    void onSegmentSummary(int index, int total, String summary);
+
+    void onFinalSummaryDelta(String text);
+
+    void onComplete();
+
+    void onError(Throwable error);
+}
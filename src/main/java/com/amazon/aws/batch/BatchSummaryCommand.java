@@ -0,0 +1,49 @@
+package com.amazon.aws.batch;
+
+import com.amazon.aws.ClaudeContentGeneration;
+import com.amazon.aws.service.BatchSummaryService;
+import io.github.cdimascio.dotenv.Dotenv;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Command line entry point of the offline batch mode. It lives outside the packages of the web application and is
+ * started through the {@code batch} Maven profile, never by the Spring Boot application:
+ * <pre>
+ * mvn -Pbatch compile exec:java -Dexec.args="prepare &lt;records-dir&gt; &lt;work-dir&gt;"   # write &lt;work-dir&gt;/input/segments-*.jsonl
+ * mvn -Pbatch compile exec:java -Dexec.args="ingest &lt;records-dir&gt; &lt;work-dir&gt;"    # read &lt;work-dir&gt;/output, write &lt;work-dir&gt;/results
+ * </pre>
+ */
+public final class BatchSummaryCommand {
+
+    static final int USAGE = 2;
+
+    private BatchSummaryCommand() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.exit(run(args, Dotenv.load()));
+    }
+
+    // 有病歷失敗時回傳非零，排程可重新執行同一個步驟接續未完成的病歷
+    static int run(String[] args, Dotenv dotenv) throws Exception {
+        if (args.length != 3 || !(args[0].equals("prepare") || args[0].equals("ingest"))) {
+            System.err.println("Usage: BatchSummaryCommand prepare|ingest <records-dir> <work-dir>");
+            return USAGE;
+        }
+        Path recordsDirectory = Paths.get(args[1]);
+        Path workDirectory = Paths.get(args[2]);
+
+        ClaudeContentGeneration contentGeneration = new ClaudeContentGeneration(dotenv);
+        try {
+            BatchSummaryService batch = new BatchSummaryService(contentGeneration, dotenv);
+            int failed = args[0].equals("prepare")
+                ? batch.prepare(recordsDirectory, workDirectory).failed()
+                : batch.ingest(recordsDirectory, workDirectory).failed();
+            return failed > 0 ? 1 : 0;
+        } finally {
+            contentGeneration.shutdown();
+        }
+    }
+}
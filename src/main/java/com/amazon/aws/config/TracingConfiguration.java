@@ -0,0 +1,40 @@
+package com.amazon.aws.config;
+
+import com.amazon.aws.util.SpanFileExporter;
+import io.github.cdimascio.dotenv.Dotenv;
+import io.micrometer.observation.ObservationPredicate;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+// OTLP 輸出與取樣比例由 Spring Boot 依 management.otlp.tracing.* 與 management.tracing.sampling.* 設定，
+// 這裡只補上 Spring Boot 沒有的部分
+@Configuration
+public class TracingConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(TracingConfiguration.class);
+
+    // span 另外以 JSON lines 寫入 TRACING_FILE，與 OTLP collector 同時輸出；Spring Boot 會把所有 SpanExporter 一起註冊
+    @Bean
+    public SpanExporter spanFileExporter() throws IOException {
+        String spanFile = Dotenv.load().get("TRACING_FILE", "");
+        if (spanFile.isBlank()) {
+            return SpanExporter.composite();
+        }
+        logger.info("Exporting spans to {}", spanFile);
+        return new SpanFileExporter(Paths.get(spanFile));
+    }
+
+    // Prometheus 每次抓取指標不需要產生 trace
+    @Bean
+    public ObservationPredicate skipActuatorObservations() {
+        return (name, context) -> !(context instanceof ServerRequestObservationContext request
+            && request.getCarrier().getRequestURI().startsWith("/actuator"));
+    }
+}
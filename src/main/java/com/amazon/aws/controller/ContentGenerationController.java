@@ -1,13 +1,17 @@
 package com.amazon.aws.controller;
 
 import com.amazon.aws.ClaudeContentGeneration;
+import com.amazon.aws.SummaryStreamListener;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -18,6 +22,7 @@ import java.nio.charset.StandardCharsets;
 public class ContentGenerationController {
 
     private static final Logger logger = LoggerFactory.getLogger(ContentGenerationController.class);
+    private static final long STREAM_TIMEOUT_MILLIS = 600000L;
 
     @Autowired
     private ClaudeContentGeneration contentGeneration;
@@ -26,7 +31,7 @@ public class ContentGenerationController {
     public String generateContent(@RequestBody Map<String, String> request) {
         String prompt = request.get("prompt");
         try {
-            String response = contentGeneration.generateContent(prompt);
+            String response = contentGeneration.generateContent(prompt, request.get("recordId"));
             logger.info("Generated response: {}", response);
             return response;
         } catch (Exception e) {
@@ -35,6 +40,81 @@ public class ContentGenerationController {
         }
     }
 
+    @PostMapping(value = "/generate/async", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public CompletableFuture<String> generateContentAsync(@RequestBody Map<String, String> request) {
+        String prompt = request.get("prompt");
+        return contentGeneration.generateContentAsync(prompt, request.get("recordId"))
+            .thenApply(response -> {
+                logger.info("Generated response: {}", response);
+                return response;
+            })
+            .exceptionally(e -> {
+                logger.error("Error generating content", e);
+                return "Error generating content: " + e.getMessage();
+            });
+    }
+
+    @PostMapping(value = "/generate/stream", consumes = MediaType.APPLICATION_JSON_VALUE,
+                 produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter generateContentStream(@RequestBody Map<String, String> request) {
+        String prompt = request.get("prompt");
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MILLIS);
+
+        CompletableFuture<Void> stream = contentGeneration.generateContentStream(prompt, request.get("recordId"),
+            new SummaryStreamListener() {
+                @Override
+                public void onSegmentSummary(int index, int total, String summary) {
+                    send(SseEmitter.event().name("segment")
+                        .data(Map.of("index", index, "total", total, "text", summary), MediaType.APPLICATION_JSON));
+                }
+
+                @Override
+                public void onFinalSummaryDelta(String text) {
+                    send(SseEmitter.event().name("delta").data(Map.of("text", text), MediaType.APPLICATION_JSON));
+                }
+
+                @Override
+                public void onComplete() {
+                    send(SseEmitter.event().name("done").data(Map.of(), MediaType.APPLICATION_JSON));
+                    emitter.complete();
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                    logger.error("Error streaming content", error);
+                    send(SseEmitter.event().name("error")
+                        .data(Map.of("message", "Error generating content: " + error.getMessage()),
+                            MediaType.APPLICATION_JSON));
+                    emitter.complete();
+                }
+
+                private void send(SseEmitter.SseEventBuilder event) {
+                    try {
+                        emitter.send(event);
+                    } catch (IOException | IllegalStateException e) {
+                        // The client went away, nothing left to deliver to
+                        logger.debug("Unable to send stream event", e);
+                    }
+                }
+            });
+        // The client disconnected or the stream timed out, stop the segments and the final stream still running;
+        // completion also fires after a normal finish, when the cancel has nothing left to stop
+        emitter.onCompletion(() -> stream.cancel(true));
+        emitter.onTimeout(() -> stream.cancel(true));
+        emitter.onError(e -> stream.cancel(true));
+        return emitter;
+    }
+
+    @GetMapping("/cache/stats")
+    public Map<String, Object> cacheStats() {
+        return contentGeneration.getCacheStats();
+    }
+
+    @GetMapping("/limiter/stats")
+    public Map<String, Object> limiterStats() {
+        return contentGeneration.getLimiterStats();
+    }
+
     @GetMapping("/test")
     public String test() {
         try {
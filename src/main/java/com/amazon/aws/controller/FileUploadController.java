@@ -25,26 +25,57 @@
 // }
 package com.amazon.aws.controller;
 
+import com.amazon.aws.ClaudeContentGeneration;
 import com.amazon.aws.service.FileProcessingService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
+import java.util.Map;
+
 @RestController
 public class FileUploadController {
 
+    private static final Logger logger = LoggerFactory.getLogger(FileUploadController.class);
+
     @Autowired
     private FileProcessingService fileProcessingService;
 
+    @Autowired
+    private ClaudeContentGeneration contentGeneration;
+
     @PostMapping("/api/upload")
-    public String handleFileUpload(@RequestParam("wordFile") MultipartFile wordFile,
-                                   @RequestParam("excelFile") MultipartFile excelFile) {
+    public String handleFileUpload(@RequestParam("wordFile") List<MultipartFile> wordFiles,
+                                   @RequestParam("excelFile") List<MultipartFile> excelFiles) {
         try {
-            return fileProcessingService.processFiles(wordFile, excelFile);
+            return fileProcessingService.processFiles(wordFiles, excelFiles);
         } catch (Exception e) {
             return "Failed to read files: " + e.getMessage();
         }
     }
+
+    // 上傳檔案直接分段摘要，擷取出的文字不經過瀏覽器
+    @PostMapping("/api/upload/summary")
+    public String handleUploadSummary(@RequestParam("wordFile") List<MultipartFile> wordFiles,
+                                      @RequestParam("excelFile") List<MultipartFile> excelFiles,
+                                      @RequestParam(value = "recordId", required = false) String recordId) {
+        try {
+            return contentGeneration.generateContent(
+                lines -> fileProcessingService.processFiles(wordFiles, excelFiles, lines), recordId);
+        } catch (Exception e) {
+            logger.error("Error generating content", e);
+            return "Error generating content: " + e.getMessage();
+        }
+    }
+
+    @GetMapping("/api/upload/stats")
+    public Map<String, Object> uploadStats() {
+        return fileProcessingService.getBatchStats();
+    }
 }
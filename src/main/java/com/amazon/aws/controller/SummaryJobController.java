@@ -0,0 +1,118 @@
+package com.amazon.aws.controller;
+
+import com.amazon.aws.service.SummaryJob;
+import com.amazon.aws.service.SummaryJobService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@RestController
+@RequestMapping("/api/jobs")
+public class SummaryJobController {
+
+    private static final Logger logger = LoggerFactory.getLogger(SummaryJobController.class);
+    private static final long EVENTS_TIMEOUT_MILLIS = 600000L;
+
+    @Autowired
+    private SummaryJobService jobService;
+
+    @PostMapping(consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Map<String, Object>> submit(@RequestBody Map<String, String> request) {
+        try {
+            int priority = Integer.parseInt(request.getOrDefault("priority", "0"));
+            SummaryJob job = jobService.submit(request.get("prompt"), request.get("recordId"), priority);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job.snapshot());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RejectedExecutionException e) {
+            // 佇列已滿，請稍後再送
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            logger.error("Unable to journal job", e);
+            return ResponseEntity.internalServerError().body(Map.of("error", "Unable to save job: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/stats")
+    public Map<String, Object> stats() {
+        return jobService.stats();
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<Map<String, Object>> status(@PathVariable("id") String id) {
+        SummaryJob job = jobService.get(id);
+        return job == null ? ResponseEntity.notFound().build() : ResponseEntity.ok(job.snapshot());
+    }
+
+    // 完成時回傳摘要，尚未完成時回傳 202 與目前狀態
+    @GetMapping("/{id}/result")
+    public ResponseEntity<String> result(@PathVariable("id") String id) {
+        SummaryJob job = jobService.get(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return switch (job.getStatus()) {
+            case SUCCEEDED -> ResponseEntity.ok(job.getResult());
+            case FAILED -> ResponseEntity.internalServerError().body("Error generating content: " + job.getError());
+            default -> ResponseEntity.status(HttpStatus.ACCEPTED).body(job.getStatus().name());
+        };
+    }
+
+    @GetMapping(value = "/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> events(@PathVariable("id") String id) {
+        SummaryJob job = jobService.get(id);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        SseEmitter emitter = new SseEmitter(EVENTS_TIMEOUT_MILLIS);
+        AtomicBoolean closed = new AtomicBoolean();
+        SummaryJob.Listener listener = new SummaryJob.Listener() {
+            @Override
+            public void onUpdate(SummaryJob updated) {
+                if (closed.get()) {
+                    return;
+                }
+                send(SseEmitter.event().name("progress").data(updated.snapshot(), MediaType.APPLICATION_JSON));
+                if (updated.isFinished() && closed.compareAndSet(false, true)) {
+                    updated.removeListener(this);
+                    if (updated.getStatus() == SummaryJob.Status.SUCCEEDED) {
+                        send(SseEmitter.event().name("done")
+                            .data(Map.of("text", updated.getResult()), MediaType.APPLICATION_JSON));
+                    } else {
+                        send(SseEmitter.event().name("error")
+                            .data(Map.of("message", "Error generating content: " + updated.getError()),
+                                MediaType.APPLICATION_JSON));
+                    }
+                    emitter.complete();
+                }
+            }
+
+            private void send(SseEmitter.SseEventBuilder event) {
+                try {
+                    emitter.send(event);
+                } catch (IOException | IllegalStateException e) {
+                    // The client went away, nothing left to deliver to
+                    logger.debug("Unable to send job event", e);
+                }
+            }
+        };
+
+        emitter.onCompletion(() -> job.removeListener(listener));
+        emitter.onTimeout(() -> job.removeListener(listener));
+        job.addListener(listener);
+        // 先送出目前狀態，已完成的工作會直接結束
+        listener.onUpdate(job);
+        return ResponseEntity.ok(emitter);
+    }
+}
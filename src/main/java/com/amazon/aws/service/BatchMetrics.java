@@ -0,0 +1,66 @@
+package com.amazon.aws.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 上傳分批的統計，同時登記到 Micrometer：依觸發原因的批次數、列數與寫入 sink 的時間
+public class BatchMetrics {
+
+    enum Trigger {
+        SIZE, TIME, CLOSE
+    }
+
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong lines = new AtomicLong();
+    private final AtomicLong sizeFlushes = new AtomicLong();
+    private final AtomicLong timeFlushes = new AtomicLong();
+    private final AtomicLong closeFlushes = new AtomicLong();
+    private final AtomicLong flushNanos = new AtomicLong();
+    private final Timer flushTimer;
+
+    public BatchMetrics(MeterRegistry meterRegistry) {
+        Map<Trigger, AtomicLong> flushes = Map.of(
+            Trigger.SIZE, sizeFlushes, Trigger.TIME, timeFlushes, Trigger.CLOSE, closeFlushes);
+        flushes.forEach((trigger, count) -> FunctionCounter.builder("upload.batches", count, AtomicLong::get)
+            .description("Batches of extracted lines handed to the sinks")
+            .tag("trigger", trigger.name().toLowerCase())
+            .register(meterRegistry));
+        FunctionCounter.builder("upload.batch.lines", lines, AtomicLong::get)
+            .description("Extracted lines handed to the sinks")
+            .register(meterRegistry);
+        this.flushTimer = Timer.builder("upload.batch.flush")
+            .description("Time to write one batch to all sinks")
+            .register(meterRegistry);
+    }
+
+    void record(Trigger trigger, int batchSize, long elapsedNanos) {
+        batches.incrementAndGet();
+        lines.addAndGet(batchSize);
+        flushNanos.addAndGet(elapsedNanos);
+        flushTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+        switch (trigger) {
+            case SIZE -> sizeFlushes.incrementAndGet();
+            case TIME -> timeFlushes.incrementAndGet();
+            case CLOSE -> closeFlushes.incrementAndGet();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long batchCount = batches.get();
+        stats.put("batches", batchCount);
+        stats.put("lines", lines.get());
+        stats.put("averageBatchSize", batchCount == 0 ? 0.0 : (double) lines.get() / batchCount);
+        stats.put("sizeFlushes", sizeFlushes.get());
+        stats.put("timeFlushes", timeFlushes.get());
+        stats.put("closeFlushes", closeFlushes.get());
+        stats.put("flushMillis", TimeUnit.NANOSECONDS.toMillis(flushNanos.get()));
+        return stats;
+    }
+}
@@ -0,0 +1,176 @@
+package com.amazon.aws.service;
+
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Writes Bedrock batch-inference input as JSON lines, starting a new shard file before one would go past the
+ * byte or record limit of a single input file.
+ * <p>
+ * A shard is written under a temporary name and gets its final name only once it is complete, together with a key
+ * file in {@code keyDirectory} that maps each batch record id of the shard to its segment key. A new writer keeps
+ * the complete shards it finds, reports their ids through {@link #getWrittenIds}, and numbers new shards after them,
+ * so an interrupted prepare resumes instead of writing everything again. Partial shards are deleted.
+ */
+class BatchShardWriter implements Closeable {
+
+    private static final String SHARD_SUFFIX = ".jsonl";
+    private static final String PARTIAL_SUFFIX = ".partial";
+    private static final String KEY_SUFFIX = ".keys";
+
+    private final Path directory;
+    private final Path keyDirectory;
+    private final String prefix;
+    private final long maxBytes;
+    private final int maxRecords;
+    private final List<Path> shards = new ArrayList<>();
+    private final Map<String, String> writtenIds = new HashMap<>();
+    private final int keptShards;
+
+    private OutputStream out;
+    private OutputStream keys;
+    private Path shard;
+    private long shardBytes;
+    private int shardRecords;
+    private long totalRecords;
+
+    BatchShardWriter(Path directory, Path keyDirectory, String prefix, long maxBytes, int maxRecords)
+        throws IOException {
+        if (maxBytes <= 0 || maxRecords <= 0) {
+            throw new IllegalArgumentException("'maxBytes' and 'maxRecords' must be positive");
+        }
+        this.directory = directory;
+        this.keyDirectory = keyDirectory;
+        this.prefix = prefix;
+        this.maxBytes = maxBytes;
+        this.maxRecords = maxRecords;
+        Files.createDirectories(directory);
+        Files.createDirectories(keyDirectory);
+        keepCompleteShards();
+        this.keptShards = shards.size();
+    }
+
+    void write(String recordId, String segmentKey, JSONObject modelInput) throws IOException {
+        byte[] line = (new JSONObject()
+            .put("recordId", recordId)
+            .put("modelInput", modelInput)
+            .toString() + "\n").getBytes(StandardCharsets.UTF_8);
+        if (line.length > maxBytes) {
+            throw new IllegalArgumentException("Record " + recordId + " is larger than the shard limit of "
+                + maxBytes + " bytes");
+        }
+        if (out == null || shardBytes + line.length > maxBytes || shardRecords >= maxRecords) {
+            nextShard();
+        }
+        out.write(line);
+        keys.write((recordId + "\t" + segmentKey + "\n").getBytes(StandardCharsets.UTF_8));
+        writtenIds.put(recordId, segmentKey);
+        shardBytes += line.length;
+        shardRecords++;
+        totalRecords++;
+    }
+
+    // Every shard, the ones kept from an earlier run first
+    List<Path> getShards() {
+        return List.copyOf(shards);
+    }
+
+    int getKeptShards() {
+        return keptShards;
+    }
+
+    // Batch record id to segment key of every record in a complete or open shard
+    Map<String, String> getWrittenIds() {
+        return Map.copyOf(writtenIds);
+    }
+
+    // Records written by this writer, not counting the kept shards
+    long getTotalRecords() {
+        return totalRecords;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out == null) {
+            return;
+        }
+        out.close();
+        keys.close();
+        out = null;
+        // The key file is in place before the shard, a shard under its final name always has one
+        Files.move(keyFile(shard, PARTIAL_SUFFIX), keyFile(shard, ""), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+        Files.move(partial(shard), shard, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void nextShard() throws IOException {
+        close();
+        shard = directory.resolve(String.format("%s-%05d%s", prefix, shards.size(), SHARD_SUFFIX));
+        out = new BufferedOutputStream(Files.newOutputStream(partial(shard)), 1 << 16);
+        keys = new BufferedOutputStream(Files.newOutputStream(keyFile(shard, PARTIAL_SUFFIX)), 1 << 16);
+        shards.add(shard);
+        shardBytes = 0;
+        shardRecords = 0;
+    }
+
+    // Shards are numbered without gaps, the first one that is missing or partial ends the kept ones
+    private void keepCompleteShards() throws IOException {
+        for (int index = 0; ; index++) {
+            Path complete = directory.resolve(String.format("%s-%05d%s", prefix, index, SHARD_SUFFIX));
+            if (!Files.exists(complete) || !Files.exists(keyFile(complete, ""))) {
+                break;
+            }
+            for (String line : Files.readAllLines(keyFile(complete, ""), StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    writtenIds.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+            shards.add(complete);
+        }
+        deleteAfter(directory, shards.size());
+        deleteAfter(keyDirectory, shards.size());
+    }
+
+    // Removes partial files and shards past the kept ones, which a later shard would overwrite anyway
+    private void deleteAfter(Path files, int keep) throws IOException {
+        try (Stream<Path> listed = Files.list(files)) {
+            for (Path file : listed.toList()) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(prefix + "-") && (name.endsWith(PARTIAL_SUFFIX) || shardIndex(name) >= keep)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private int shardIndex(String name) {
+        int start = prefix.length() + 1;
+        int end = start;
+        while (end < name.length() && Character.isDigit(name.charAt(end))) {
+            end++;
+        }
+        return end == start ? -1 : Integer.parseInt(name.substring(start, end));
+    }
+
+    private Path partial(Path file) {
+        return file.resolveSibling(file.getFileName() + PARTIAL_SUFFIX);
+    }
+
+    private Path keyFile(Path shardFile, String suffix) {
+        return keyDirectory.resolve(shardFile.getFileName() + KEY_SUFFIX + suffix);
+    }
+}
@@ -0,0 +1,13 @@
+package com.amazon.aws.service;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Destination of the extracted lines of an upload, receives them in bounded batches from {@link LineBatcher}.
+ */
+@FunctionalInterface
+public interface BatchSink {
+
+    void write(List<String> batch) throws IOException;
+}
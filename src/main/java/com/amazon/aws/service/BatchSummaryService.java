@@ -0,0 +1,428 @@
+package com.amazon.aws.service;
+
+import com.amazon.aws.ClaudeContentGeneration;
+import io.github.cdimascio.dotenv.Dotenv;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Offline batch mode for summarizing a directory of records, one UTF-8 text file per record.
+ * {@link #prepare} segments and preprocesses the records in parallel and writes every segment prompt as Bedrock
+ * batch-inference input, sharded by size. Once the batch job has run, {@link #ingest} works through the records in
+ * chunks: it reads the output once per chunk, keeps only the segment summaries of that chunk grouped by record, and
+ * hands them straight to the reduce step; segments missing from the output are summarized on demand. A record is
+ * done once its result file exists, so both steps can be rerun after an interruption and only work on the records
+ * that are left. Shards that {@link #prepare} completed before an interruption are kept and their segments are not
+ * written again.
+ */
+public class BatchSummaryService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchSummaryService.class);
+
+    private static final String RECORD_SUFFIX = ".txt";
+    private static final String OUTPUT_SUFFIX = ".jsonl.out";
+    // 與其他分段衝突而改用其他 recordId 的分段，ingest 依此對照
+    private static final String RECORD_IDS_FILE = "record-ids.tsv";
+    // 每個分片的 batch recordId 與分段快取鍵，與 input 分開存放，不會被一起上傳
+    private static final String SHARD_KEYS_DIRECTORY = "input-keys";
+    // Bedrock batch inference 的 recordId 為 11 個英數字，以 36 進位表示快取鍵中的 56 位元
+    private static final int BATCH_RECORD_ID_LENGTH = 11;
+    private static final int BATCH_RECORD_ID_HEX_DIGITS = 14;
+
+    private final ClaudeContentGeneration contentGeneration;
+    private final int prepareConcurrency;
+    private final int reduceConcurrency;
+    private final long shardMaxBytes;
+    private final int shardMaxRecords;
+    private final int ingestChunkRecords;
+
+    public record PrepareResult(int records, int skipped, int failed, long prompts, long cached, int keptShards,
+                                List<Path> shards) {
+    }
+
+    public record IngestResult(int records, int skipped, int failed, long batchSummaries, long missingSummaries) {
+    }
+
+    private record RecordPrompts(List<String> keys, List<JSONObject> modelInputs) {
+    }
+
+    // 一份病歷的分段，依分段順序排列；已在快取中的分段沒有 batch recordId，摘要直接取自快取
+    private record RecordSegments(Path record, String[] ids, String[] summaries) {
+
+        int fill(String id, String summary) {
+            int filled = 0;
+            for (int i = 0; i < ids.length; i++) {
+                if (id.equals(ids[i])) {
+                    summaries[i] = summary;
+                    filled++;
+                }
+            }
+            return filled;
+        }
+
+        int missing() {
+            return (int) Arrays.stream(summaries).filter(summary -> summary == null).count();
+        }
+    }
+
+    public BatchSummaryService(ClaudeContentGeneration contentGeneration, Dotenv dotenv) {
+        this.contentGeneration = contentGeneration;
+        this.prepareConcurrency = Integer.parseInt(dotenv.get("BATCH_PREPARE_CONCURRENCY",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+        this.reduceConcurrency = Integer.parseInt(dotenv.get("BATCH_REDUCE_CONCURRENCY", "4"));
+        this.shardMaxBytes = Long.parseLong(dotenv.get("BATCH_SHARD_MAX_BYTES", "500000000"));
+        this.shardMaxRecords = Integer.parseInt(dotenv.get("BATCH_SHARD_MAX_RECORDS", "50000"));
+        this.ingestChunkRecords = Integer.parseInt(dotenv.get("BATCH_INGEST_CHUNK_RECORDS", "10000"));
+    }
+
+    public PrepareResult prepare(Path recordsDirectory, Path workDirectory) throws IOException, InterruptedException {
+        List<Path> records = listRecords(recordsDirectory);
+        Path inputDirectory = workDirectory.resolve("input");
+        Path resultDirectory = workDirectory.resolve("results");
+
+        // 分段與前處理平行執行，寫入分片依病歷順序進行；上次已完成的分片保留，其中的分段不再寫入
+        ExecutorService executor = Executors.newFixedThreadPool(prepareConcurrency);
+        int skipped = 0;
+        int failed = 0;
+        long cached = 0;
+        Path recordIdsFile = workDirectory.resolve(RECORD_IDS_FILE);
+        try (BatchShardWriter writer = new BatchShardWriter(inputDirectory,
+            workDirectory.resolve(SHARD_KEYS_DIRECTORY), "segments", shardMaxBytes, shardMaxRecords)) {
+            Map<String, String> written = new HashMap<>(writer.getWrittenIds());
+            Map<String, String> remappedIds = writer.getKeptShards() > 0 ? readRecordIds(recordIdsFile) : new HashMap<>();
+            List<Path> pendingRecords = new ArrayList<>();
+            List<Future<RecordPrompts>> pending = new ArrayList<>();
+            for (Path record : records) {
+                if (Files.exists(resultFile(resultDirectory, record))) {
+                    skipped++;
+                    continue;
+                }
+                pendingRecords.add(record);
+                pending.add(executor.submit(() -> recordPrompts(record)));
+            }
+
+            for (int i = 0; i < pending.size(); i++) {
+                RecordPrompts prompts;
+                try {
+                    prompts = pending.get(i).get();
+                } catch (ExecutionException e) {
+                    failed++;
+                    logger.error("Unable to prepare record {}", pendingRecords.get(i), e.getCause());
+                    continue;
+                }
+                for (int j = 0; j < prompts.keys().size(); j++) {
+                    String key = prompts.keys().get(j);
+                    JSONObject modelInput = prompts.modelInputs().get(j);
+                    if (modelInput == null) {
+                        cached++;
+                        continue;
+                    }
+                    // 相同的分段提示只送出一次；recordId 已被其他分段使用時改用快取鍵的下一段
+                    for (int attempt = 0; ; attempt++) {
+                        String id = batchRecordId(key, attempt);
+                        String previous = written.putIfAbsent(id, key);
+                        if (previous == null) {
+                            writer.write(id, key, modelInput);
+                        }
+                        if (previous == null || previous.equals(key)) {
+                            if (attempt > 0) {
+                                remappedIds.put(key, id);
+                            }
+                            break;
+                        }
+                    }
+                }
+            }
+            writeRecordIds(recordIdsFile, remappedIds);
+            writer.close();
+
+            PrepareResult result = new PrepareResult(records.size(), skipped, failed, writer.getTotalRecords(),
+                cached, writer.getKeptShards(), writer.getShards());
+            logger.info("Prepared {} records ({} already done, {} failed): {} new segment prompts, {} shards ({} kept "
+                + "from an earlier run), {} already cached, {} record ids remapped", records.size(), skipped, failed,
+                result.prompts(), result.shards().size(), result.keptShards(), cached, remappedIds.size());
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public IngestResult ingest(Path recordsDirectory, Path workDirectory) throws IOException, InterruptedException {
+        List<Path> records = listRecords(recordsDirectory);
+        List<Path> outputFiles = listOutputs(workDirectory.resolve("output"));
+        Map<String, String> remappedIds = readRecordIds(workDirectory.resolve(RECORD_IDS_FILE));
+        Path resultDirectory = workDirectory.resolve("results");
+        Files.createDirectories(resultDirectory);
+
+        int skipped = 0;
+        List<Path> pendingRecords = new ArrayList<>();
+        for (Path record : records) {
+            if (Files.exists(resultFile(resultDirectory, record))) {
+                skipped++;
+            } else {
+                pendingRecords.add(record);
+            }
+        }
+
+        // 分段與前處理平行執行；每份病歷的合併與最終摘要仍即時呼叫 Bedrock，以 BATCH_REDUCE_CONCURRENCY 限制同時處理的病歷數
+        ExecutorService indexExecutor = Executors.newFixedThreadPool(prepareConcurrency);
+        ExecutorService reduceExecutor = Executors.newFixedThreadPool(reduceConcurrency,
+            Thread.ofVirtual().name("batch-reduce-", 0).factory());
+        int failed = 0;
+        long batchSummaries = 0;
+        long missingSummaries = 0;
+        try {
+            // 一次處理 BATCH_INGEST_CHUNK_RECORDS 份病歷，記憶體中只保留這些病歷的分段摘要
+            for (int from = 0; from < pendingRecords.size(); from += ingestChunkRecords) {
+                List<Path> chunk = pendingRecords.subList(from, Math.min(from + ingestChunkRecords, pendingRecords.size()));
+                List<Future<RecordSegments>> indexing = new ArrayList<>(chunk.size());
+                for (Path record : chunk) {
+                    indexing.add(indexExecutor.submit(() -> recordSegments(record, remappedIds)));
+                }
+                List<RecordSegments> indexed = new ArrayList<>(chunk.size());
+                for (int i = 0; i < indexing.size(); i++) {
+                    try {
+                        indexed.add(indexing.get(i).get());
+                    } catch (ExecutionException e) {
+                        failed++;
+                        logger.error("Unable to summarize record {}", chunk.get(i), e.getCause());
+                    }
+                }
+
+                batchSummaries += collectSummaries(outputFiles, indexed);
+
+                List<Future<?>> reducing = new ArrayList<>(indexed.size());
+                for (RecordSegments segments : indexed) {
+                    int missing = segments.missing();
+                    if (missing > 0) {
+                        missingSummaries += missing;
+                        logger.warn("Record {}: {} segment summaries missing from batch output, summarizing on demand",
+                            segments.record().getFileName(), missing);
+                    }
+                    reducing.add(reduceExecutor.submit(() -> {
+                        reduceRecord(segments, resultDirectory);
+                        return null;
+                    }));
+                }
+                for (int i = 0; i < reducing.size(); i++) {
+                    try {
+                        reducing.get(i).get();
+                    } catch (ExecutionException e) {
+                        failed++;
+                        logger.error("Unable to summarize record {}", indexed.get(i).record(), e.getCause());
+                    }
+                }
+            }
+        } finally {
+            indexExecutor.shutdownNow();
+            reduceExecutor.shutdownNow();
+        }
+
+        IngestResult result = new IngestResult(records.size(), skipped, failed, batchSummaries, missingSummaries);
+        logger.info("Ingested {} records ({} already done, {} failed): {} segment summaries from batch output, "
+            + "{} summarized on demand", records.size(), skipped, failed, result.batchSummaries(),
+            result.missingSummaries());
+        return result;
+    }
+
+    private RecordPrompts recordPrompts(Path record) throws IOException {
+        List<String> prompts = contentGeneration.segmentPrompts(Files.readString(record, StandardCharsets.UTF_8));
+        List<String> keys = new ArrayList<>(prompts.size());
+        List<JSONObject> modelInputs = new ArrayList<>(prompts.size());
+        for (String prompt : prompts) {
+            keys.add(contentGeneration.segmentSummaryKey(prompt));
+            // 已在快取中的分段 (SUMMARY_CACHE_DIR) 不需要再送出
+            modelInputs.add(contentGeneration.cachedSegmentSummary(prompt) != null
+                ? null : contentGeneration.batchModelInput(prompt));
+        }
+        return new RecordPrompts(keys, modelInputs);
+    }
+
+    private RecordSegments recordSegments(Path record, Map<String, String> remappedIds) throws IOException {
+        List<String> prompts = contentGeneration.segmentPrompts(Files.readString(record, StandardCharsets.UTF_8));
+        String[] ids = new String[prompts.size()];
+        String[] summaries = new String[prompts.size()];
+        for (int i = 0; i < prompts.size(); i++) {
+            String prompt = prompts.get(i);
+            summaries[i] = contentGeneration.cachedSegmentSummary(prompt);
+            if (summaries[i] == null) {
+                String key = contentGeneration.segmentSummaryKey(prompt);
+                ids[i] = remappedIds.getOrDefault(key, batchRecordId(key, 0));
+            }
+        }
+        return new RecordSegments(record, ids, summaries);
+    }
+
+    // 分段摘要直接交給合併步驟，不經過可能已被淘汰的摘要快取
+    private void reduceRecord(RecordSegments segments, Path resultDirectory) throws IOException {
+        String content = Files.readString(segments.record(), StandardCharsets.UTF_8);
+        String summary = contentGeneration.generateContent(content, recordName(segments.record()),
+            Arrays.asList(segments.summaries()));
+        writeResult(resultFile(resultDirectory, segments.record()), summary);
+    }
+
+    // 逐行讀取 batch 輸出，只解析這批病歷用到的分段，摘要依病歷分組；多份病歷共用的分段只解析一次
+    private long collectSummaries(List<Path> outputFiles, List<RecordSegments> records) throws IOException {
+        Map<String, List<RecordSegments>> wanted = new HashMap<>();
+        for (RecordSegments segments : records) {
+            for (String id : segments.ids()) {
+                if (id != null) {
+                    List<RecordSegments> targets = wanted.computeIfAbsent(id, ignored -> new ArrayList<>(1));
+                    if (targets.isEmpty() || targets.get(targets.size() - 1) != segments) {
+                        targets.add(segments);
+                    }
+                }
+            }
+        }
+
+        long collected = 0;
+        int errors = 0;
+        for (Path file : outputFiles) {
+            if (wanted.isEmpty()) {
+                break;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null && !wanted.isEmpty()) {
+                    String id = recordIdOf(line);
+                    if (id != null && !wanted.containsKey(id)) {
+                        continue;
+                    }
+                    JSONObject output;
+                    try {
+                        output = new JSONObject(line);
+                    } catch (JSONException e) {
+                        if (!line.isBlank()) {
+                            logger.warn("Skipping unreadable batch output line in {}", file);
+                        }
+                        continue;
+                    }
+                    id = output.optString("recordId");
+                    if (!wanted.containsKey(id)) {
+                        continue;
+                    }
+                    if (output.has("error")) {
+                        errors++;
+                        logger.debug("Batch record {} failed: {}", id, output.get("error"));
+                        continue;
+                    }
+                    JSONObject modelOutput = output.optJSONObject("modelOutput");
+                    if (modelOutput == null) {
+                        continue;
+                    }
+                    String summary;
+                    try {
+                        summary = contentGeneration.parseSegmentSummary(modelOutput);
+                    } catch (RuntimeException e) {
+                        logger.warn("Unreadable batch output for record id {}: {}", id, e.getMessage());
+                        continue;
+                    }
+                    for (RecordSegments segments : wanted.remove(id)) {
+                        collected += segments.fill(id, summary);
+                    }
+                }
+            }
+        }
+        logger.info("Collected {} segment summaries for {} records ({} failed batch records)", collected,
+            records.size(), errors);
+        return collected;
+    }
+
+    // 不解析整行即可略過其他病歷的輸出；找不到時交由 JSONObject 解析
+    private static String recordIdOf(String line) {
+        int key = line.indexOf("\"recordId\"");
+        if (key < 0) {
+            return null;
+        }
+        int open = line.indexOf('"', key + 10);
+        if (open < 0 || !line.substring(key + 10, open).strip().equals(":")) {
+            return null;
+        }
+        int close = line.indexOf('"', open + 1);
+        return close < 0 ? null : line.substring(open + 1, close);
+    }
+
+    // 以分段快取鍵的第 attempt 段 (每段 56 位元) 作為 batch recordId，重新執行時只需另存衝突的分段
+    private static String batchRecordId(String segmentKey, int attempt) {
+        int from = attempt * BATCH_RECORD_ID_HEX_DIGITS;
+        if (from + BATCH_RECORD_ID_HEX_DIGITS > segmentKey.length()) {
+            throw new IllegalStateException("No free batch record id for segment " + segmentKey);
+        }
+        String id = Long.toString(Long.parseLong(segmentKey.substring(from, from + BATCH_RECORD_ID_HEX_DIGITS), 16), 36);
+        return "0".repeat(BATCH_RECORD_ID_LENGTH - id.length()) + id;
+    }
+
+    private static void writeRecordIds(Path file, Map<String, String> remappedIds) throws IOException {
+        if (remappedIds.isEmpty()) {
+            Files.deleteIfExists(file);
+            return;
+        }
+        List<String> lines = new ArrayList<>(remappedIds.size());
+        remappedIds.forEach((key, id) -> lines.add(key + "\t" + id));
+        Files.write(file, lines, StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> readRecordIds(Path file) throws IOException {
+        Map<String, String> remappedIds = new HashMap<>();
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    remappedIds.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        }
+        return remappedIds;
+    }
+
+    private static List<Path> listOutputs(Path outputDirectory) throws IOException {
+        if (!Files.isDirectory(outputDirectory)) {
+            logger.warn("No batch output in {}, every segment will be summarized on demand", outputDirectory);
+            return List.of();
+        }
+        try (Stream<Path> walk = Files.walk(outputDirectory)) {
+            return walk.filter(file -> file.getFileName().toString().endsWith(OUTPUT_SUFFIX)).sorted().toList();
+        }
+    }
+
+    private static List<Path> listRecords(Path recordsDirectory) throws IOException {
+        try (Stream<Path> files = Files.list(recordsDirectory)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(RECORD_SUFFIX)).sorted().toList();
+        }
+    }
+
+    private static String recordName(Path record) {
+        String name = record.getFileName().toString();
+        return name.substring(0, name.length() - RECORD_SUFFIX.length());
+    }
+
+    private static Path resultFile(Path resultDirectory, Path record) {
+        return resultDirectory.resolve(record.getFileName());
+    }
+
+    // 先寫入暫存檔再改名，中斷時不會留下不完整的結果被當成已完成
+    private static void writeResult(Path resultFile, String summary) throws IOException {
+        Path tmpFile = Files.createTempFile(resultFile.getParent(), resultFile.getFileName().toString(), ".tmp");
+        Files.writeString(tmpFile, summary, StandardCharsets.UTF_8);
+        Files.move(tmpFile, resultFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,313 @@
+package com.amazon.aws.service;
+
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Reads the sheets of a workbook row by row without building the workbook model in memory.
+ * Each row is handed to the consumer as its cells joined by tabs, in the same format the old
+ * XSSFWorkbook/HSSFWorkbook readers produced: strings as is, numbers as Java doubles, anything else as a space.
+ */
+class ExcelStreamReader {
+
+    private ExcelStreamReader() {
+    }
+
+    /**
+     * Parses every sheet as its own task on the executor, all sharing one package and one shared strings table.
+     * Each sheet is held in a {@link SectionBuffer} until the sheets before it are complete, then handed to its
+     * consumer, so the consumers are still asked for in sheet order. The package is closed once every sheet is done.
+     */
+    static CompletableFuture<Void> readXlsx(File file, IntFunction<Consumer<String>> sheetConsumers,
+                                            long maxBufferedChars, Executor executor) throws Exception {
+        OPCPackage opcPackage = OPCPackage.open(file, PackageAccess.READ);
+        List<SectionBuffer> buffers = new ArrayList<>();
+        List<AtomicReference<Consumer<String>>> targets = new ArrayList<>();
+        List<CompletableFuture<Void>> parsed = new ArrayList<>();
+        try {
+            XSSFReader reader = new XSSFReader(opcPackage);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(opcPackage, false);
+
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            while (sheets.hasNext()) {
+                InputStream sheet = sheets.next();
+                AtomicReference<Consumer<String>> target = new AtomicReference<>();
+                SectionBuffer buffer = new SectionBuffer(line -> target.get().accept(line), maxBufferedChars);
+                targets.add(target);
+                buffers.add(buffer);
+                parsed.add(CompletableFuture.runAsync(() -> parseSheet(sheet, sharedStrings, buffer), executor));
+            }
+        } catch (Exception e) {
+            closeWhenSettled(opcPackage, buffers, parsed);
+            throw e;
+        }
+
+        CompletableFuture<Void> emitted = CompletableFuture.completedFuture(null);
+        for (int i = 0; i < buffers.size(); i++) {
+            int sheetIndex = i;
+            emitted = emitted
+                .thenRun(() -> {
+                    targets.get(sheetIndex).set(sheetConsumers.apply(sheetIndex));
+                    release(buffers.get(sheetIndex));
+                })
+                .thenCompose(ignored -> parsed.get(sheetIndex));
+        }
+        // Sheets parsed ahead may still be waiting to be replayed, so the buffers are closed only after the last one
+        return emitted
+            .handle((ignored, e) -> closeWhenSettled(opcPackage, buffers, parsed).thenCompose(done -> e == null
+                ? CompletableFuture.<Void>completedFuture(null)
+                : CompletableFuture.<Void>failedFuture(e)))
+            .thenCompose(Function.identity());
+    }
+
+    private static void parseSheet(InputStream sheet, ReadOnlySharedStringsTable sharedStrings,
+                                   Consumer<String> rowConsumer) {
+        try (InputStream in = sheet) {
+            XMLReader parser = XMLHelper.newXMLReader();
+            parser.setContentHandler(new SheetHandler(sharedStrings, rowConsumer));
+            parser.parse(new InputSource(in));
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static void release(SectionBuffer buffer) {
+        try {
+            buffer.release();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to replay parsed rows", e);
+        }
+    }
+
+    // A failed sheet leaves the others running, the package and the buffers are closed only after all of them end
+    private static CompletableFuture<Void> closeWhenSettled(OPCPackage opcPackage, List<SectionBuffer> buffers,
+                                                            List<CompletableFuture<Void>> parsed) {
+        return CompletableFuture.allOf(parsed.toArray(new CompletableFuture[0]))
+            .handle((ignored, e) -> null)
+            .thenRun(() -> {
+                opcPackage.revert();
+                try {
+                    for (SectionBuffer buffer : buffers) {
+                        buffer.close();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Unable to discard parsed rows", e);
+                }
+            });
+    }
+
+    // The .xls record stream holds all sheets one after the other, so they are read in a single pass
+    static void readXls(File file, IntFunction<Consumer<String>> sheetConsumers) throws Exception {
+        try (POIFSFileSystem fileSystem = new POIFSFileSystem(file, true)) {
+            HSSFRequest request = new HSSFRequest();
+            request.addListenerForAllRecords(new SheetListener(sheetConsumers));
+            new HSSFEventFactory().processWorkbookEvents(request, fileSystem);
+        }
+    }
+
+    // SAX handler for the sheet XML: <row><c r="A1" t="s"><v>0</v></c>...</row>
+    private static class SheetHandler extends DefaultHandler {
+
+        private final ReadOnlySharedStringsTable sharedStrings;
+        private final Consumer<String> rowConsumer;
+        private final StringBuilder row = new StringBuilder();
+        private final StringBuilder value = new StringBuilder();
+
+        private String cellType;
+        private boolean hasFormula;
+        private boolean capturing;
+
+        SheetHandler(ReadOnlySharedStringsTable sharedStrings, Consumer<String> rowConsumer) {
+            this.sharedStrings = sharedStrings;
+            this.rowConsumer = rowConsumer;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    row.setLength(0);
+                    break;
+                case "c":
+                    cellType = attributes.getValue("t");
+                    hasFormula = false;
+                    value.setLength(0);
+                    break;
+                case "f":
+                    hasFormula = true;
+                    break;
+                case "v":
+                case "t":
+                    capturing = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (capturing) {
+                value.append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                case "t":
+                    capturing = false;
+                    break;
+                case "c":
+                    appendCell();
+                    break;
+                case "row":
+                    rowConsumer.accept(row.toString());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void appendCell() {
+            if (hasFormula) {
+                row.append(" ");
+            } else if ("s".equals(cellType)) {
+                row.append(sharedStrings.getItemAt(Integer.parseInt(value.toString())).getString());
+            } else if ("inlineStr".equals(cellType)) {
+                row.append(value);
+            } else if ((cellType == null || "n".equals(cellType)) && value.length() > 0) {
+                row.append(Double.parseDouble(value.toString()));
+            } else {
+                row.append(" ");
+            }
+            row.append("\t");
+        }
+    }
+
+    // HSSF event listener that collects the cells of every worksheet, row by row
+    private static class SheetListener implements HSSFListener {
+
+        private final IntFunction<Consumer<String>> sheetConsumers;
+        private Consumer<String> rowConsumer;
+        private final StringBuilder row = new StringBuilder();
+        // Rows declared by RowRecords that have not been emitted yet, rows without cells still produce a line
+        private final PriorityQueue<Integer> pendingRows = new PriorityQueue<>();
+
+        private SSTRecord sharedStrings;
+        private int worksheetIndex = -1;
+        private int currentRow = -1;
+
+        SheetListener(IntFunction<Consumer<String>> sheetConsumers) {
+            this.sheetConsumers = sheetConsumers;
+        }
+
+        @Override
+        public void processRecord(org.apache.poi.hssf.record.Record record) {
+            if (record instanceof BOFRecord bof) {
+                if (bof.getType() == BOFRecord.TYPE_WORKSHEET) {
+                    worksheetIndex++;
+                    rowConsumer = sheetConsumers.apply(worksheetIndex);
+                }
+                return;
+            }
+            if (record instanceof SSTRecord sst) {
+                sharedStrings = sst;
+                return;
+            }
+            if (rowConsumer == null) {
+                return;
+            }
+
+            if (record instanceof RowRecord rowRecord) {
+                pendingRows.add(rowRecord.getRowNumber());
+            } else if (record instanceof LabelSSTRecord label) {
+                appendCell(label, sharedStrings.getString(label.getSSTIndex()).getString());
+            } else if (record instanceof LabelRecord label) {
+                appendCell(label, label.getValue());
+            } else if (record instanceof NumberRecord number) {
+                appendCell(number, String.valueOf(number.getValue()));
+            } else if (record instanceof FormulaRecord || record instanceof BlankRecord || record instanceof BoolErrRecord) {
+                appendCell((CellValueRecordInterface) record, " ");
+            } else if (record instanceof MulBlankRecord blanks) {
+                for (int i = 0; i < blanks.getNumColumns(); i++) {
+                    startRow(blanks.getRow());
+                    row.append(" ").append("\t");
+                }
+            } else if (record instanceof EOFRecord) {
+                finishRow();
+                while (!pendingRows.isEmpty()) {
+                    pendingRows.poll();
+                    rowConsumer.accept("");
+                }
+                rowConsumer = null;
+            }
+        }
+
+        private void appendCell(CellValueRecordInterface cell, String text) {
+            startRow(cell.getRow());
+            row.append(text).append("\t");
+        }
+
+        private void startRow(int rowNumber) {
+            if (rowNumber == currentRow) {
+                return;
+            }
+            finishRow();
+            while (!pendingRows.isEmpty() && pendingRows.peek() < rowNumber) {
+                pendingRows.poll();
+                rowConsumer.accept("");
+            }
+            pendingRows.remove(rowNumber);
+            currentRow = rowNumber;
+        }
+
+        private void finishRow() {
+            if (currentRow >= 0) {
+                rowConsumer.accept(row.toString());
+                row.setLength(0);
+                currentRow = -1;
+            }
+        }
+    }
+}
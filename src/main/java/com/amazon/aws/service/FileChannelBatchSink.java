@@ -0,0 +1,121 @@
+package com.amazon.aws.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends batches to one file through a FileChannel that stays open, encoding the lines as UTF-8 into a reused
+ * direct buffer, so a batch costs a few write calls instead of an open/close per batch.
+ * <p>
+ * Concurrent uploads share the file, so each one writes through its own {@link #openRequest() request sink}: the
+ * lines are spooled to a temporary file and appended in one piece when the request closes, and the output of one
+ * upload is never interleaved with another's.
+ */
+public class FileChannelBatchSink implements BatchSink, AutoCloseable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final CharBuffer NEWLINE = CharBuffer.wrap("\n");
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+
+    public FileChannelBatchSink(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public synchronized void write(List<String> batch) throws IOException {
+        for (String line : batch) {
+            encode(CharBuffer.wrap(line));
+            encode(NEWLINE.duplicate());
+        }
+        drain();
+    }
+
+    private void encode(CharBuffer chars) throws IOException {
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isUnderflow()) {
+                break;
+            } else {
+                result.throwException();
+            }
+        }
+        while (encoder.flush(buffer).isOverflow()) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns a sink for the lines of one request, appended to this file when the returned sink is closed.
+     */
+    public Request openRequest() throws IOException {
+        return new Request(Files.createTempFile("upload-output-", ".txt"));
+    }
+
+    private synchronized void append(Path spooled) throws IOException {
+        try (FileChannel in = FileChannel.open(spooled, StandardOpenOption.READ)) {
+            long size = in.size();
+            for (long position = 0; position < size; ) {
+                position += in.transferTo(position, size - position, channel);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    public final class Request implements BatchSink, AutoCloseable {
+
+        private final Path spooled;
+        private final FileChannelBatchSink spool;
+        private boolean closed;
+
+        private Request(Path spooled) throws IOException {
+            this.spooled = spooled;
+            this.spool = new FileChannelBatchSink(spooled);
+        }
+
+        @Override
+        public void write(List<String> batch) throws IOException {
+            spool.write(batch);
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                spool.close();
+                append(spooled);
+            } finally {
+                Files.deleteIfExists(spooled);
+            }
+        }
+    }
+}
@@ -1,224 +1,264 @@
 package com.amazon.aws.service;
 
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
-import org.apache.poi.hwpf.HWPFDocument;
-import org.apache.poi.hwpf.extractor.WordExtractor;
-import org.apache.poi.hwpf.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.apache.poi.xwpf.usermodel.*;
+import io.github.cdimascio.dotenv.Dotenv;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
 
 @Service
 public class FileProcessingService {
 
-    private static final int BATCH_SIZE = 100; // Adjust batch size as needed
+    private static final List<String> SUPPORTED_SUFFIXES = List.of(".docx", ".doc", ".xlsx", ".xls");
 
-    public String processFiles(MultipartFile wordFile, MultipartFile excelFile) throws Exception {
-        String wordContent = processWordFile(wordFile);
-        String excelContent = processExcelFile(excelFile);
+    private final int batchSize;
+    private final long batchFlushMillis;
+    private final FileChannelBatchSink outputSink;
+    private final BatchMetrics batchMetrics;
+    private final ScheduledExecutorService batchFlusher;
+    private final ExecutorService parseExecutor;
+    private final int maxPendingFiles;
+    private final long sectionBufferChars;
+    private final MeterRegistry meterRegistry;
+    private final Tracer tracer;
 
-        return wordContent + "\n\n" + excelContent;
+    public FileProcessingService() throws IOException {
+        this(Metrics.globalRegistry, Tracer.NOOP);
     }
 
-    private String processWordFile(MultipartFile file) throws Exception {
-        String fileName = file.getOriginalFilename();
-        if (fileName == null) {
-            throw new IllegalArgumentException("Invalid file name");
-        }
+    @Autowired
+    public FileProcessingService(MeterRegistry meterRegistry, Tracer tracer) throws IOException {
+        Dotenv dotenv = Dotenv.load();
+        this.meterRegistry = meterRegistry;
+        this.tracer = tracer;
 
-        InputStream inputStream = file.getInputStream();
-        if (fileName.endsWith(".docx")) {
-            return readWordFile(inputStream);
-        } else if (fileName.endsWith(".doc")) {
-            return readOldWordFile(inputStream);
-        } else {
-            throw new IllegalArgumentException("Unsupported word file type");
-        }
+        this.batchSize = Integer.parseInt(dotenv.get("UPLOAD_BATCH_SIZE", "100"));
+        this.batchFlushMillis = Long.parseLong(dotenv.get("UPLOAD_BATCH_FLUSH_MS", "1000"));
+        this.batchMetrics = new BatchMetrics(meterRegistry);
+        // 批次的第一列等待超過 UPLOAD_BATCH_FLUSH_MS 時，即使讀取停住也送出
+        this.batchFlusher = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("upload-batch-flush").daemon().factory());
+
+        // UPLOAD_OUTPUT_FILE 設定後，擷取出的每一列也會附加寫入該檔案
+        String outputFile = dotenv.get("UPLOAD_OUTPUT_FILE", "");
+        this.outputSink = outputFile.isBlank() ? null : new FileChannelBatchSink(Paths.get(outputFile));
+
+        // 解析屬於 CPU 密集工作，同時解析的檔案與工作表數量以 UPLOAD_PARSE_CONCURRENCY 限制
+        int parseConcurrency = Integer.parseInt(dotenv.get("UPLOAD_PARSE_CONCURRENCY",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+        this.parseExecutor = Executors.newFixedThreadPool(parseConcurrency,
+            Thread.ofPlatform().name("upload-parse-", 0).daemon().factory());
+
+        // 每個請求同時解析或等待輸出的檔案數，以及每個檔案暫存在記憶體的字元數上限，超過時寫入暫存檔
+        this.maxPendingFiles = Math.max(1, Integer.parseInt(dotenv.get("UPLOAD_PENDING_FILES",
+            String.valueOf(parseConcurrency))));
+        this.sectionBufferChars = Long.parseLong(dotenv.get("UPLOAD_SECTION_BUFFER_CHARS", "1000000"));
     }
 
-    private String processExcelFile(MultipartFile file) throws Exception {
-        String fileName = file.getOriginalFilename();
-        if (fileName == null) {
-            throw new IllegalArgumentException("Invalid file name");
+    @PreDestroy
+    public void shutdown() throws IOException {
+        parseExecutor.shutdownNow();
+        batchFlusher.shutdownNow();
+        if (outputSink != null) {
+            outputSink.close();
         }
+    }
 
-        InputStream inputStream = file.getInputStream();
-        if (fileName.endsWith(".xlsx")) {
-            return readExcelFile(inputStream);
-        } else if (fileName.endsWith(".xls")) {
-            return readOldExcelFile(inputStream);
-        } else {
-            throw new IllegalArgumentException("Unsupported excel file type");
-        }
+    public Map<String, Object> getBatchStats() {
+        return batchMetrics.stats();
     }
 
-    private String readWordFile(InputStream inputStream) throws Exception {
-        XWPFDocument document = new XWPFDocument(inputStream);
-        List<String> batchContent = new ArrayList<>();
+    public String processFiles(List<MultipartFile> wordFiles, List<MultipartFile> excelFiles) throws Exception {
         StringBuilder content = new StringBuilder();
+        processFiles(wordFiles, excelFiles, line -> content.append(line).append("\n"));
+        return content.toString();
+    }
 
-        for (XWPFParagraph paragraph : document.getParagraphs()) {
-            content.append(paragraph.getText()).append("\n");
-            if (batchContent.size() >= BATCH_SIZE) {
-                // Process batch
-                processBatch(batchContent);
-                batchContent.clear();
-            }
-        }
+    // 擷取出的列依序分批交給 lineConsumer，不組成完整文字
+    public void processFiles(List<MultipartFile> wordFiles, List<MultipartFile> excelFiles,
+                             Consumer<String> lineConsumer) throws Exception {
+        // 先放所有 Word，再放所有 Excel，各自依上傳順序
+        List<MultipartFile> files = new ArrayList<>(wordFiles);
+        files.addAll(excelFiles);
 
-        for (XWPFTable table : document.getTables()) {
-            for (XWPFTableRow row : table.getRows()) {
-                for (XWPFTableCell cell : row.getTableCells()) {
-                    content.append(cell.getText()).append("\t");
-                }
-                content.append("\n");
-            }
-            content.append("\n");
-            if (batchContent.size() >= BATCH_SIZE) {
-                // Process batch
-                processBatch(batchContent);
-                batchContent.clear();
-            }
+        try (LineBatcher batcher = newBatcher(batch -> batch.forEach(lineConsumer))) {
+            streamFiles(files, batcher);
         }
+    }
 
-        if (!batchContent.isEmpty()) {
-            processBatch(batchContent);
+    // 擷取出的列分批送往 sink（例如摘要流程），並同時寫入 UPLOAD_OUTPUT_FILE；
+    // 每個請求的輸出先寫入自己的暫存檔，關閉 batcher 時整段附加，同時上傳的請求不會交錯
+    public LineBatcher newBatcher(BatchSink sink) throws IOException {
+        List<BatchSink> sinks = new ArrayList<>(2);
+        sinks.add(sink);
+        if (outputSink != null) {
+            sinks.add(outputSink.openRequest());
         }
-
-        return content.toString();
+        return new LineBatcher(batchSize, batchFlushMillis, sinks, batchMetrics, batchFlusher);
     }
 
-    private String readOldWordFile(InputStream inputStream) throws Exception {
-        HWPFDocument document = new HWPFDocument(inputStream);
-        WordExtractor extractor = new WordExtractor(document);
-        List<String> batchContent = new ArrayList<>();
-        StringBuilder content = new StringBuilder();
-
-        Range range = document.getRange();
-        for (int i = 0; i < range.numParagraphs(); i++) {
-            Paragraph paragraph = range.getParagraph(i);
-            content.append(paragraph.text()).append("\n");
-            if (batchContent.size() >= BATCH_SIZE) {
-                // Process batch
-                processBatch(batchContent);
-                batchContent.clear();
+    // 各檔案在 parseExecutor 上平行解析，依上傳順序輸出：輪到的檔案直接交給 lineConsumer，其餘先暫存在 SectionBuffer，
+    // 同時解析或等待輸出的檔案最多 UPLOAD_PENDING_FILES 個。檔案之間空兩行、工作表之間空一行，輸出與逐一讀取相同
+    public void streamFiles(List<MultipartFile> files, Consumer<String> lineConsumer) throws Exception {
+        List<File> tmpFiles = new ArrayList<>(files.size());
+        List<String> suffixes = new ArrayList<>(files.size());
+        List<SectionBuffer> sections = new ArrayList<>(files.size());
+        List<CompletableFuture<Void>> parsed = new ArrayList<>(files.size());
+        Span parent = tracer.currentSpan();
+        try {
+            for (MultipartFile file : files) {
+                String suffix = fileSuffix(file);
+                tmpFiles.add(spoolToTempFile(file, suffix));
+                suffixes.add(suffix);
             }
-        }
 
-        for (int i = 0; i < range.numParagraphs(); i++) {
-            Paragraph paragraph = range.getParagraph(i);
-            if (paragraph.isInTable()) {
-                Table table = range.getTable(paragraph);
-                for (int j = 0; j < table.numRows(); j++) {
-                    TableRow row = table.getRow(j);
-                    for (int k = 0; k < row.numCells(); k++) {
-                        TableCell cell = row.getCell(k);
-                        content.append(cell.getParagraph(0).text()).append("\t");
-                    }
-                    content.append("\n");
-                    if (batchContent.size() >= BATCH_SIZE) {
-                        // Process batch
-                        processBatch(batchContent);
-                        batchContent.clear();
+            for (int i = 0; i < tmpFiles.size(); i++) {
+                if (i > 0) {
+                    lineConsumer.accept("");
+                    lineConsumer.accept("");
+                }
+                // 前一個檔案輸出完畢後，才開始解析下一個等待中的檔案
+                while (parsed.size() < Math.min(tmpFiles.size(), i + maxPendingFiles)) {
+                    int next = parsed.size();
+                    SectionBuffer section = new SectionBuffer(lineConsumer, sectionBufferChars);
+                    if (next == i) {
+                        section.release();
                     }
+                    sections.add(section);
+                    parsed.add(parseAsync(tmpFiles.get(next), suffixes.get(next), section, parent));
                 }
-                content.append("\n");
-                // Skip over the rest of the table
-                i += table.numParagraphs();
+                sections.get(i).release();
+                await(parsed.get(i));
+                sections.get(i).close();
+            }
+        } finally {
+            // 任一檔案失敗時，仍等其餘解析結束再刪除暫存檔
+            CompletableFuture.allOf(parsed.toArray(new CompletableFuture[0])).handle((result, error) -> null).join();
+            for (SectionBuffer section : sections) {
+                section.close();
+            }
+            for (File tmpFile : tmpFiles) {
+                Files.deleteIfExists(tmpFile.toPath());
             }
         }
+    }
 
-        if (!batchContent.isEmpty()) {
-            processBatch(batchContent);
+    private String fileSuffix(MultipartFile file) {
+        String fileName = file.getOriginalFilename();
+        if (fileName == null) {
+            throw new IllegalArgumentException("Invalid file name");
         }
-
-        return content.toString();
+        for (String suffix : SUPPORTED_SUFFIXES) {
+            if (fileName.endsWith(suffix)) {
+                return suffix;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported file type: " + fileName);
     }
 
-    private String readExcelFile(InputStream inputStream) throws Exception {
-        XSSFWorkbook workbook = new XSSFWorkbook(inputStream);
-        XSSFSheet sheet = workbook.getSheetAt(0);
-        List<String> batchContent = new ArrayList<>();
-        StringBuilder content = new StringBuilder();
-
-        sheet.forEach(row -> {
-            row.forEach(cell -> {
-                switch (cell.getCellType()) {
-                    case STRING:
-                        content.append(cell.getStringCellValue()).append("\t");
-                        break;
-                    case NUMERIC:
-                        content.append(cell.getNumericCellValue()).append("\t");
-                        break;
-                    default:
-                        content.append(" ").append("\t");
-                }
-            });
-            content.append("\n");
-            if (batchContent.size() >= BATCH_SIZE) {
-                // Process batch
-                processBatch(batchContent);
-                batchContent.clear();
+    // 解析出的列依序寫入 section，Excel 的工作表之間空一行；.xlsx 的工作表各自在 parseExecutor 上平行解析，
+    // 共用 shared strings，尚未輪到的工作表先暫存在 SectionBuffer
+    private CompletableFuture<Void> parseAsync(File file, String suffix, Consumer<String> section, Span parent) {
+        IntFunction<Consumer<String>> sheets = sheetIndex -> {
+            if (sheetIndex > 0) {
+                section.accept("");
+            }
+            return section;
+        };
+        return instrumented(suffix, parent, () -> {
+            switch (suffix) {
+                case ".docx":
+                    WordStreamReader.readDocx(file, section);
+                    break;
+                case ".doc":
+                    WordStreamReader.readDoc(file, section);
+                    break;
+                case ".xls":
+                    ExcelStreamReader.readXls(file, sheets);
+                    break;
+                default:
+                    return ExcelStreamReader.readXlsx(file, sheets, sectionBufferChars, parseExecutor);
             }
+            return CompletableFuture.completedFuture(null);
         });
-
-        if (!batchContent.isEmpty()) {
-            processBatch(batchContent);
-        }
-
-        return content.toString();
     }
 
-    private String readOldExcelFile(InputStream inputStream) throws Exception {
-        HSSFWorkbook workbook = new HSSFWorkbook(inputStream);
-        HSSFSheet sheet = workbook.getSheetAt(0);
-        List<String> batchContent = new ArrayList<>();
-        StringBuilder content = new StringBuilder();
-
-        sheet.forEach(row -> {
-            row.forEach(cell -> {
-                switch (cell.getCellType()) {
-                    case STRING:
-                        content.append(cell.getStringCellValue()).append("\t");
-                        break;
-                    case NUMERIC:
-                        content.append(cell.getNumericCellValue()).append("\t");
-                        break;
-                    default:
-                        content.append(" ").append("\t");
+    // 解析時間依檔案類型記錄，包含平行解析的工作表，並在上傳請求的 trace 下為每個檔案產生一個 span
+    private CompletableFuture<Void> instrumented(String suffix, Span parent, Callable<CompletableFuture<Void>> parser) {
+        Timer timer = Timer.builder("upload.parse")
+            .description("Time to parse one uploaded file")
+            .tag("type", suffix.substring(1))
+            .publishPercentileHistogram()
+            .register(meterRegistry);
+        return supplyParsed(() -> {
+            Span span = tracer.nextSpan(parent).name("upload.parse").tag("type", suffix.substring(1)).start();
+            long start = System.nanoTime();
+            CompletableFuture<Void> parsed;
+            try (Tracer.SpanInScope ignored = tracer.withSpan(span)) {
+                parsed = parser.call();
+            } catch (Exception e) {
+                parsed = CompletableFuture.failedFuture(e);
+            }
+            return parsed.whenComplete((result, e) -> {
+                timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (e != null) {
+                    span.error(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
                 }
+                span.end();
             });
-            content.append("\n");
-            if (batchContent.size() >= BATCH_SIZE) {
-                // Process batch
-                processBatch(batchContent);
-                batchContent.clear();
+        }).thenCompose(Function.identity());
+    }
+
+    private <T> CompletableFuture<T> supplyParsed(Callable<T> parser) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return parser.call();
+            } catch (Exception e) {
+                throw new CompletionException(e);
             }
-        });
+        }, parseExecutor);
+    }
 
-        if (!batchContent.isEmpty()) {
-            processBatch(batchContent);
+    private <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
         }
-
-        return content.toString();
     }
 
-    private void processBatch(List<String> batchContent) {
-        // Process each batch content, for example, saving to file or database
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter("output.txt", true))) {
-            for (String line : batchContent) {
-                writer.write(line);
-                writer.newLine();
-            }
+    // 串流讀取需要隨機存取檔案，先將上傳內容寫入暫存檔
+    private File spoolToTempFile(MultipartFile file, String suffix) throws IOException {
+        File tmpFile = File.createTempFile("upload-", suffix);
+        try {
+            file.transferTo(tmpFile);
+            return tmpFile;
         } catch (IOException e) {
-            e.printStackTrace();
+            Files.deleteIfExists(tmpFile.toPath());
+            throw e;
         }
     }
 }
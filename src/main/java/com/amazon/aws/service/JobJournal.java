@@ -0,0 +1,120 @@
+package com.amazon.aws.service;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only journal of job records, one JSON object per line. Every append is forced to disk before it returns,
+ * so an accepted job survives a crash. A torn last line left by a crash is skipped when the journal is read back.
+ * The callers are virtual threads, so the lock around the force is a ReentrantLock rather than a monitor, which
+ * would pin the carrier thread for the whole disk flush.
+ */
+class JobJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobJournal.class);
+
+    private final Path file;
+    private final ReentrantLock lock = new ReentrantLock();
+    private FileChannel channel;
+
+    JobJournal(Path file) throws IOException {
+        this.file = file.toAbsolutePath();
+        Files.createDirectories(this.file.getParent());
+        this.channel = open();
+    }
+
+    List<JSONObject> read() throws IOException {
+        lock.lock();
+        try {
+            List<JSONObject> records = new ArrayList<>();
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    records.add(new JSONObject(line));
+                } catch (JSONException e) {
+                    logger.warn("Skipping unreadable job journal line in {}", file);
+                }
+            }
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void append(JSONObject record) throws IOException {
+        lock.lock();
+        try {
+            write(channel, record);
+            channel.force(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 目前的檔案大小，用來決定何時重寫
+    long size() throws IOException {
+        lock.lock();
+        try {
+            return channel.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 以目前狀態重寫 journal，先寫入暫存檔再整個取代，避免寫到一半時留下不完整的檔案
+    void rewrite(List<JSONObject> records) throws IOException {
+        lock.lock();
+        try {
+            Path tmpFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+            try (FileChannel out = FileChannel.open(tmpFile, StandardOpenOption.WRITE)) {
+                for (JSONObject record : records) {
+                    write(out, record);
+                }
+                out.force(false);
+            }
+            channel.close();
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = open();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            channel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static void write(FileChannel target, JSONObject record) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((record.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+}
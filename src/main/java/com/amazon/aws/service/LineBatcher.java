@@ -0,0 +1,144 @@
+package com.amazon.aws.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Collects extracted lines into batches and hands each batch to the sinks once it holds {@code batchSize} lines
+ * or its first line has waited {@code maxDelayMillis}. The age is enforced by a flush scheduled when a batch starts,
+ * so a reader that stalls between lines still delivers what it has; whatever is left is flushed on close. Sinks
+ * that are {@link AutoCloseable} are closed with the batcher.
+ * <p>
+ * Flushes run under a lock, so the sinks see one batch at a time even when a scheduled flush races a new line.
+ * A sink failure in a scheduled flush is thrown from the next {@link #accept} or from {@link #close}.
+ */
+public class LineBatcher implements Consumer<String>, AutoCloseable {
+
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final List<BatchSink> sinks;
+    private final BatchMetrics metrics;
+    private final ScheduledExecutorService scheduler;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private List<String> batch;
+    private long batchStartNanos;
+    private ScheduledFuture<?> scheduledFlush;
+    private IOException failure;
+
+    public LineBatcher(int batchSize, long maxDelayMillis, List<BatchSink> sinks, BatchMetrics metrics,
+                       ScheduledExecutorService scheduler) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("'batchSize' must be positive");
+        }
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.sinks = List.copyOf(sinks);
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    @Override
+    public void accept(String line) {
+        lock.lock();
+        try {
+            throwFailure();
+            if (batch.isEmpty()) {
+                batchStartNanos = System.nanoTime();
+                List<String> started = batch;
+                // The sinks may block, so the flush runs on its own virtual thread instead of the scheduler's
+                scheduledFlush = scheduler.schedule(() -> Thread.startVirtualThread(() -> flushIfDue(started)),
+                    maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+            batch.add(line);
+
+            if (batch.size() >= batchSize) {
+                flush(BatchMetrics.Trigger.SIZE);
+            } else if (System.nanoTime() - batchStartNanos >= maxDelayNanos) {
+                flush(BatchMetrics.Trigger.TIME);
+            }
+            throwFailure();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (!batch.isEmpty()) {
+                flush(BatchMetrics.Trigger.CLOSE);
+            }
+            closeSinks();
+            throwFailure();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Flushes the batch the schedule was made for, unless a size flush or close got to it first
+    private void flushIfDue(List<String> started) {
+        lock.lock();
+        try {
+            if (batch == started && !batch.isEmpty()) {
+                flush(BatchMetrics.Trigger.TIME);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flush(BatchMetrics.Trigger trigger) {
+        List<String> full = batch;
+        batch = new ArrayList<>(batchSize);
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (failure != null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            for (BatchSink sink : sinks) {
+                sink.write(full);
+            }
+        } catch (IOException e) {
+            failure = e;
+            return;
+        }
+        metrics.record(trigger, full.size(), System.nanoTime() - start);
+    }
+
+    private void closeSinks() {
+        for (BatchSink sink : sinks) {
+            if (sink instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException("Unable to close batch sink", e);
+                }
+            }
+        }
+    }
+
+    private void throwFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Unable to write batch", failure);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.amazon.aws.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Holds the lines of one parsed file until it is that file's turn to be emitted. Lines are kept in memory up to
+ * {@code maxBufferedChars} characters and spilled to a temporary file beyond that. Once {@link #release} has replayed
+ * what was held, later lines go straight to the target. Lines may contain line breaks, so the spill file stores
+ * each line as its length followed by its UTF-16 characters.
+ */
+class SectionBuffer implements Consumer<String>, Closeable {
+
+    private final Consumer<String> target;
+    private final long maxBufferedChars;
+
+    private List<String> lines = new ArrayList<>();
+    private long bufferedChars;
+    private Path spillFile;
+    private DataOutputStream spill;
+    private long spilledLines;
+    private boolean released;
+
+    SectionBuffer(Consumer<String> target, long maxBufferedChars) {
+        this.target = target;
+        this.maxBufferedChars = maxBufferedChars;
+    }
+
+    @Override
+    public synchronized void accept(String line) {
+        if (released) {
+            target.accept(line);
+            return;
+        }
+        try {
+            if (spill != null) {
+                writeSpilled(line);
+                return;
+            }
+            lines.add(line);
+            bufferedChars += line.length();
+            if (bufferedChars > maxBufferedChars) {
+                spillFile = Files.createTempFile("upload-section-", ".bin");
+                spill = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile)));
+                for (String held : lines) {
+                    writeSpilled(held);
+                }
+                lines = new ArrayList<>();
+                bufferedChars = 0;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to spill parsed lines", e);
+        }
+    }
+
+    /**
+     * Replays the held lines to the target in order and passes every later line straight through.
+     */
+    synchronized void release() throws IOException {
+        if (released) {
+            return;
+        }
+        if (spill != null) {
+            spill.close();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(spillFile)))) {
+                for (long i = 0; i < spilledLines; i++) {
+                    char[] chars = new char[in.readInt()];
+                    for (int j = 0; j < chars.length; j++) {
+                        chars[j] = in.readChar();
+                    }
+                    target.accept(new String(chars));
+                }
+            }
+            deleteSpill();
+        }
+        lines.forEach(target);
+        lines = List.of();
+        released = true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        lines = List.of();
+        deleteSpill();
+    }
+
+    private void writeSpilled(String line) throws IOException {
+        spill.writeInt(line.length());
+        spill.writeChars(line);
+        spilledLines++;
+    }
+
+    private void deleteSpill() throws IOException {
+        if (spill != null) {
+            spill.close();
+            spill = null;
+            Files.deleteIfExists(spillFile);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.amazon.aws.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A summarization submitted through the job API. Progress is kept in memory only; the submission and the outcome
+ * are written to the job journal by {@link SummaryJobService}.
+ */
+public class SummaryJob {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    @FunctionalInterface
+    public interface Listener {
+        void onUpdate(SummaryJob job);
+    }
+
+    private final String id;
+    private final long sequence;
+    private final int priority;
+    private final String recordId;
+    private final long submittedAt;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // 完成後釋放，只有尚未完成的工作需要保留原文
+    private volatile String prompt;
+    private volatile Status status = Status.QUEUED;
+    private volatile int segmentsDone;
+    private volatile int segmentsTotal;
+    private volatile String result;
+    private volatile String error;
+
+    SummaryJob(String id, long sequence, int priority, String recordId, String prompt, long submittedAt) {
+        this.id = id;
+        this.sequence = sequence;
+        this.priority = priority;
+        this.recordId = recordId;
+        this.prompt = prompt;
+        this.submittedAt = submittedAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public String getRecordId() {
+        return recordId;
+    }
+
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public boolean isFinished() {
+        return status == Status.SUCCEEDED || status == Status.FAILED;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("jobId", id);
+        snapshot.put("status", status.name());
+        snapshot.put("priority", priority);
+        snapshot.put("segmentsDone", segmentsDone);
+        snapshot.put("segmentsTotal", segmentsTotal);
+        snapshot.put("submittedAt", submittedAt);
+        if (error != null) {
+            snapshot.put("error", error);
+        }
+        return snapshot;
+    }
+
+    void start() {
+        status = Status.RUNNING;
+        notifyListeners();
+    }
+
+    void progress(int done, int total) {
+        segmentsDone = done;
+        segmentsTotal = total;
+        notifyListeners();
+    }
+
+    void succeed(String result) {
+        this.result = result;
+        this.prompt = null;
+        status = Status.SUCCEEDED;
+        notifyListeners();
+    }
+
+    void fail(String error) {
+        this.error = error;
+        this.prompt = null;
+        status = Status.FAILED;
+        notifyListeners();
+    }
+
+    private void notifyListeners() {
+        listeners.forEach(listener -> listener.onUpdate(this));
+    }
+}
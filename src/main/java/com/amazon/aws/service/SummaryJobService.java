@@ -0,0 +1,289 @@
+package com.amazon.aws.service;
+
+import com.amazon.aws.ClaudeContentGeneration;
+import io.github.cdimascio.dotenv.Dotenv;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+@Service
+public class SummaryJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SummaryJobService.class);
+
+    // 優先權高的先執行，相同優先權依送出順序
+    private static final Comparator<SummaryJob> EXECUTION_ORDER = Comparator
+        .comparingInt(SummaryJob::getPriority).reversed()
+        .thenComparingLong(SummaryJob::getSequence);
+
+    // journal 小於此大小時不重寫
+    private static final long MIN_COMPACTION_BYTES = 1L << 20;
+
+    private final ClaudeContentGeneration contentGeneration;
+    private final Tracer tracer;
+
+    private final int workerCount;
+    private final int queueCapacity;
+    private final int history;
+    private final ThreadPoolExecutor workers;
+    private final JobJournal journal;
+    // 工作執行在虛擬執行緒上，journal 的 force 期間不能用 synchronized 綁住載體執行緒
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<String, SummaryJob> jobs = new ConcurrentHashMap<>();
+    // 已完成工作的 id，超過 JOB_HISTORY 時由最舊的開始移除
+    private final Deque<String> finished = new ArrayDeque<>();
+    private final AtomicLong sequence = new AtomicLong();
+    // 上次重寫後的 journal 大小
+    private long compactedBytes;
+
+    @Autowired
+    public SummaryJobService(ClaudeContentGeneration contentGeneration, Tracer tracer) throws IOException {
+        this(Dotenv.load(), contentGeneration, tracer);
+    }
+
+    SummaryJobService(Dotenv dotenv, ClaudeContentGeneration contentGeneration, Tracer tracer) throws IOException {
+        this.contentGeneration = contentGeneration;
+        this.tracer = tracer;
+        this.workerCount = Integer.parseInt(dotenv.get("JOB_WORKERS", "4"));
+        this.queueCapacity = Integer.parseInt(dotenv.get("JOB_QUEUE_CAPACITY", "1000"));
+        this.history = Integer.parseInt(dotenv.get("JOB_HISTORY", "1000"));
+
+        // 每個工作再把分段交給 ClaudeContentGeneration 的分段執行緒，所以工作本身只需少量執行緒
+        this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(16, Comparator.comparing(task -> ((JobTask) task).job, EXECUTION_ORDER)),
+            Thread.ofVirtual().name("summary-job-", 0).factory());
+
+        // JOB_JOURNAL_FILE 留空時工作只保存在記憶體，重啟後不會恢復
+        String journalFile = dotenv.get("JOB_JOURNAL_FILE", "jobs/journal.jsonl");
+        this.journal = journalFile.isBlank() ? null : new JobJournal(Paths.get(journalFile));
+    }
+
+    @PostConstruct
+    public void recover() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        lock.lock();
+        try {
+            recoverJournal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recoverJournal() throws IOException {
+        Map<String, SummaryJob> recovered = new LinkedHashMap<>();
+        for (JSONObject record : journal.read()) {
+            String id = record.getString("id");
+            switch (record.getString("type")) {
+                case "submitted" -> recovered.put(id, new SummaryJob(id, record.getLong("sequence"),
+                    record.getInt("priority"), record.optString("recordId", null), record.optString("prompt", null),
+                    record.getLong("submittedAt")));
+                case "succeeded" -> {
+                    SummaryJob job = recovered.get(id);
+                    if (job != null) {
+                        job.succeed(record.getString("result"));
+                    }
+                }
+                case "failed" -> {
+                    SummaryJob job = recovered.get(id);
+                    if (job != null) {
+                        job.fail(record.getString("error"));
+                    }
+                }
+                default -> logger.warn("Unknown job journal record type: {}", record.getString("type"));
+            }
+        }
+
+        // 重啟前尚未完成的工作（包含執行到一半的）重新排入佇列
+        int requeued = 0;
+        for (SummaryJob job : recovered.values()) {
+            jobs.put(job.getId(), job);
+            sequence.accumulateAndGet(job.getSequence() + 1, Math::max);
+            if (job.isFinished()) {
+                finished.addLast(job.getId());
+            } else if (job.getPrompt() != null) {
+                workers.execute(new JobTask(job));
+                requeued++;
+            }
+        }
+        trimHistory();
+        compact();
+        logger.info("Recovered {} jobs from the journal, {} requeued", recovered.size(), requeued);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        // 執行中的工作不記錄為失敗，下次啟動時會重新執行
+        workers.shutdownNow();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    public SummaryJob submit(String prompt, String recordId, int priority) throws IOException {
+        if (prompt == null || prompt.isBlank()) {
+            throw new IllegalArgumentException("'prompt' must not be empty");
+        }
+        lock.lock();
+        try {
+            if (workers.getQueue().size() >= queueCapacity) {
+                throw new RejectedExecutionException("Job queue is full (" + queueCapacity + " jobs waiting)");
+            }
+            SummaryJob job = new SummaryJob(UUID.randomUUID().toString(), sequence.getAndIncrement(), priority,
+                recordId, prompt, System.currentTimeMillis());
+            // 寫入 journal 後才回應，回傳的工作 id 重啟後仍然有效
+            if (journal != null) {
+                journal.append(new JSONObject()
+                    .put("type", "submitted")
+                    .put("id", job.getId())
+                    .put("sequence", job.getSequence())
+                    .put("priority", job.getPriority())
+                    .put("recordId", recordId)
+                    .put("prompt", prompt)
+                    .put("submittedAt", job.getSubmittedAt()));
+            }
+            jobs.put(job.getId(), job);
+            workers.execute(new JobTask(job));
+            return job;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public SummaryJob get(String id) {
+        return jobs.get(id);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workers", workerCount);
+        stats.put("running", workers.getActiveCount());
+        stats.put("queued", workers.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("retained", jobs.size());
+        return stats;
+    }
+
+    private void run(SummaryJob job) {
+        job.start();
+        // 工作不在 HTTP 請求中執行，每個工作自成一個 trace
+        Span span = tracer.nextSpan().name("summary.job").tag("job.id", job.getId()).start();
+        try (Tracer.SpanInScope ignored = tracer.withSpan(span)) {
+            String result = contentGeneration.generateContent(job.getPrompt(), job.getRecordId(), job::progress);
+            job.succeed(result);
+            finish(job, new JSONObject().put("type", "succeeded").put("id", job.getId()).put("result", result));
+        } catch (Exception e) {
+            span.error(e);
+            if (workers.isShutdown()) {
+                return;
+            }
+            logger.error("Summary job {} failed", job.getId(), e);
+            String error = String.valueOf(e.getMessage());
+            job.fail(error);
+            finish(job, new JSONObject().put("type", "failed").put("id", job.getId()).put("error", error));
+        } finally {
+            span.end();
+        }
+    }
+
+    private void finish(SummaryJob job, JSONObject outcome) {
+        lock.lock();
+        try {
+            if (journal != null) {
+                try {
+                    journal.append(outcome);
+                } catch (IOException e) {
+                    logger.warn("Unable to journal the outcome of job {}", job.getId(), e);
+                }
+            }
+            finished.addLast(job.getId());
+            trimHistory();
+
+            // journal 比上次重寫後大一倍時才重寫，重寫的成本分攤到這段期間的寫入上
+            try {
+                if (journal != null && journal.size() > Math.max(2 * compactedBytes, MIN_COMPACTION_BYTES)) {
+                    compact();
+                }
+            } catch (IOException e) {
+                logger.warn("Unable to compact the job journal", e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void trimHistory() {
+        while (finished.size() > history) {
+            jobs.remove(finished.removeFirst());
+        }
+    }
+
+    // 已完成的工作已釋放原文，只有尚未完成的工作會帶著 prompt 寫回
+    private void compact() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        List<SummaryJob> retained = new ArrayList<>(jobs.values());
+        retained.sort(Comparator.comparingLong(SummaryJob::getSequence));
+
+        List<JSONObject> records = new ArrayList<>(retained.size() * 2);
+        for (SummaryJob job : retained) {
+            records.add(new JSONObject()
+                .put("type", "submitted")
+                .put("id", job.getId())
+                .put("sequence", job.getSequence())
+                .put("priority", job.getPriority())
+                .put("recordId", job.getRecordId())
+                .put("prompt", job.getPrompt())
+                .put("submittedAt", job.getSubmittedAt()));
+            if (job.getStatus() == SummaryJob.Status.SUCCEEDED) {
+                records.add(new JSONObject().put("type", "succeeded").put("id", job.getId()).put("result", job.getResult()));
+            } else if (job.getStatus() == SummaryJob.Status.FAILED) {
+                records.add(new JSONObject().put("type", "failed").put("id", job.getId()).put("error", job.getError()));
+            }
+        }
+        journal.rewrite(records);
+        compactedBytes = journal.size();
+    }
+
+    // PriorityBlockingQueue 直接排序 Runnable，因此工作以 execute 送出而不是 submit
+    private class JobTask implements Runnable {
+
+        private final SummaryJob job;
+
+        JobTask(SummaryJob job) {
+            this.job = job;
+        }
+
+        @Override
+        public void run() {
+            SummaryJobService.this.run(job);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.amazon.aws.service;
+
+import org.apache.poi.hwpf.HWPFDocument;
+import org.apache.poi.hwpf.usermodel.Paragraph;
+import org.apache.poi.hwpf.usermodel.Range;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.util.XMLHelper;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Extracts a Word document in document order, in one pass. Every body paragraph and every table row is handed
+ * to the consumer as soon as it is read: a paragraph as its text, a table row as its cell texts each followed by
+ * a tab, and an empty line after each table.
+ */
+class WordStreamReader {
+
+    private static final String WORDPROCESSING_NS = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+
+    // Word marks the end of a table cell and of a table row with this character
+    private static final char CELL_MARK = '\u0007';
+
+    private WordStreamReader() {
+    }
+
+    static void readDocx(File file, Consumer<String> lineConsumer) throws Exception {
+        try (OPCPackage opcPackage = OPCPackage.open(file, PackageAccess.READ)) {
+            PackagePart document = opcPackage.getPart(
+                opcPackage.getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT).getRelationship(0));
+            try (InputStream body = document.getInputStream()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new DocumentHandler(lineConsumer));
+                parser.parse(new InputSource(body));
+            }
+        }
+    }
+
+    // .doc 為二進位格式，HWPF 仍需載入整份文件，但段落與表格只走訪一次
+    static void readDoc(File file, Consumer<String> lineConsumer) throws Exception {
+        try (InputStream inputStream = new FileInputStream(file)) {
+            HWPFDocument document = new HWPFDocument(inputStream);
+            Range range = document.getRange();
+            DocParagraphs paragraphs = new DocParagraphs(lineConsumer);
+            for (int i = 0; i < range.numParagraphs(); i++) {
+                Paragraph paragraph = range.getParagraph(i);
+                paragraphs.accept(paragraph.text(), paragraph.isInTable(), paragraph.isTableRowEnd());
+            }
+            paragraphs.finish();
+        }
+    }
+
+    private static String stripMarks(String text) {
+        int end = text.length();
+        while (end > 0 && (text.charAt(end - 1) == '\r' || text.charAt(end - 1) == CELL_MARK)) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    /**
+     * Turns the paragraphs of a .doc range into lines, in the same format {@link #readDocx} produces. In a table
+     * every paragraph belongs to a cell, and only the last paragraph of a cell carries the cell mark, so the
+     * paragraphs of one cell are joined with a line break and the cell is closed with a tab.
+     */
+    static class DocParagraphs {
+
+        private final Consumer<String> lineConsumer;
+        private final StringBuilder row = new StringBuilder();
+        private boolean inTable;
+        private boolean cellHasParagraph;
+
+        DocParagraphs(Consumer<String> lineConsumer) {
+            this.lineConsumer = lineConsumer;
+        }
+
+        void accept(String text, boolean paragraphInTable, boolean tableRowEnd) {
+            if (!paragraphInTable) {
+                finish();
+                lineConsumer.accept(stripMarks(text));
+                return;
+            }
+
+            inTable = true;
+            if (tableRowEnd) {
+                lineConsumer.accept(row.toString());
+                row.setLength(0);
+                cellHasParagraph = false;
+                return;
+            }
+            if (cellHasParagraph) {
+                row.append('\n');
+            }
+            row.append(stripMarks(text));
+            cellHasParagraph = true;
+            if (text.indexOf(CELL_MARK) >= 0) {
+                row.append('\t');
+                cellHasParagraph = false;
+            }
+        }
+
+        // Ends a table that is still open, with the empty line that follows every table
+        void finish() {
+            if (inTable) {
+                lineConsumer.accept("");
+                inTable = false;
+            }
+        }
+    }
+
+    // SAX handler for word/document.xml: <w:body><w:p>...</w:p><w:tbl><w:tr><w:tc>...</w:tc></w:tr></w:tbl></w:body>
+    private static class DocumentHandler extends DefaultHandler {
+
+        private final Consumer<String> lineConsumer;
+        private final StringBuilder paragraph = new StringBuilder();
+        private final StringBuilder row = new StringBuilder();
+        private final StringBuilder cell = new StringBuilder();
+
+        private int tableDepth;
+        private int paragraphDepth;
+        private int runDepth;
+        private boolean capturing;
+        // Paragraphs of one cell are separated by a line break, as XWPFTableCell.getText() does
+        private boolean cellHasParagraph;
+
+        DocumentHandler(Consumer<String> lineConsumer) {
+            this.lineConsumer = lineConsumer;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            if (!WORDPROCESSING_NS.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "p":
+                    if (tableDepth > 0 && paragraphDepth == 0) {
+                        if (cellHasParagraph) {
+                            cell.append('\n');
+                        }
+                        cellHasParagraph = true;
+                    }
+                    paragraphDepth++;
+                    break;
+                case "r":
+                    runDepth++;
+                    break;
+                case "tbl":
+                    tableDepth++;
+                    break;
+                case "tr":
+                    if (tableDepth == 1) {
+                        row.setLength(0);
+                    }
+                    break;
+                case "tc":
+                    if (tableDepth == 1) {
+                        cell.setLength(0);
+                        cellHasParagraph = false;
+                    }
+                    break;
+                case "t":
+                    capturing = true;
+                    break;
+                // w:tab also defines the tab stops in w:pPr/w:tabs, only a w:tab in a run is text
+                case "tab":
+                    if (runDepth > 0) {
+                        target().append('\t');
+                    }
+                    break;
+                case "br":
+                case "cr":
+                    if (runDepth > 0) {
+                        target().append('\n');
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (capturing) {
+                target().append(ch, start, length);
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (!WORDPROCESSING_NS.equals(uri)) {
+                return;
+            }
+            switch (localName) {
+                case "t":
+                    capturing = false;
+                    break;
+                case "r":
+                    runDepth--;
+                    break;
+                case "p":
+                    paragraphDepth--;
+                    if (paragraphDepth == 0 && tableDepth == 0) {
+                        lineConsumer.accept(paragraph.toString());
+                        paragraph.setLength(0);
+                    }
+                    break;
+                case "tc":
+                    if (tableDepth == 1) {
+                        row.append(cell).append('\t');
+                    }
+                    break;
+                case "tr":
+                    if (tableDepth == 1) {
+                        lineConsumer.accept(row.toString());
+                    }
+                    break;
+                case "tbl":
+                    tableDepth--;
+                    if (tableDepth == 0) {
+                        lineConsumer.accept("");
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private StringBuilder target() {
+            return tableDepth > 0 ? cell : paragraph;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.amazon.aws.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client-side limit on in-flight Bedrock calls that adapts AIMD-style: every call that completes without sign of
+ * congestion raises the limit by 1/limit (about +1 per round of calls), a throttled call halves it, and a call much
+ * slower than the recent average lowers it by 10%. Callers over the limit wait in FIFO order.
+ * <p>
+ * A streamed call lasts as long as its output, so its latency is the time to the first byte, compared against an
+ * average of streams only. Whole calls and streams never skew each other's average.
+ * <p>
+ * A permit is usually released on the thread that completed the call, for the async SDK a Netty event loop. The
+ * waiters it lets through are completed on the {@code grantExecutor}, so their callbacks, which go on to send the
+ * next request, never run on that thread. Waiters let through by {@link #acquireAsync} itself are completed on the
+ * caller's thread.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    private static final double BACKOFF_RATIO = 0.5;
+    private static final double LATENCY_BACKOFF_RATIO = 0.9;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double LATENCY_SMOOTHING = 0.1;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final Executor grantExecutor;
+    private final Deque<CompletableFuture<Permit>> waiters = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    private double averageLatencyNanos = -1;
+    private double averageFirstByteNanos = -1;
+
+    private final AtomicLong throttles = new AtomicLong();
+
+    // Grants on the releasing thread, for callers whose waiters do little work
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, Runnable::run);
+    }
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, Executor grantExecutor) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 1 <= minLimit <= initialLimit <= maxLimit");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.grantExecutor = grantExecutor;
+    }
+
+    public class Permit {
+
+        private final long startNanos = System.nanoTime();
+        private volatile long firstByteNanos;
+        private boolean released;
+
+        // Marks a streamed call; the first call wins, the permit is still held until the stream completes
+        public void onFirstByte() {
+            if (firstByteNanos == 0) {
+                firstByteNanos = Math.max(1, System.nanoTime() - startNanos);
+            }
+        }
+
+        public void onSuccess() {
+            long firstByte = firstByteNanos;
+            release(firstByte > 0 ? Outcome.STREAM_SUCCESS : Outcome.SUCCESS,
+                firstByte > 0 ? firstByte : System.nanoTime() - startNanos);
+        }
+
+        public void onThrottled() {
+            release(Outcome.THROTTLED, 0);
+        }
+
+        // Failed for a reason unrelated to capacity, the limit is left as it is
+        public void onDropped() {
+            release(Outcome.DROPPED, 0);
+        }
+
+        private void release(Outcome outcome, long latencyNanos) {
+            synchronized (AdaptiveConcurrencyLimiter.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                inFlight--;
+                adjust(outcome, latencyNanos);
+                if (outcome == Outcome.THROTTLED) {
+                    throttles.incrementAndGet();
+                }
+            }
+            dispatch(grantExecutor);
+        }
+    }
+
+    private enum Outcome {
+        SUCCESS, STREAM_SUCCESS, THROTTLED, DROPPED
+    }
+
+    /**
+     * Returns a future completed with a permit once the caller's turn comes. Cancelling the future withdraws from the
+     * queue; a permit granted to a dependent stage that was cancelled instead is not released by this limiter, so
+     * the caller must hand it back.
+     */
+    public CompletableFuture<Permit> acquireAsync() {
+        CompletableFuture<Permit> waiter = new CompletableFuture<>();
+        synchronized (this) {
+            waiters.addLast(waiter);
+        }
+        waiter.whenComplete((permit, e) -> {
+            if (waiter.isCancelled()) {
+                synchronized (this) {
+                    waiters.remove(waiter);
+                }
+            }
+        });
+        dispatch(Runnable::run);
+        return waiter;
+    }
+
+    public Permit acquire() throws InterruptedException {
+        CompletableFuture<Permit> waiter = acquireAsync();
+        try {
+            return waiter.get();
+        } catch (InterruptedException e) {
+            // Either withdraw from the queue or hand back the permit granted in the meantime
+            if (!waiter.cancel(false)) {
+                waiter.join().onDropped();
+            }
+            throw e;
+        } catch (ExecutionException | CancellationException e) {
+            throw new IllegalStateException("Unable to acquire a permit", e);
+        }
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueueDepth() {
+        return waiters.size();
+    }
+
+    public long getThrottles() {
+        return throttles.get();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        synchronized (this) {
+            stats.put("limit", (int) limit);
+            stats.put("inFlight", inFlight);
+            stats.put("queueDepth", waiters.size());
+        }
+        stats.put("throttles", throttles.get());
+        return stats;
+    }
+
+    private void adjust(Outcome outcome, long latencyNanos) {
+        switch (outcome) {
+            case THROTTLED:
+                limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                break;
+            case SUCCESS:
+                averageLatencyNanos = onLatency(averageLatencyNanos, latencyNanos);
+                break;
+            case STREAM_SUCCESS:
+                averageFirstByteNanos = onLatency(averageFirstByteNanos, latencyNanos);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Adjusts the limit to one latency sample and returns the updated average
+    private double onLatency(double average, long latencyNanos) {
+        if (average > 0 && latencyNanos > average * LATENCY_TOLERANCE) {
+            limit = Math.max(minLimit, limit * LATENCY_BACKOFF_RATIO);
+        } else {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        return average < 0 ? latencyNanos : average + LATENCY_SMOOTHING * (latencyNanos - average);
+    }
+
+    private void dispatch(Executor executor) {
+        List<CompletableFuture<Permit>> granted = new ArrayList<>();
+        List<Permit> permits = new ArrayList<>();
+        synchronized (this) {
+            while (inFlight < (int) limit && !waiters.isEmpty()) {
+                granted.add(waiters.pollFirst());
+                permits.add(new Permit());
+                inFlight++;
+            }
+        }
+
+        // Complete outside the lock, callbacks of the waiters run on the thread that completes them
+        for (int i = 0; i < granted.size(); i++) {
+            CompletableFuture<Permit> waiter = granted.get(i);
+            Permit permit = permits.get(i);
+            executor.execute(() -> grant(waiter, permit));
+        }
+    }
+
+    // A waiter cancelled after it was taken from the queue hands its permit on to the next one
+    private void grant(CompletableFuture<Permit> waiter, Permit permit) {
+        if (!waiter.complete(permit)) {
+            synchronized (this) {
+                permit.released = true;
+                inFlight--;
+            }
+            dispatch(Runnable::run);
+        }
+    }
+}
@@ -1,20 +1,22 @@
 package com.amazon.aws.util;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import org.json.JSONObject;
 
 import software.amazon.awssdk.annotations.NotNull;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 public class BedrockRequestBody {
 
   private BedrockRequestBody() {
   }
 
+  private static final int MAX_TEMPLATES = 256;
+  private static final Map<TemplateKey, BodyTemplate> TEMPLATES = new ConcurrentHashMap<>();
+
   public static BedrockRequestBodyBuilder builder() {
       return new BedrockRequestBodyBuilder();
   }
@@ -72,6 +74,14 @@ public class BedrockRequestBody {
       }
 
       public String build() {
+          return new String(buildBytes(), StandardCharsets.UTF_8);
+      }
+
+      /**
+       * Returns the UTF-8 request body. The body around the prompt is compiled once per model and parameter set,
+       * so a call only escapes the prompt into a byte array of the exact final size.
+       */
+      public byte[] buildBytes() {
           if (modelId == null) {
               throw new IllegalArgumentException("'modelId' is a required parameter");
           }
@@ -88,34 +98,173 @@ public class BedrockRequestBody {
               throw new IllegalArgumentException("'accept' is a required parameter");
           }
 
-          BedrockBodyCommand bedrockBodyCommand = null;
-          switch (modelId) {
-              case "amazon.titan-tg1-large":
-              case "amazon.titan-text-express-v1":
-                  bedrockBodyCommand = new AmazonTitanCommand(prompt, inferenceParameters, system, role);
+          TemplateKey key = new TemplateKey(modelId, inferenceParameters, system, role, contentType, accept);
+          BodyTemplate template = TEMPLATES.get(key);
+          if (template == null) {
+              template = BodyTemplate.compile(command(BodyTemplate.PLACEHOLDER).execute());
+              // Parameters are normally fixed per deployment, the cap only guards against callers varying them per call
+              if (TEMPLATES.size() < MAX_TEMPLATES) {
+                  TEMPLATES.putIfAbsent(new TemplateKey(modelId, new HashMap<>(inferenceParameters), system, role,
+                      contentType, accept), template);
+              }
+          }
+          return template.render(prompt);
+      }
+
+      private BedrockBodyCommand command(String prompt) {
+          if (modelId.equals("stability.stable-diffusion-xl-v0")) {
+              return new StabilityAICommand(prompt, inferenceParameters, system, role);
+          }
+          return switch (ModelProfile.of(modelId)) {
+              case TITAN -> new AmazonTitanCommand(prompt, inferenceParameters, system, role);
+              case JURASSIC -> new AI21LabsCommand(prompt, inferenceParameters, system, role);
+              case CLAUDE_3, CLAUDE -> new AnthropicCommand(prompt, inferenceParameters, system, role, contentType, accept);
+              case COMMAND -> new CohereCommand(prompt, inferenceParameters, system, role);
+          };
+      }
+  }
+
+  private record TemplateKey(String modelId, Map<String, Object> inferenceParameters, String system, String role,
+                             String contentType, String accept) {
+  }
+}
+
+/**
+ * A serialized request body split around the prompt. The prompt is escaped the same way JSONObject quotes strings,
+ * so the rendered bytes equal the UTF-8 encoding of the body the command builds with the real prompt.
+ */
+final class BodyTemplate {
+
+  static final String PLACEHOLDER = "__BEDROCK_PROMPT_PLACEHOLDER__";
+
+  private final byte[] prefix;
+  private final byte[] suffix;
+
+  private BodyTemplate(byte[] prefix, byte[] suffix) {
+      this.prefix = prefix;
+      this.suffix = suffix;
+  }
+
+  static BodyTemplate compile(String body) {
+      int index = body.indexOf(PLACEHOLDER);
+      if (index < 0 || body.indexOf(PLACEHOLDER, index + 1) >= 0) {
+          throw new IllegalStateException("Request body must contain the prompt exactly once");
+      }
+      return new BodyTemplate(body.substring(0, index).getBytes(StandardCharsets.UTF_8),
+          body.substring(index + PLACEHOLDER.length()).getBytes(StandardCharsets.UTF_8));
+  }
+
+  byte[] render(String prompt) {
+      byte[] body = new byte[prefix.length + escapedLength(prompt) + suffix.length];
+      System.arraycopy(prefix, 0, body, 0, prefix.length);
+      int end = writeEscaped(prompt, body, prefix.length);
+      System.arraycopy(suffix, 0, body, end, suffix.length);
+      return body;
+  }
+
+  private static int escapedLength(String text) {
+      int length = 0;
+      char previous = 0;
+      for (int i = 0; i < text.length(); i++) {
+          char c = text.charAt(i);
+          if (c == '\\' || c == '"' || c == '\b' || c == '\t' || c == '\n' || c == '\f' || c == '\r') {
+              length += 2;
+          } else if (c == '/') {
+              length += previous == '<' ? 2 : 1;
+          } else if (needsUnicodeEscape(c)) {
+              length += 6;
+          } else if (c < 0x80) {
+              length += 1;
+          } else if (c < 0x800) {
+              length += 2;
+          } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+              length += 4;
+              c = text.charAt(++i);
+          } else if (Character.isSurrogate(c)) {
+              // A lone surrogate is encoded as '?', like String.getBytes does
+              length += 1;
+          } else {
+              length += 3;
+          }
+          previous = c;
+      }
+      return length;
+  }
+
+  private static int writeEscaped(String text, byte[] out, int pos) {
+      char previous = 0;
+      for (int i = 0; i < text.length(); i++) {
+          char c = text.charAt(i);
+          switch (c) {
+              case '\\':
+              case '"':
+                  out[pos++] = '\\';
+                  out[pos++] = (byte) c;
                   break;
-              case "ai21.j2-mid-v1":
-              case "ai21.j2-ultra-v1":
-                  bedrockBodyCommand = new AI21LabsCommand(prompt, inferenceParameters, system, role);
+              case '/':
+                  if (previous == '<') {
+                      out[pos++] = '\\';
+                  }
+                  out[pos++] = '/';
                   break;
-              case "anthropic.claude-instant-v1":
-              case "anthropic.claude-v1":
-              case "anthropic.claude-v2":
-              case "anthropic.claude-3-sonnet-20240229-v1:0":
-              case "anthropic.claude-3-haiku-20240307-v1:0":
-                  bedrockBodyCommand = new AnthropicCommand(prompt, inferenceParameters, system, role, contentType, accept);
+              case '\b':
+                  pos = writeEscape(out, pos, 'b');
                   break;
-              case "cohere.command-text-v14":
-                  bedrockBodyCommand = new CohereCommand(prompt, inferenceParameters, system, role);
+              case '\t':
+                  pos = writeEscape(out, pos, 't');
                   break;
-              case "stability.stable-diffusion-xl-v0":
-                  bedrockBodyCommand = new StabilityAICommand(prompt, inferenceParameters, system, role);
+              case '\n':
+                  pos = writeEscape(out, pos, 'n');
+                  break;
+              case '\f':
+                  pos = writeEscape(out, pos, 'f');
+                  break;
+              case '\r':
+                  pos = writeEscape(out, pos, 'r');
                   break;
               default:
-                  throw new IllegalArgumentException("Unsupported modelId: " + modelId);
+                  if (needsUnicodeEscape(c)) {
+                      out[pos++] = '\\';
+                      out[pos++] = 'u';
+                      for (int shift = 12; shift >= 0; shift -= 4) {
+                          out[pos++] = (byte) Character.forDigit((c >> shift) & 0xF, 16);
+                      }
+                  } else if (c < 0x80) {
+                      out[pos++] = (byte) c;
+                  } else if (c < 0x800) {
+                      out[pos++] = (byte) (0xC0 | (c >> 6));
+                      out[pos++] = (byte) (0x80 | (c & 0x3F));
+                  } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                      char low = text.charAt(++i);
+                      int codePoint = Character.toCodePoint(c, low);
+                      out[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                      out[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                      out[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                      out[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+                      c = low;
+                  } else if (Character.isSurrogate(c)) {
+                      out[pos++] = '?';
+                  } else {
+                      out[pos++] = (byte) (0xE0 | (c >> 12));
+                      out[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                      out[pos++] = (byte) (0x80 | (c & 0x3F));
+                  }
+                  break;
           }
-          return bedrockBodyCommand.execute();
+          previous = c;
       }
+      return pos;
+  }
+
+  private static int writeEscape(byte[] out, int pos, char escape) {
+      out[pos++] = '\\';
+      out[pos++] = (byte) escape;
+      return pos;
+  }
+
+  // Same ranges JSONObject.quote writes as \\uXXXX
+  private static boolean needsUnicodeEscape(char c) {
+      return c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100');
   }
 }
 
@@ -226,8 +375,6 @@ class AI21LabsCommand extends BedrockBodyCommand {
 
 class AnthropicCommand extends BedrockBodyCommand {
 
-  private static final Logger logger = LoggerFactory.getLogger(BedrockBodyCommand.class);
-
   public AnthropicCommand(String prompt, Map<String, Object> inferenceParameters, String system, String role, String contentType, String accept) {
       super(prompt, inferenceParameters, system, role, contentType, accept);
   }
@@ -241,7 +388,7 @@ class AnthropicCommand extends BedrockBodyCommand {
       final Map<String, Object> jsonMap = new HashMap<>(4);
 
       jsonMap.put("anthropic_version", "bedrock-2023-05-31");
-      jsonMap.put("max_tokens", 20000000);
+      jsonMap.put("max_tokens", 4096);
 
       // Creating a content structure as required
       // Map<String, Object> imageContent = Map.of(
@@ -265,10 +412,10 @@ class AnthropicCommand extends BedrockBodyCommand {
 
       jsonMap.put("messages", List.of(messageContent));
 
-      logger.info("Anthropic command: {}", new JSONObject(jsonMap).toString());
-
+      // The Messages API takes temperature, top_p, top_k and stop_sequences at the top level, next to max_tokens,
+      // so parameters the body does not have yet are added there instead of being dropped
       if (this.inferenceParameters != null && !this.inferenceParameters.isEmpty()) {
-          updateMap(jsonMap, inferenceParameters);
+          jsonMap.putAll(inferenceParameters);
       }
 
       return new JSONObject(jsonMap).toString();
@@ -0,0 +1,66 @@
+package com.amazon.aws.util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class IncrementalSummaryStore {
+
+    private final Map<String, Snapshot> records;
+
+    // Only segment hashes are kept, the record text itself is not retained between runs
+    private record Snapshot(List<String> segmentHashes, List<String> summaries) {
+    }
+
+    public IncrementalSummaryStore(int maxRecords) {
+        this.records = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                return size() > maxRecords;
+            }
+        };
+    }
+
+    /**
+     * Returns the previous summary of the segment at {@code index} if that segment is unchanged, or null.
+     * Nursing records only grow at the end, so everything up to the first differing segment is still valid; the
+     * caller stops asking after the first miss to keep that prefix rule.
+     */
+    public String stableSummary(String recordId, int index, String segment) {
+        if (recordId == null || recordId.isBlank()) {
+            return null;
+        }
+        Snapshot snapshot;
+        synchronized (records) {
+            snapshot = records.get(recordId);
+        }
+        if (snapshot == null || index >= snapshot.segmentHashes().size()
+                || !snapshot.segmentHashes().get(index).equals(hash(segment))) {
+            return null;
+        }
+        return snapshot.summaries().get(index);
+    }
+
+    public void update(String recordId, List<String> segments, List<String> summaries) {
+        if (recordId == null || recordId.isBlank()) {
+            return;
+        }
+        List<String> segmentHashes = segments.stream().map(IncrementalSummaryStore::hash).toList();
+        synchronized (records) {
+            records.put(recordId, new Snapshot(segmentHashes, List.copyOf(summaries)));
+        }
+    }
+
+    private static String hash(String segment) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(segment.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
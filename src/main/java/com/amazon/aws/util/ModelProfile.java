@@ -0,0 +1,110 @@
+package com.amazon.aws.util;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Limits of the supported text models, in one table. The segment and reduce budgets are sized so the prompt and
+ * the summary fit the context: a segment leaves room for a 2048 token summary, and the reduce budget is about
+ * half the context. The pipeline budgets by tokens unless SEGMENT_MAX_CHARS or REDUCE_MAX_CHARS sets a character
+ * budget; the segment character budget here is the default of {@link RecordSegmenter#forModel}. The inference
+ * parameters are the keys the model's request body takes, so a misspelled key is caught when the routes are loaded
+ * instead of being dropped from every request. Supporting a new model means adding its id here.
+ */
+public enum ModelProfile {
+
+    CLAUDE_3(List.of("anthropic.claude-3-sonnet-20240229-v1:0", "anthropic.claude-3-haiku-20240307-v1:0"),
+        200000, 4096, "max_tokens", 12000, 16000, 100000,
+        Set.of("max_tokens", "temperature", "top_p", "top_k", "stop_sequences", "system")),
+    CLAUDE(List.of("anthropic.claude-instant-v1", "anthropic.claude-v1", "anthropic.claude-v2"),
+        100000, 4096, "max_tokens", 8000, 10000, 50000,
+        Set.of("max_tokens", "temperature", "top_p", "top_k", "stop_sequences", "system")),
+    TITAN(List.of("amazon.titan-tg1-large", "amazon.titan-text-express-v1"),
+        8192, 8192, "maxTokenCount", 3000, 4000, 4000,
+        Set.of("maxTokenCount", "stopSequences", "temperature", "topP")),
+    JURASSIC(List.of("ai21.j2-mid-v1", "ai21.j2-ultra-v1"),
+        8191, 8191, "maxTokens", 3000, 4000, 4000,
+        Set.of("maxTokens", "temperature", "topP", "stopSequences", "countPenalty", "presencePenalty",
+            "frequencyPenalty")),
+    COMMAND(List.of("cohere.command-text-v14"),
+        4096, 4096, "max_tokens", 1500, 2000, 2000,
+        Set.of("max_tokens", "temperature", "p", "k", "stop_sequences", "return_likelihoods"));
+
+    private static final Map<String, ModelProfile> BY_MODEL_ID = new HashMap<>();
+    static {
+        for (ModelProfile profile : values()) {
+            for (String modelId : profile.modelIds) {
+                BY_MODEL_ID.put(modelId, profile);
+            }
+        }
+    }
+
+    private final List<String> modelIds;
+    private final int contextTokens;
+    private final int maxOutputTokens;
+    private final String maxTokensParameter;
+    private final int segmentMaxChars;
+    private final int segmentMaxTokens;
+    private final int reduceMaxTokens;
+    private final Set<String> inferenceParameters;
+
+    ModelProfile(List<String> modelIds, int contextTokens, int maxOutputTokens, String maxTokensParameter,
+                 int segmentMaxChars, int segmentMaxTokens, int reduceMaxTokens, Set<String> inferenceParameters) {
+        this.modelIds = modelIds;
+        this.contextTokens = contextTokens;
+        this.maxOutputTokens = maxOutputTokens;
+        this.maxTokensParameter = maxTokensParameter;
+        this.segmentMaxChars = segmentMaxChars;
+        this.segmentMaxTokens = segmentMaxTokens;
+        this.reduceMaxTokens = reduceMaxTokens;
+        this.inferenceParameters = inferenceParameters;
+    }
+
+    public static ModelProfile of(String modelId) {
+        ModelProfile profile = BY_MODEL_ID.get(modelId);
+        if (profile == null) {
+            throw new IllegalArgumentException("Unsupported modelId: " + modelId);
+        }
+        return profile;
+    }
+
+    public List<String> modelIds() {
+        return modelIds;
+    }
+
+    public int contextTokens() {
+        return contextTokens;
+    }
+
+    public int maxOutputTokens() {
+        return maxOutputTokens;
+    }
+
+    /**
+     * Returns the name of the inference parameter that caps the output tokens in the model's request body.
+     */
+    public String maxTokensParameter() {
+        return maxTokensParameter;
+    }
+
+    public int segmentMaxChars() {
+        return segmentMaxChars;
+    }
+
+    public int segmentMaxTokens() {
+        return segmentMaxTokens;
+    }
+
+    public int reduceMaxTokens() {
+        return reduceMaxTokens;
+    }
+
+    /**
+     * Returns the inference parameter keys the model's request body accepts.
+     */
+    public Set<String> inferenceParameters() {
+        return inferenceParameters;
+    }
+}
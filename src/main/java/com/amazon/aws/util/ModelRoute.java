@@ -0,0 +1,74 @@
+package com.amazon.aws.util;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The model and inference parameters for one pipeline stage. A call that the primary model throttles is sent to
+ * the fallback model, when one is configured, with the same parameters, so every parameter must be accepted by
+ * both models; a route that does not is rejected when it is created.
+ */
+public record ModelRoute(String primaryModel, String fallbackModel, Map<String, Object> parameters) {
+
+    public ModelRoute {
+        if (primaryModel == null || primaryModel.isBlank()) {
+            throw new IllegalArgumentException("'primaryModel' is a required parameter");
+        }
+        if (fallbackModel != null && (fallbackModel.isBlank() || fallbackModel.equals(primaryModel))) {
+            fallbackModel = null;
+        }
+        parameters = Collections.unmodifiableMap(new LinkedHashMap<>(parameters));
+        for (String model : models(primaryModel, fallbackModel)) {
+            Set<String> accepted = ModelProfile.of(model).inferenceParameters();
+            for (String name : parameters.keySet()) {
+                if (!accepted.contains(name)) {
+                    throw new IllegalArgumentException("Inference parameter '" + name + "' is not accepted by "
+                        + model + ", expected one of " + new TreeSet<>(accepted));
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a route whose parameters are the defaults overridden by the entries of a JSON object such as
+     * {"max_tokens":1024,"temperature":0.2}. Defaults that a model of the route does not take are left out, while an
+     * override it does not take rejects the route. A blank value keeps the defaults.
+     */
+    public static ModelRoute of(String primaryModel, String fallbackModel, Map<String, Object> defaults,
+                                String overrides) {
+        Map<String, Object> parameters = new LinkedHashMap<>(defaults);
+        if (primaryModel != null && !primaryModel.isBlank()) {
+            for (String model : models(primaryModel, fallbackModel)) {
+                parameters.keySet().retainAll(ModelProfile.of(model).inferenceParameters());
+            }
+        }
+        if (overrides != null && !overrides.isBlank()) {
+            parameters.putAll(new JSONObject(overrides).toMap());
+        }
+        return new ModelRoute(primaryModel, fallbackModel, parameters);
+    }
+
+    public boolean hasFallback() {
+        return fallbackModel != null;
+    }
+
+    public List<String> models() {
+        return models(primaryModel, fallbackModel);
+    }
+
+    private static List<String> models(String primaryModel, String fallbackModel) {
+        List<String> models = new ArrayList<>(2);
+        models.add(primaryModel);
+        if (fallbackModel != null && !fallbackModel.isBlank() && !fallbackModel.equals(primaryModel)) {
+            models.add(fallbackModel);
+        }
+        return models;
+    }
+}
@@ -0,0 +1,60 @@
+package com.amazon.aws.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sizes the output of one call from the estimated prompt tokens. The expected summary is a fixed minimum plus a
+ * share of the prompt, rounded up to a multiple of 256 so the request body templates stay few, and capped by the
+ * model's output limit and by what the context leaves after the prompt. A prompt that leaves less than the minimum
+ * is rejected before it is sent.
+ */
+public class OutputBudget {
+
+    private final TokenEstimator estimator;
+    private final double outputRatio;
+    private final int minOutputTokens;
+
+    public OutputBudget(TokenEstimator estimator, double outputRatio, int minOutputTokens) {
+        if (outputRatio < 0) {
+            throw new IllegalArgumentException("'outputRatio' must not be negative");
+        }
+        if (minOutputTokens <= 0) {
+            throw new IllegalArgumentException("'minOutputTokens' must be positive");
+        }
+        this.estimator = estimator;
+        this.outputRatio = outputRatio;
+        this.minOutputTokens = minOutputTokens;
+    }
+
+    public int inputTokens(CharSequence prompt) {
+        return estimator.estimate(prompt);
+    }
+
+    public boolean fits(String modelId, int inputTokens) {
+        return ModelProfile.of(modelId).contextTokens() - inputTokens >= minOutputTokens;
+    }
+
+    /**
+     * Returns the parameters with the output cap of the model added. A cap set explicitly in the parameters is kept.
+     *
+     * @throws PromptTooLargeException if the prompt leaves less than the minimum output in the context
+     */
+    public Map<String, Object> parameters(String modelId, Map<String, Object> parameters, int inputTokens) {
+        ModelProfile profile = ModelProfile.of(modelId);
+        int available = profile.contextTokens() - inputTokens;
+        if (available < minOutputTokens) {
+            throw new PromptTooLargeException(modelId, inputTokens, profile.contextTokens());
+        }
+
+        String name = profile.maxTokensParameter();
+        if (parameters.containsKey(name)) {
+            return parameters;
+        }
+        int expected = minOutputTokens + (int) Math.ceil(inputTokens * outputRatio);
+        int budget = Math.min((expected + 255) / 256 * 256, Math.min(profile.maxOutputTokens(), available));
+        Map<String, Object> budgeted = new LinkedHashMap<>(parameters);
+        budgeted.put(name, budget);
+        return budgeted;
+    }
+}
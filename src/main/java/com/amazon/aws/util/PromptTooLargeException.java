@@ -0,0 +1,32 @@
+package com.amazon.aws.util;
+
+/**
+ * Thrown before a call when the estimated prompt tokens leave no room for the summary in the model context, so an
+ * oversized prompt is not sent, billed and then rejected by Bedrock.
+ */
+public class PromptTooLargeException extends RuntimeException {
+
+    private final String modelId;
+    private final int estimatedTokens;
+    private final int contextTokens;
+
+    public PromptTooLargeException(String modelId, int estimatedTokens, int contextTokens) {
+        super("Prompt of about " + estimatedTokens + " tokens does not fit the " + contextTokens
+            + " token context of " + modelId);
+        this.modelId = modelId;
+        this.estimatedTokens = estimatedTokens;
+        this.contextTokens = contextTokens;
+    }
+
+    public String getModelId() {
+        return modelId;
+    }
+
+    public int getEstimatedTokens() {
+        return estimatedTokens;
+    }
+
+    public int getContextTokens() {
+        return contextTokens;
+    }
+}
@@ -0,0 +1,176 @@
+package com.amazon.aws.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class RecordSegmenter {
+
+    // Every nursing record entry starts with "yyyy-MM-dd\tHH：mm\t"
+    static final Pattern ENTRY_BOUNDARY = Pattern.compile("\\d{4}-\\d{2}-\\d{2}\t\\d{2}：\\d{2}\t");
+
+    private final int budget;
+    private final int overlapEntries;
+    private final ToIntFunction<String> measure;
+
+    public RecordSegmenter(int maxChars, int overlapEntries) {
+        this(maxChars, overlapEntries, String::length);
+    }
+
+    /**
+     * Packs segments by estimated tokens instead of characters. Entries are measured before preprocessing, so the
+     * whitespace it strips still counts and the prompts stay under the budget.
+     */
+    public RecordSegmenter(int maxTokens, int overlapEntries, TokenEstimator estimator) {
+        this(maxTokens, overlapEntries, estimator::estimate);
+    }
+
+    private RecordSegmenter(int budget, int overlapEntries, ToIntFunction<String> measure) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("'budget' must be positive");
+        }
+        if (overlapEntries < 0) {
+            throw new IllegalArgumentException("'overlapEntries' must not be negative");
+        }
+        this.budget = budget;
+        this.overlapEntries = overlapEntries;
+        this.measure = measure;
+    }
+
+    public static RecordSegmenter forModel(String modelId, int overlapEntries) {
+        return new RecordSegmenter(ModelProfile.of(modelId).segmentMaxChars(), overlapEntries);
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    /**
+     * Splits the record into its timestamped entries. Text before the first timestamp is kept as a leading entry.
+     */
+    public static List<String> splitEntries(String input) {
+        List<String> entries = new ArrayList<>();
+        Matcher matcher = ENTRY_BOUNDARY.matcher(input);
+        int start = 0;
+        while (matcher.find()) {
+            if (matcher.start() > start) {
+                entries.add(input.substring(start, matcher.start()));
+            }
+            start = matcher.start();
+        }
+        if (start < input.length()) {
+            entries.add(input.substring(start));
+        }
+        return entries;
+    }
+
+    /**
+     * Packs consecutive entries into segments within the budget, in characters or estimated tokens. An entry larger
+     * than the budget is never cut and becomes a segment of its own. With an overlap window the last entries of a
+     * segment are repeated at the start of the next one, but never more than half of them, so an overlap larger
+     * than what fits in a segment cannot turn every entry into a segment of its own.
+     */
+    public List<String> segment(String input) {
+        List<String> entries = splitEntries(input);
+        int[] sizes = entries.stream().mapToInt(measure).toArray();
+        List<String> segments = new ArrayList<>();
+
+        int first = 0;
+        while (first < entries.size()) {
+            int size = sizes[first];
+            int end = first + 1;
+            while (end < entries.size() && size + sizes[end] <= budget) {
+                size += sizes[end];
+                end++;
+            }
+            segments.add(String.join("", entries.subList(first, end)));
+
+            // Step back by the overlap window but always move past at least half of the segment
+            first = Math.max(end - overlapEntries, first + (end - first + 1) / 2);
+            if (end == entries.size()) {
+                break;
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Returns a segmenter that is fed the record one line at a time and hands every segment to
+     * {@code segmentConsumer} as soon as the entry after it is known. Fed the lines of a text, it produces the same
+     * segments as {@link #segment(String)} on the lines joined with a trailing newline each.
+     */
+    public Incremental incremental(Consumer<String> segmentConsumer) {
+        return new Incremental(segmentConsumer);
+    }
+
+    public final class Incremental implements Consumer<String>, AutoCloseable {
+
+        private final Consumer<String> segmentConsumer;
+        private final StringBuilder entry = new StringBuilder();
+        // Complete entries not yet packed into a closed segment, including the overlap of the previous one
+        private final List<String> window = new ArrayList<>();
+        private final List<Integer> windowSizes = new ArrayList<>();
+
+        private Incremental(Consumer<String> segmentConsumer) {
+            this.segmentConsumer = segmentConsumer;
+        }
+
+        @Override
+        public void accept(String line) {
+            // A timestamp never spans a line break, so boundaries can be found line by line
+            Matcher matcher = ENTRY_BOUNDARY.matcher(line);
+            int start = 0;
+            while (matcher.find()) {
+                entry.append(line, start, matcher.start());
+                if (entry.length() > 0) {
+                    addEntry();
+                    pack(false);
+                }
+                start = matcher.start();
+            }
+            entry.append(line, start, line.length()).append('\n');
+        }
+
+        @Override
+        public void close() {
+            if (entry.length() > 0) {
+                addEntry();
+            }
+            pack(true);
+        }
+
+        private void addEntry() {
+            String complete = entry.toString();
+            window.add(complete);
+            windowSizes.add(measure.applyAsInt(complete));
+            entry.setLength(0);
+        }
+
+        private void pack(boolean last) {
+            while (!window.isEmpty()) {
+                int size = windowSizes.get(0);
+                int end = 1;
+                while (end < window.size() && size + windowSizes.get(end) <= budget) {
+                    size += windowSizes.get(end);
+                    end++;
+                }
+                // Until the record ends, the next entry may still fit into this segment
+                if (end == window.size() && !last) {
+                    return;
+                }
+                segmentConsumer.accept(String.join("", window.subList(0, end)));
+                if (end == window.size()) {
+                    window.clear();
+                    windowSizes.clear();
+                    return;
+                }
+                int drop = Math.max(end - overlapEntries, (end + 1) / 2);
+                window.subList(0, drop).clear();
+                windowSizes.subList(0, drop).clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.amazon.aws.util;
+
+/**
+ * Thrown when a model response cannot be turned into text, instead of passing an error message on as a summary.
+ */
+public class ResponseParseException extends RuntimeException {
+
+    public enum Reason {
+        // The body is not valid JSON
+        MALFORMED_JSON,
+        // A known field has a different type than the model's response shape
+        UNEXPECTED_SHAPE,
+        // The body is valid but holds no generated text
+        MISSING_TEXT
+    }
+
+    private final Reason reason;
+
+    public ResponseParseException(Reason reason, String message) {
+        super(message);
+        this.reason = reason;
+    }
+
+    public ResponseParseException(Reason reason, String message, Throwable cause) {
+        super(message, cause);
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
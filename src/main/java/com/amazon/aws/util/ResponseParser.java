@@ -1,30 +1,381 @@
 package com.amazon.aws.util;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-import org.json.JSONTokener;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads model responses with a streaming JSON parser straight from the response bytes. Only the generated text,
+ * the token usage and the stop reason are kept; every other value is skipped without being materialized.
+ */
 public class ResponseParser {
 
+    private static final JsonFactory JSON = new JsonFactory();
+
+    /**
+     * Text and usage of one response. Token counts are 0 when the model does not report them.
+     */
+    public record ModelResponse(String text, int inputTokens, int outputTokens, String stopReason) {
+    }
+
+    private enum Family {
+        ANTHROPIC, TITAN, COHERE, AI21
+    }
+
+    @FunctionalInterface
+    private interface FieldHandler {
+        void field(String name, JsonToken value) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface ElementHandler {
+        void element(JsonToken value) throws IOException;
+    }
+
+    public static ModelResponse parse(String modelId, byte[] body) {
+        try (JsonParser parser = JSON.createParser(body)) {
+            return parse(family(modelId), parser);
+        } catch (IOException e) {
+            throw malformed(e);
+        }
+    }
+
     public static String extractTextFromResponse(String jsonResponse) {
-        try {
-            JSONObject responseObj = new JSONObject(new JSONTokener(jsonResponse));
-            JSONArray contentArray = responseObj.getJSONArray("content");
+        return parse("anthropic", jsonResponse.getBytes(StandardCharsets.UTF_8)).text();
+    }
+
+    /**
+     * Returns the text delta of one streamed chunk, or an empty string for chunks without text (message start,
+     * stop events).
+     */
+    public static String extractTextFromStreamChunk(String modelId, byte[] chunk) {
+        Family family = family(modelId);
+        StringBuilder text = new StringBuilder();
+        try (JsonParser parser = JSON.createParser(chunk)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT, "chunk");
+            forEachField(parser, (name, value) -> {
+                switch (family) {
+                    // Messages API: {"type":"content_block_delta","delta":{"type":"text_delta","text":"..."}}
+                    // Text completions API: {"completion":"...","stop_reason":null}
+                    case ANTHROPIC -> {
+                        if ("delta".equals(name) && value == JsonToken.START_OBJECT) {
+                            forEachField(parser, (deltaName, deltaValue) -> appendIfText(parser, "text", deltaName, text));
+                        } else {
+                            appendIfText(parser, "completion", name, text);
+                        }
+                    }
+                    case TITAN -> appendIfText(parser, "outputText", name, text);
+                    case COHERE -> {
+                        if ("generations".equals(name)) {
+                            readCohereGenerations(parser, value, text);
+                        } else {
+                            appendIfText(parser, "text", name, text);
+                        }
+                    }
+                    case AI21 -> throw new IllegalArgumentException("Streaming is not supported for modelId: " + modelId);
+                }
+            });
+            return text.toString();
+        } catch (IOException e) {
+            throw malformed(e);
+        }
+    }
 
-            StringBuilder textBuilder = new StringBuilder();
+    private static Family family(String modelId) {
+        if (modelId.startsWith("anthropic")) {
+            return Family.ANTHROPIC;
+        } else if (modelId.startsWith("amazon.titan")) {
+            return Family.TITAN;
+        } else if (modelId.startsWith("cohere")) {
+            return Family.COHERE;
+        } else if (modelId.startsWith("ai21")) {
+            return Family.AI21;
+        }
+        throw new IllegalArgumentException("Unsupported modelId: " + modelId);
+    }
+
+    private static ModelResponse parse(Family family, JsonParser parser) throws IOException {
+        expect(parser, parser.nextToken(), JsonToken.START_OBJECT, "response");
+        ResponseBuilder response = new ResponseBuilder();
+        switch (family) {
+            case ANTHROPIC -> readAnthropic(parser, response);
+            case TITAN -> readTitan(parser, response);
+            case COHERE -> readCohere(parser, response);
+            case AI21 -> readAi21(parser, response);
+        }
+        if (!response.hasResult) {
+            throw new ResponseParseException(ResponseParseException.Reason.MISSING_TEXT,
+                "Response contains no generated text" + (response.message == null ? "" : ": " + response.message));
+        }
+        return response.build();
+    }
+
+    // {"content":[{"type":"text","text":"..."}],"usage":{"input_tokens":10,"output_tokens":6},"stop_reason":"end_turn"}
+    // or the text completions shape {"completion":"...","stop_reason":"stop_sequence"}
+    private static void readAnthropic(JsonParser parser, ResponseBuilder response) throws IOException {
+        forEachField(parser, (name, value) -> {
+            switch (name) {
+                case "content" -> forEachResult(parser, value, "content", response, block -> {
+                    expect(parser, block, JsonToken.START_OBJECT, "content block");
+                    String[] type = new String[1];
+                    String[] blockText = new String[1];
+                    forEachField(parser, (blockName, blockValue) -> {
+                        if ("type".equals(blockName)) {
+                            type[0] = string(parser, blockValue, "content.type");
+                        } else if ("text".equals(blockName)) {
+                            blockText[0] = string(parser, blockValue, "content.text");
+                        } else {
+                            parser.skipChildren();
+                        }
+                    });
+                    if ("text".equals(type[0]) && blockText[0] != null) {
+                        response.append(blockText[0]);
+                    }
+                });
+                case "completion" -> response.append(string(parser, value, name));
+                case "usage" -> {
+                    expect(parser, value, JsonToken.START_OBJECT, name);
+                    forEachField(parser, (usageName, usageValue) -> {
+                        if ("input_tokens".equals(usageName)) {
+                            response.inputTokens = integer(parser, usageValue, "usage.input_tokens");
+                        } else if ("output_tokens".equals(usageName)) {
+                            response.outputTokens = integer(parser, usageValue, "usage.output_tokens");
+                        } else {
+                            parser.skipChildren();
+                        }
+                    });
+                }
+                case "stop_reason" -> response.stopReason = nullableString(parser, value, name);
+                case "message" -> response.message = nullableString(parser, value, name);
+                default -> parser.skipChildren();
+            }
+        });
+    }
 
-            for (int i = 0; i < contentArray.length(); i++) {
-                JSONObject contentObj = contentArray.getJSONObject(i);
-                if ("text".equals(contentObj.getString("type"))) {
-                    textBuilder.append(contentObj.getString("text"));
+    // {"inputTextTokenCount":12,"results":[{"tokenCount":40,"outputText":"...","completionReason":"FINISH"}]}
+    private static void readTitan(JsonParser parser, ResponseBuilder response) throws IOException {
+        forEachField(parser, (name, value) -> {
+            switch (name) {
+                case "inputTextTokenCount" -> response.inputTokens = integer(parser, value, name);
+                case "results" -> forEachResult(parser, value, name, response, result -> {
+                    expect(parser, result, JsonToken.START_OBJECT, "result");
+                    forEachField(parser, (resultName, resultValue) -> {
+                        switch (resultName) {
+                            case "outputText" -> response.append(string(parser, resultValue, "results.outputText"));
+                            case "tokenCount" -> response.outputTokens += integer(parser, resultValue, "results.tokenCount");
+                            case "completionReason" -> response.stopReason = nullableString(parser, resultValue, resultName);
+                            default -> parser.skipChildren();
+                        }
+                    });
+                });
+                case "message" -> response.message = nullableString(parser, value, name);
+                default -> parser.skipChildren();
+            }
+        });
+    }
+
+    // {"generations":[{"id":"...","text":"...","finish_reason":"COMPLETE"}],"meta":{"billed_units":{"input_tokens":5,"output_tokens":20}}}
+    private static void readCohere(JsonParser parser, ResponseBuilder response) throws IOException {
+        forEachField(parser, (name, value) -> {
+            switch (name) {
+                case "generations" -> forEachResult(parser, value, name, response, generation -> {
+                    expect(parser, generation, JsonToken.START_OBJECT, "generation");
+                    forEachField(parser, (generationName, generationValue) -> {
+                        switch (generationName) {
+                            case "text" -> response.append(string(parser, generationValue, "generations.text"));
+                            case "finish_reason" -> response.stopReason = nullableString(parser, generationValue, generationName);
+                            default -> parser.skipChildren();
+                        }
+                    });
+                });
+                case "meta" -> {
+                    expect(parser, value, JsonToken.START_OBJECT, name);
+                    forEachField(parser, (metaName, metaValue) -> {
+                        if (!"billed_units".equals(metaName)) {
+                            parser.skipChildren();
+                            return;
+                        }
+                        expect(parser, metaValue, JsonToken.START_OBJECT, "meta.billed_units");
+                        forEachField(parser, (unitName, unitValue) -> {
+                            if ("input_tokens".equals(unitName)) {
+                                response.inputTokens = integer(parser, unitValue, "billed_units.input_tokens");
+                            } else if ("output_tokens".equals(unitName)) {
+                                response.outputTokens = integer(parser, unitValue, "billed_units.output_tokens");
+                            } else {
+                                parser.skipChildren();
+                            }
+                        });
+                    });
                 }
+                case "message" -> response.message = nullableString(parser, value, name);
+                default -> parser.skipChildren();
             }
+        });
+    }
+
+    // {"prompt":{"text":"...","tokens":[...]},"completions":[{"data":{"text":"...","tokens":[...]},"finishReason":{"reason":"endoftext"}}]}
+    // Usage is not reported, it is counted from the token arrays without reading them
+    private static void readAi21(JsonParser parser, ResponseBuilder response) throws IOException {
+        forEachField(parser, (name, value) -> {
+            switch (name) {
+                case "prompt" -> {
+                    expect(parser, value, JsonToken.START_OBJECT, name);
+                    forEachField(parser, (promptName, promptValue) -> {
+                        if ("tokens".equals(promptName)) {
+                            response.inputTokens = countElements(parser, promptValue, "prompt.tokens");
+                        } else {
+                            parser.skipChildren();
+                        }
+                    });
+                }
+                case "completions" -> forEachResult(parser, value, name, response, completion -> {
+                    expect(parser, completion, JsonToken.START_OBJECT, "completion");
+                    forEachField(parser, (completionName, completionValue) -> {
+                        switch (completionName) {
+                            case "data" -> {
+                                expect(parser, completionValue, JsonToken.START_OBJECT, "completions.data");
+                                forEachField(parser, (dataName, dataValue) -> {
+                                    if ("text".equals(dataName)) {
+                                        response.append(string(parser, dataValue, "data.text"));
+                                    } else if ("tokens".equals(dataName)) {
+                                        response.outputTokens += countElements(parser, dataValue, "data.tokens");
+                                    } else {
+                                        parser.skipChildren();
+                                    }
+                                });
+                            }
+                            case "finishReason" -> {
+                                expect(parser, completionValue, JsonToken.START_OBJECT, completionName);
+                                forEachField(parser, (reasonName, reasonValue) -> {
+                                    if ("reason".equals(reasonName)) {
+                                        response.stopReason = nullableString(parser, reasonValue, "finishReason.reason");
+                                    } else {
+                                        parser.skipChildren();
+                                    }
+                                });
+                            }
+                            default -> parser.skipChildren();
+                        }
+                    });
+                });
+                case "message" -> response.message = nullableString(parser, value, name);
+                default -> parser.skipChildren();
+            }
+        });
+    }
+
+    private static void readCohereGenerations(JsonParser parser, JsonToken value, StringBuilder text) throws IOException {
+        forEachElement(parser, value, "generations", generation -> {
+            expect(parser, generation, JsonToken.START_OBJECT, "generation");
+            forEachField(parser, (name, fieldValue) -> appendIfText(parser, "text", name, text));
+        });
+    }
+
+    private static void appendIfText(JsonParser parser, String textField, String name, StringBuilder text) throws IOException {
+        if (textField.equals(name) && parser.currentToken() == JsonToken.VALUE_STRING) {
+            text.append(parser.getText());
+        } else {
+            parser.skipChildren();
+        }
+    }
+
+    // Called with the parser on START_OBJECT, returns with it on the matching END_OBJECT
+    private static void forEachField(JsonParser parser, FieldHandler handler) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            handler.field(name, parser.nextToken());
+        }
+        if (parser.currentToken() != JsonToken.END_OBJECT) {
+            throw new JsonParseEndException(parser);
+        }
+    }
+
+    private static void forEachElement(JsonParser parser, JsonToken value, String field, ElementHandler handler) throws IOException {
+        expect(parser, value, JsonToken.START_ARRAY, field);
+        JsonToken element;
+        while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (element == null) {
+                throw new JsonParseEndException(parser);
+            }
+            handler.element(element);
+        }
+    }
+
+    // The array holding the generated text of the shape, present even when the model generated nothing
+    private static void forEachResult(JsonParser parser, JsonToken value, String field, ResponseBuilder response,
+                                      ElementHandler handler) throws IOException {
+        response.hasResult = true;
+        forEachElement(parser, value, field, handler);
+    }
+
+    private static int countElements(JsonParser parser, JsonToken value, String field) throws IOException {
+        int[] count = new int[1];
+        forEachElement(parser, value, field, element -> {
+            parser.skipChildren();
+            count[0]++;
+        });
+        return count[0];
+    }
+
+    private static String string(JsonParser parser, JsonToken value, String field) throws IOException {
+        expect(parser, value, JsonToken.VALUE_STRING, field);
+        return parser.getText();
+    }
+
+    private static String nullableString(JsonParser parser, JsonToken value, String field) throws IOException {
+        return value == JsonToken.VALUE_NULL ? null : string(parser, value, field);
+    }
+
+    private static int integer(JsonParser parser, JsonToken value, String field) throws IOException {
+        expect(parser, value, JsonToken.VALUE_NUMBER_INT, field);
+        return parser.getIntValue();
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected, String field) throws IOException {
+        if (actual == null) {
+            throw new JsonParseEndException(parser);
+        }
+        if (actual != expected) {
+            throw new ResponseParseException(ResponseParseException.Reason.UNEXPECTED_SHAPE,
+                "Expected " + expected + " for '" + field + "' but found " + actual
+                    + " at " + parser.currentLocation().offsetDescription());
+        }
+    }
+
+    private static ResponseParseException malformed(IOException e) {
+        return new ResponseParseException(ResponseParseException.Reason.MALFORMED_JSON,
+            "Malformed model response: "
+                + (e instanceof JsonProcessingException json ? json.getOriginalMessage() : e.getMessage()), e);
+    }
+
+    // Truncated body, reported as malformed JSON like any other syntax error
+    private static class JsonParseEndException extends JsonProcessingException {
+        JsonParseEndException(JsonParser parser) {
+            super("Unexpected end of response", parser.currentLocation());
+        }
+    }
+
+    private static class ResponseBuilder {
+        private final StringBuilder text = new StringBuilder();
+        // Set once the shape's result field is seen, an empty result is still a valid answer
+        private boolean hasResult;
+        private int inputTokens;
+        private int outputTokens;
+        private String stopReason;
+        // Error message some models return in place of a result
+        private String message;
+
+        void append(String value) {
+            text.append(value);
+            hasResult = true;
+        }
 
-            return textBuilder.toString();
-        } catch (Exception e) {
-            // Log the error and return a meaningful message
-            e.printStackTrace();
-            return "Error parsing response: " + e.getMessage();
+        ModelResponse build() {
+            return new ModelResponse(text.toString(), inputTokens, outputTokens, stopReason);
         }
     }
 }
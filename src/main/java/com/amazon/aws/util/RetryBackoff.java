@@ -0,0 +1,79 @@
+package com.amazon.aws.util;
+
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Exponential backoff with full jitter: attempt n waits a random time between 0 and min(cap, base * 2^n).
+ */
+public class RetryBackoff {
+
+    private final int maxRetries;
+    private final long baseMillis;
+    private final long capMillis;
+
+    public RetryBackoff(int maxRetries, long baseMillis, long capMillis) {
+        this.maxRetries = maxRetries;
+        this.baseMillis = baseMillis;
+        this.capMillis = capMillis;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long delayMillis(int attempt) {
+        long ceiling = Math.min(capMillis, baseMillis << Math.min(attempt, 30));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    public static boolean isThrottling(Throwable error) {
+        Throwable cause = unwrap(error);
+        return cause instanceof AwsServiceException serviceException && serviceException.isThrottlingException();
+    }
+
+    /**
+     * Throttling, server errors, timeouts and client errors caused by I/O are worth another attempt. Other client
+     * errors (missing credentials, a request that cannot be marshalled) and rejected requests fail the same way again.
+     */
+    public static boolean isRetryable(Throwable error) {
+        Throwable cause = unwrap(error);
+        if (isThrottling(cause)) {
+            return true;
+        }
+        if (cause instanceof AwsServiceException serviceException) {
+            return serviceException.statusCode() >= 500;
+        }
+        if (cause instanceof ApiCallTimeoutException || cause instanceof ApiCallAttemptTimeoutException) {
+            return true;
+        }
+        return cause instanceof SdkClientException && causedByIo(cause);
+    }
+
+    // Connection resets and read timeouts reach us as the cause of the client error; the depth bound guards cycles
+    private static boolean causedByIo(Throwable error) {
+        Throwable cause = error.getCause();
+        for (int depth = 0; cause != null && depth < 10; depth++, cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof TimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -0,0 +1,85 @@
+package com.amazon.aws.util;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key. The first caller runs the work, and callers that arrive while it is
+ * still in flight wait for the same result instead of starting their own. The key is dropped as soon as the work
+ * completes, so a later caller starts a new flight (and normally finds the result in the cache by then).
+ */
+public class SingleFlight<T> {
+
+    private final ConcurrentHashMap<String, Flight<T>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong leaders = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private record Flight<T>(CompletableFuture<T> result, Object state) {
+    }
+
+    /**
+     * Starts the work unless a call with the same key is in flight. Every caller gets its own future dependent on the
+     * shared one, so cancelling one caller's future does not cancel the work for the others.
+     */
+    public CompletableFuture<T> execute(String key, Supplier<CompletableFuture<T>> work) {
+        return execute(key, () -> null, state -> { }, state -> work.get());
+    }
+
+    /**
+     * Like {@link #execute(String, Supplier)}, with a state object shared by the callers of one flight. The leader
+     * creates the state, every caller (the leader first, before the work starts) joins it, and it is dropped together
+     * with the flight, so a caller never joins the state of a flight that has already been replaced. All callers of a
+     * key must use the same state type.
+     */
+    @SuppressWarnings("unchecked")
+    public <S> CompletableFuture<T> execute(String key, Supplier<S> newState, Consumer<S> join,
+                                            Function<S, CompletableFuture<T>> work) {
+        Flight<T> flight = new Flight<>(new CompletableFuture<>(), newState.get());
+        Flight<T> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            join.accept((S) existing.state());
+            return existing.result()
+                .handle((value, e) -> e instanceof CancellationException
+                    ? execute(key, newState, join, work)
+                    : existing.result())
+                .thenCompose(Function.identity());
+        }
+
+        leaders.incrementAndGet();
+        S state = (S) flight.state();
+        CompletableFuture<T> result;
+        try {
+            join.accept(state);
+            result = work.apply(state);
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((value, e) -> {
+            inFlight.remove(key, flight);
+            if (e != null) {
+                flight.result().completeExceptionally(e);
+            } else {
+                flight.result().complete(value);
+            }
+        });
+        return flight.result().copy();
+    }
+
+    public long getLeaders() {
+        return leaders.get();
+    }
+
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    public int size() {
+        return inFlight.size();
+    }
+}
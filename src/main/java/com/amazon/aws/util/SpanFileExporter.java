@@ -0,0 +1,105 @@
+package com.amazon.aws.util;
+
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.EventData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * Appends finished spans to a file, one JSON object per line, for environments without an OTLP collector.
+ * Each line carries the trace and parent ids, so a slow request can be rebuilt with grep and jq.
+ */
+public class SpanFileExporter implements SpanExporter {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpanFileExporter.class);
+
+    private final BufferedWriter writer;
+    private boolean closed;
+
+    public SpanFileExporter(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public synchronized CompletableResultCode export(Collection<SpanData> spans) {
+        if (closed) {
+            return CompletableResultCode.ofFailure();
+        }
+        try {
+            for (SpanData span : spans) {
+                writer.write(toJson(span).toString());
+                writer.newLine();
+            }
+            writer.flush();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            logger.warn("Unable to write {} spans", spans.size(), e);
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public synchronized CompletableResultCode flush() {
+        try {
+            writer.flush();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    @Override
+    public synchronized CompletableResultCode shutdown() {
+        if (closed) {
+            return CompletableResultCode.ofSuccess();
+        }
+        closed = true;
+        try {
+            writer.close();
+            return CompletableResultCode.ofSuccess();
+        } catch (IOException e) {
+            return CompletableResultCode.ofFailure();
+        }
+    }
+
+    static JSONObject toJson(SpanData span) {
+        JSONObject attributes = new JSONObject();
+        span.getAttributes().forEach((key, value) -> attributes.put(key.getKey(), value));
+
+        JSONArray events = new JSONArray();
+        for (EventData event : span.getEvents()) {
+            events.put(new JSONObject()
+                .put("name", event.getName())
+                .put("offsetMs", (event.getEpochNanos() - span.getStartEpochNanos()) / 1_000_000.0));
+        }
+
+        return new JSONObject()
+            .put("traceId", span.getTraceId())
+            .put("spanId", span.getSpanId())
+            .put("parentSpanId", span.getParentSpanContext().isValid() ? span.getParentSpanId() : JSONObject.NULL)
+            .put("name", span.getName())
+            .put("kind", span.getKind().name())
+            .put("startEpochMicros", span.getStartEpochNanos() / 1000)
+            .put("durationMs", (span.getEndEpochNanos() - span.getStartEpochNanos()) / 1_000_000.0)
+            .put("status", span.getStatus().getStatusCode().name())
+            .put("attributes", attributes)
+            .put("events", events);
+    }
+}
@@ -0,0 +1,279 @@
+package com.amazon.aws.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier summary cache: an LRU map in memory in front of one file per entry on disk. Both tiers drop entries older
+ * than the TTL. The disk tier is kept under {@code maxDiskBytes} by a sweep that runs at startup and whenever the
+ * bytes written since the last sweep could have crossed the cap; it removes expired entries and leftover temporary
+ * files, then the least recently written entries until the directory is back under 90% of the cap.
+ */
+public class SummaryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SummaryCache.class);
+    private static final double SWEEP_TARGET_RATIO = 0.9;
+
+    private final Map<String, Entry> memory;
+    private final long ttlMillis;
+    private final Path diskDirectory;
+    private final long maxDiskBytes;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong diskEvictions = new AtomicLong();
+    // Bytes on disk as of the last sweep plus everything written since, an upper bound of the real size
+    private final AtomicLong diskBytes = new AtomicLong();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    private record Entry(String value, long createdAt) {
+    }
+
+    public SummaryCache(int maxEntries, Duration ttl, Path diskDirectory) {
+        this(maxEntries, ttl, diskDirectory, Long.MAX_VALUE);
+    }
+
+    public SummaryCache(int maxEntries, Duration ttl, Path diskDirectory, long maxDiskBytes) {
+        if (maxDiskBytes <= 0) {
+            throw new IllegalArgumentException("'maxDiskBytes' must be positive");
+        }
+        // LRU: access-ordered map that drops the eldest entry once it grows past maxEntries
+        this.memory = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        this.ttlMillis = ttl.toMillis();
+        this.diskDirectory = diskDirectory;
+        this.maxDiskBytes = maxDiskBytes;
+
+        if (diskDirectory != null) {
+            try {
+                Files.createDirectories(diskDirectory);
+            } catch (IOException e) {
+                throw new IllegalArgumentException("Unable to create cache directory: " + diskDirectory, e);
+            }
+            sweep();
+        }
+    }
+
+    public static String key(String modelId, Map<String, Object> inferenceParameters, String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelId.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            // Sort the parameters so the key does not depend on map iteration order
+            digest.update(new TreeMap<>(inferenceParameters).toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    public String get(String key) {
+        return lookup(key, true);
+    }
+
+    /**
+     * Looks the key up like {@link #get} without counting a hit or a miss, for callers that only check what is
+     * cached (such as deciding which prompts a batch job still has to send).
+     */
+    public String peek(String key) {
+        return lookup(key, false);
+    }
+
+    private String lookup(String key, boolean count) {
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            Entry entry = memory.get(key);
+            if (entry != null) {
+                if (now - entry.createdAt() <= ttlMillis) {
+                    if (count) {
+                        memoryHits.incrementAndGet();
+                    }
+                    return entry.value();
+                }
+                memory.remove(key);
+            }
+        }
+
+        String value = readFromDisk(key, now);
+        if (value != null) {
+            if (count) {
+                diskHits.incrementAndGet();
+            }
+            synchronized (memory) {
+                memory.put(key, new Entry(value, now));
+            }
+            return value;
+        }
+
+        if (count) {
+            misses.incrementAndGet();
+        }
+        return null;
+    }
+
+    public void put(String key, String value) {
+        synchronized (memory) {
+            memory.put(key, new Entry(value, System.currentTimeMillis()));
+        }
+        writeToDisk(key, value);
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getDiskEvictions() {
+        return diskEvictions.get();
+    }
+
+    public int size() {
+        synchronized (memory) {
+            return memory.size();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hits = memoryHits.get() + diskHits.get();
+        long total = hits + misses.get();
+        synchronized (memory) {
+            stats.put("size", memory.size());
+        }
+        stats.put("memoryHits", memoryHits.get());
+        stats.put("diskHits", diskHits.get());
+        stats.put("misses", misses.get());
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hits / total);
+        stats.put("diskEvictions", diskEvictions.get());
+        return stats;
+    }
+
+    private String readFromDisk(String key, long now) {
+        if (diskDirectory == null) {
+            return null;
+        }
+        Path file = diskDirectory.resolve(key + ".txt");
+        try {
+            if (!Files.exists(file)) {
+                return null;
+            }
+            if (now - Files.getLastModifiedTime(file).toMillis() > ttlMillis) {
+                Files.deleteIfExists(file);
+                return null;
+            }
+            return Files.readString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warn("Unable to read cached summary {}", file, e);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, String value) {
+        if (diskDirectory == null) {
+            return;
+        }
+        Path file = diskDirectory.resolve(key + ".txt");
+        try {
+            // Write to a temporary file first so a crash never leaves a truncated entry behind
+            Path tmpFile = Files.createTempFile(diskDirectory, key, ".tmp");
+            Files.writeString(tmpFile, value, StandardCharsets.UTF_8);
+            long size = Files.size(tmpFile);
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (diskBytes.addAndGet(size) > maxDiskBytes && sweeping.compareAndSet(false, true)) {
+                // Writes come from the Bedrock callbacks, the directory scan runs on its own virtual thread
+                Thread.startVirtualThread(() -> {
+                    try {
+                        sweep();
+                    } finally {
+                        sweeping.set(false);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to write cached summary {}", file, e);
+        }
+    }
+
+    // Deletes expired entries and stale temporary files, then the oldest entries while over the cap
+    void sweep() {
+        long now = System.currentTimeMillis();
+        List<Path> entries = new ArrayList<>();
+        Map<Path, FileTime> written = new HashMap<>();
+        Map<Path, Long> sizes = new HashMap<>();
+        long total = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(diskDirectory)) {
+            for (Path file : files) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                String name = file.getFileName().toString();
+                long age = now - attributes.lastModifiedTime().toMillis();
+                if (name.endsWith(".tmp") && age > Math.min(ttlMillis, TimeUnit.HOURS.toMillis(1))
+                        || name.endsWith(".txt") && age > ttlMillis) {
+                    Files.deleteIfExists(file);
+                } else if (name.endsWith(".txt")) {
+                    entries.add(file);
+                    written.put(file, attributes.lastModifiedTime());
+                    sizes.put(file, attributes.size());
+                    total += attributes.size();
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to sweep cache directory {}", diskDirectory, e);
+            return;
+        }
+
+        if (total > maxDiskBytes) {
+            long target = (long) (maxDiskBytes * SWEEP_TARGET_RATIO);
+            entries.sort(Comparator.comparing(written::get));
+            for (Path file : entries) {
+                if (total <= target) {
+                    break;
+                }
+                try {
+                    Files.deleteIfExists(file);
+                    total -= sizes.get(file);
+                    diskEvictions.incrementAndGet();
+                } catch (IOException e) {
+                    logger.warn("Unable to evict cached summary {}", file, e);
+                }
+            }
+        }
+        diskBytes.set(total);
+    }
+}
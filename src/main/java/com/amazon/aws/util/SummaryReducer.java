@@ -0,0 +1,129 @@
+package com.amazon.aws.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Plans a tree reduce over segment summaries. While the summaries and the final instructions do not fit the
+ * reduce budget, consecutive summaries are packed into groups that fit, each group is merged into one summary, and
+ * the merged summaries form the next level. A summary longer than half of what the merge instructions leave is
+ * split first, so no group goes over the budget and every group but the last holds at least two summaries; the
+ * number of levels grows with the logarithm of the record length.
+ */
+public class SummaryReducer {
+
+    private final int budget;
+    private final String unit;
+    private final ToIntFunction<String> measure;
+
+    public SummaryReducer(int maxChars) {
+        this(maxChars, "chars", String::length);
+    }
+
+    public SummaryReducer(int maxTokens, TokenEstimator estimator) {
+        this(maxTokens, "tokens", estimator::estimate);
+    }
+
+    private SummaryReducer(int budget, String unit, ToIntFunction<String> measure) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("'budget' must be positive");
+        }
+        this.budget = budget;
+        this.unit = unit;
+        this.measure = measure;
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+
+    /**
+     * Returns the unit of the budget, "chars" or "tokens".
+     */
+    public String getUnit() {
+        return unit;
+    }
+
+    public boolean fits(List<String> summaries, String instructions) {
+        return size(summaries) + measure.applyAsInt(instructions) <= budget;
+    }
+
+    /**
+     * Returns the size of the summaries in the unit of the budget.
+     */
+    public int size(List<String> summaries) {
+        int total = 0;
+        for (String summary : summaries) {
+            total += measure.applyAsInt(summary);
+        }
+        return total;
+    }
+
+    /**
+     * Splits the summaries, in order, into groups that each fit the budget together with the merge instructions.
+     * A summary too long to share a group is cut with {@link #split} and its pieces are grouped like summaries.
+     * Only the last group can be a single summary, which the caller passes on to the next level unmerged. When the
+     * instructions leave no room at all, every summary is its own group.
+     */
+    public List<List<String>> groups(List<String> summaries, String instructions) {
+        int available = budget - measure.applyAsInt(instructions);
+        List<List<String>> groups = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int currentSize = 0;
+        for (String summary : summaries) {
+            int summarySize = measure.applyAsInt(summary);
+            List<String> pieces = summarySize > available / 2 ? split(summary, instructions) : List.of(summary);
+            for (String piece : pieces) {
+                int size = pieces.size() == 1 ? summarySize : measure.applyAsInt(piece);
+                if (!current.isEmpty() && currentSize + size > available) {
+                    groups.add(current);
+                    current = new ArrayList<>();
+                    currentSize = 0;
+                }
+                current.add(piece);
+                currentSize += size;
+            }
+        }
+        if (!current.isEmpty()) {
+            groups.add(current);
+        }
+        return groups;
+    }
+
+    /**
+     * Cuts a summary that does not fit the budget on its own into consecutive pieces small enough to be merged two at
+     * a time with the merge instructions, so the next level can shrink it. A cut falls after a line break when there
+     * is one in the second half of the piece. The pieces joined together are the summary.
+     */
+    public List<String> split(String summary, String instructions) {
+        int available = budget - measure.applyAsInt(instructions);
+        if (available < 2) {
+            return List.of(summary);
+        }
+        int limit = available / 2;
+        List<String> pieces = new ArrayList<>();
+        int start = 0;
+        while (start < summary.length()) {
+            int end = summary.length();
+            int size = measure.applyAsInt(summary.substring(start, end));
+            while (size > limit && end - start > 1) {
+                // The measures are close to additive, so cut in proportion first
+                int length = end - start;
+                end = start + Math.max(1, Math.min(length - 1, (int) ((long) length * limit / size)));
+                size = measure.applyAsInt(summary.substring(start, end));
+            }
+            if (end < summary.length()) {
+                int lineBreak = summary.lastIndexOf('\n', end - 1);
+                if (lineBreak >= start + (end - start) / 2) {
+                    end = lineBreak + 1;
+                } else if (end - start > 1 && Character.isHighSurrogate(summary.charAt(end - 1))) {
+                    end--;
+                }
+            }
+            pieces.add(summary.substring(start, end));
+            start = end;
+        }
+        return pieces;
+    }
+}
@@ -0,0 +1,122 @@
+package com.amazon.aws.util;
+
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * Cleans record text before it is sent to the model in a single pass over the input.
+ * The input is cut into entries at the timestamp boundaries, and each entry span is pushed through the stages
+ * in order. Stages forward sub-spans (or replacement text) to the next stage, and only the last one copies
+ * characters, into the caller's output buffer.
+ * <p>
+ * An {@link EntryStage} needs each entry as one span, so it must come before every stage that may split a span.
+ * The constructor rejects a pipeline that orders them the other way.
+ */
+public class TextPreprocessor {
+
+    private static final String EDUCATION_MARKER = "衛教指導";
+
+    private final List<Stage> stages;
+
+    public interface Sink {
+        void append(CharSequence text, int start, int end);
+    }
+
+    public interface Stage {
+        void process(CharSequence text, int start, int end, Sink next);
+    }
+
+    /**
+     * A stage that works on whole entries: it is handed exactly one span per entry, and a span that ends before the
+     * end of the input is followed by another entry.
+     */
+    public interface EntryStage extends Stage {
+    }
+
+    public TextPreprocessor(List<Stage> stages) {
+        boolean entriesSplit = false;
+        for (Stage stage : stages) {
+            if (!(stage instanceof EntryStage)) {
+                entriesSplit = true;
+            } else if (entriesSplit) {
+                throw new IllegalArgumentException("Entry stages must come before the stages that split entries");
+            }
+        }
+        this.stages = List.copyOf(stages);
+    }
+
+    public static TextPreprocessor defaultPipeline() {
+        return new TextPreprocessor(List.of(dropEducationSections(), stripWhitespace()));
+    }
+
+    public String process(String input) {
+        StringBuilder output = new StringBuilder(input.length());
+        processInto(input, output);
+        return output.toString();
+    }
+
+    public void processInto(String input, StringBuilder output) {
+        Sink head = output::append;
+        for (int i = stages.size() - 1; i >= 0; i--) {
+            Stage stage = stages.get(i);
+            Sink next = head;
+            head = (text, start, end) -> stage.process(text, start, end, next);
+        }
+
+        Matcher matcher = RecordSegmenter.ENTRY_BOUNDARY.matcher(input);
+        int start = 0;
+        while (matcher.find()) {
+            if (matcher.start() > start) {
+                head.append(input, start, matcher.start());
+            }
+            start = matcher.start();
+        }
+        if (start < input.length()) {
+            head.append(input, start, input.length());
+        }
+    }
+
+    // 刪除 "衛教指導" 到下一個時間戳記之前的內容；最後一筆紀錄之後沒有時間戳記，與原本的 regex 相同保留不刪
+    public static EntryStage dropEducationSections() {
+        return (text, start, end, next) -> {
+            int marker = end < text.length() ? indexOf(text, EDUCATION_MARKER, start, end) : -1;
+            next.append(text, start, marker < 0 ? end : marker);
+        };
+    }
+
+    // 移除所有空格和換行符號，與 regex \s 相同的字元集合
+    public static Stage stripWhitespace() {
+        return (text, start, end, next) -> {
+            int runStart = start;
+            for (int i = start; i < end; i++) {
+                if (isWhitespace(text.charAt(i))) {
+                    if (i > runStart) {
+                        next.append(text, runStart, i);
+                    }
+                    runStart = i + 1;
+                }
+            }
+            if (end > runStart) {
+                next.append(text, runStart, end);
+            }
+        };
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static int indexOf(CharSequence text, String target, int start, int end) {
+        if (text instanceof String string) {
+            int index = string.indexOf(target, start);
+            return index >= 0 && index + target.length() <= end ? index : -1;
+        }
+        char first = target.charAt(0);
+        for (int i = start; i <= end - target.length(); i++) {
+            if (text.charAt(i) == first && text.subSequence(i, i + target.length()).toString().equals(target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
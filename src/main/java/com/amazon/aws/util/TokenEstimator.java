@@ -0,0 +1,101 @@
+package com.amazon.aws.util;
+
+/**
+ * Estimates the token count of a prompt locally, in one pass over the characters and without a tokenizer
+ * vocabulary. The weights are tuned for Traditional Chinese nursing records: ideographs cost more than one token
+ * on average, full-width punctuation about one, and the ASCII runs in between (vital signs, units, drug names)
+ * are split into short letter and digit chunks. The estimate leans high, so a prompt it accepts fits the context.
+ * Compare it against the usage Bedrock reports (bedrock.tokens) and adjust the factor when the text differs.
+ */
+public class TokenEstimator {
+
+    private static final double IDEOGRAPH = 1.2;
+    private static final double FULL_WIDTH = 1.0;
+    private static final double SUPPLEMENTARY = 2.0;
+    private static final double OTHER = 1.5;
+    private static final int LETTERS_PER_TOKEN = 4;
+    private static final int DIGITS_PER_TOKEN = 3;
+
+    private final double factor;
+
+    public TokenEstimator() {
+        this(1.0);
+    }
+
+    public TokenEstimator(double factor) {
+        if (factor <= 0) {
+            throw new IllegalArgumentException("'factor' must be positive");
+        }
+        this.factor = factor;
+    }
+
+    public int estimate(CharSequence text) {
+        double tokens = 0;
+        int letters = 0;
+        int digits = 0;
+        boolean whitespace = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isAsciiLetter(c)) {
+                tokens += chunks(digits, DIGITS_PER_TOKEN);
+                digits = 0;
+                letters++;
+                whitespace = false;
+                continue;
+            }
+            if (c >= '0' && c <= '9') {
+                tokens += chunks(letters, LETTERS_PER_TOKEN);
+                letters = 0;
+                digits++;
+                whitespace = false;
+                continue;
+            }
+            tokens += chunks(letters, LETTERS_PER_TOKEN) + chunks(digits, DIGITS_PER_TOKEN);
+            letters = 0;
+            digits = 0;
+
+            // A run of whitespace is one token
+            if (Character.isWhitespace(c)) {
+                if (!whitespace) {
+                    tokens += 1;
+                }
+                whitespace = true;
+                continue;
+            }
+            whitespace = false;
+
+            if (c < 0x80) {
+                tokens += 1;
+            } else if (isIdeograph(c)) {
+                tokens += IDEOGRAPH;
+            } else if (isFullWidth(c)) {
+                tokens += FULL_WIDTH;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                tokens += SUPPLEMENTARY;
+                i++;
+            } else {
+                tokens += OTHER;
+            }
+        }
+        tokens += chunks(letters, LETTERS_PER_TOKEN) + chunks(digits, DIGITS_PER_TOKEN);
+        return (int) Math.ceil(tokens * factor);
+    }
+
+    private static double chunks(int length, int perToken) {
+        return (length + perToken - 1) / perToken;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    // CJK Unified Ideographs, Extension A and Compatibility Ideographs
+    private static boolean isIdeograph(char c) {
+        return (c >= '\u4e00' && c <= '\u9fff') || (c >= '\u3400' && c <= '\u4dbf') || (c >= '\uf900' && c <= '\ufaff');
+    }
+
+    // CJK punctuation (、。「」) and full-width forms (，：（）)
+    private static boolean isFullWidth(char c) {
+        return (c >= '\u3000' && c <= '\u303f') || (c >= '\uff00' && c <= '\uffef');
+    }
+}
@@ -0,0 +1,206 @@
+package com.amazon.aws;
+
+import com.amazon.aws.util.PromptTooLargeException;
+import com.amazon.aws.util.RetryBackoff;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.github.cdimascio.dotenv.Dotenv;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClaudeContentGenerationTest {
+
+    private static final int SEGMENT_CONCURRENCY = 2;
+
+    @TempDir
+    Path directory;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer stub;
+    private ExecutorService stubExecutor;
+    private ClaudeContentGeneration generation;
+
+    @BeforeEach
+    void start() throws IOException {
+        stubExecutor = Executors.newCachedThreadPool();
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.createContext("/model/", this::handle);
+        stub.setExecutor(stubExecutor);
+        stub.start();
+
+        // One entry per segment, so a record has more segments than there are segment slots
+        Files.writeString(directory.resolve(".env"), String.join("\n",
+            "AWS_ACCESS_KEY_ID=test",
+            "AWS_SECRET_ACCESS_KEY=test",
+            "AWS_REGION=us-east-1",
+            "MODEL_NAME=anthropic.claude-3-haiku-20240307-v1:0",
+            "BEDROCK_ENDPOINT=http://127.0.0.1:" + stub.getAddress().getPort(),
+            "BEDROCK_MAX_RETRIES=0",
+            "SEGMENT_CONCURRENCY=" + SEGMENT_CONCURRENCY,
+            "SEGMENT_MAX_CHARS=10",
+            "PROCESSED_PROMPT_FILE=",
+            ""));
+        generation = new ClaudeContentGeneration(Dotenv.configure().directory(directory.toString()).load());
+    }
+
+    @AfterEach
+    void stop() {
+        generation.shutdown();
+        stub.stop(0);
+        stubExecutor.shutdownNow();
+    }
+
+    @Test
+    void failedSegmentDoesNotLeakSegmentSlots() throws Exception {
+        ExecutionException failure = assertThrows(ExecutionException.class,
+            () -> generation.generateContentAsync(record("a", 12, 0)).get(30, TimeUnit.SECONDS));
+        assertTrue(failure.getCause().getMessage().contains("rejected"), failure.getCause()::getMessage);
+
+        // Segments still queued when the first one failed must hand their slots back
+        for (int i = 0; i < 3; i++) {
+            String content = generation.generateContentAsync(record("b" + i, SEGMENT_CONCURRENCY * 3, -1))
+                .get(30, TimeUnit.SECONDS);
+            assertTrue(content.contains("summary"), content);
+        }
+    }
+
+    @Test
+    void promptOverTheModelContextFailsWithoutACall() {
+        // One entry is one segment however long it is, about 240000 tokens against a 200000 token context
+        String record = "2024-01-01\t08：00\t" + "病".repeat(200000) + "\n";
+
+        ExecutionException failure = assertThrows(ExecutionException.class,
+            () -> generation.generateContentAsync(record).get(30, TimeUnit.SECONDS));
+        PromptTooLargeException error = assertInstanceOf(PromptTooLargeException.class, RetryBackoff.unwrap(failure));
+        assertEquals(200000, error.getContextTokens());
+        assertEquals(0, requests.get());
+    }
+
+    @Test
+    void callerArrivingAfterTheFlightGetsItsOwnProgress() throws Exception {
+        String record = record("c", 4, -1);
+        List<int[]> leader = new CopyOnWriteArrayList<>();
+        List<int[]> follower = new CopyOnWriteArrayList<>();
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() ->
+            generation.generateContent(record, null, (done, total) -> leader.add(new int[] {done, total})));
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() ->
+            generation.generateContent(record, null, (done, total) -> follower.add(new int[] {done, total})));
+        assertEquals(first.get(30, TimeUnit.SECONDS), second.get(30, TimeUnit.SECONDS));
+        assertArrayEquals(new int[] {4, 4}, leader.get(leader.size() - 1));
+        assertArrayEquals(new int[] {4, 4}, follower.get(follower.size() - 1));
+
+        // The first flight and its progress are gone, a later caller starts from zero and the earlier ones hear nothing
+        int leaderUpdates = leader.size();
+        List<int[]> late = new CopyOnWriteArrayList<>();
+        generation.generateContent(record, null, (done, total) -> late.add(new int[] {done, total}));
+        assertArrayEquals(new int[] {0, 4}, late.get(0));
+        assertArrayEquals(new int[] {4, 4}, late.get(late.size() - 1));
+        assertEquals(5, late.size());
+        assertEquals(leaderUpdates, leader.size());
+    }
+
+    @Test
+    void cancelledStreamStopsTheRemainingSegments() throws Exception {
+        int segments = SEGMENT_CONCURRENCY * 20;
+        CompletableFuture<Throwable> error = new CompletableFuture<>();
+        CompletableFuture<Void> stream = generation.generateContentStream(record("s", segments, -1),
+            new SummaryStreamListener() {
+                @Override
+                public void onSegmentSummary(int index, int total, String summary) {
+                }
+
+                @Override
+                public void onFinalSummaryDelta(String text) {
+                }
+
+                @Override
+                public void onComplete() {
+                    error.complete(null);
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    error.complete(e);
+                }
+            });
+        stream.cancel(true);
+        assertInstanceOf(CancellationException.class, error.get(30, TimeUnit.SECONDS));
+
+        // Each call takes 100 ms, so segments still running after the cancel would have made most of the calls by now
+        Thread.sleep(1000);
+        assertTrue(requests.get() < segments / 4, () -> requests.get() + " calls after the cancel");
+    }
+
+    // Entries small enough that each is its own segment; the entry at failAt makes the stub reject the call
+    private static String record(String name, int entries, int failAt) {
+        StringBuilder record = new StringBuilder();
+        for (int i = 0; i < entries; i++) {
+            record.append(String.format("2024-01-01\t08：%02d\t", i))
+                .append(i == failAt ? "FAIL" : "紀錄" + name + i)
+                .append('\n');
+        }
+        return record.toString();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        String body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        if (body.contains("FAIL")) {
+            respond(exchange, 400, new JSONObject().put("message", "Prompt rejected"));
+            return;
+        }
+        try {
+            Thread.sleep(100);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        respond(exchange, 200, new JSONObject()
+            .put("type", "message")
+            .put("role", "assistant")
+            .put("content", new JSONArray().put(new JSONObject().put("type", "text").put("text", "summary")))
+            .put("usage", new JSONObject().put("input_tokens", 10).put("output_tokens", 1))
+            .put("stop_reason", "end_turn"));
+    }
+
+    private static void respond(HttpExchange exchange, int status, JSONObject json) throws IOException {
+        byte[] response = json.toString().getBytes(StandardCharsets.UTF_8);
+        if (status != 200) {
+            exchange.getResponseHeaders().add("x-amzn-ErrorType", "ValidationException");
+        }
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.amazon.aws;
+
+import com.amazon.aws.util.SummaryReducer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.tracing.Span;
+import io.micrometer.tracing.Tracer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SummaryMergerTest {
+
+    private static final String MERGE = "|merge";
+
+    private final List<String> mergePrompts = new ArrayList<>();
+
+    @Test
+    void summariesThatFitAreNotMerged() throws Exception {
+        List<String> summaries = List.of("aaaa", "bbbb");
+        assertSame(summaries, reduce(new SummaryReducer(20), summaries, shorten()));
+        assertEquals(List.of(), mergePrompts);
+    }
+
+    @Test
+    void levelsAreMergedUntilTheSummariesFit() throws Exception {
+        List<String> summaries = new ArrayList<>();
+        for (char c = 'a'; c <= 'j'; c++) {
+            summaries.add(String.valueOf(c).repeat(6));
+        }
+
+        // 14 characters are left next to the merge instructions, each merge keeps the first four characters
+        List<String> reduced = reduce(new SummaryReducer(20), summaries, (prompt, span) ->
+            CompletableFuture.completedFuture(prompt.substring(0, 4)));
+        assertEquals(List.of("aaaa", "gggg"), reduced);
+        assertEquals(List.of("aaaaaabbbbbb" + MERGE, "ccccccdddddd" + MERGE, "eeeeeeffffff" + MERGE,
+            "gggggghhhhhh" + MERGE, "iiiiiijjjjjj" + MERGE, "aaaacccceeee" + MERGE, "ggggiiii" + MERGE), mergePrompts);
+    }
+
+    @Test
+    void loneSummaryOverTheBudgetIsSplitAndMergedAgain() throws Exception {
+        List<String> reduced = reduce(new SummaryReducer(20), List.of("x".repeat(30)), shorten());
+
+        assertTrue(new SummaryReducer(20).fits(reduced, "1234"), reduced::toString);
+        assertTrue(mergePrompts.size() >= 2, mergePrompts::toString);
+    }
+
+    @Test
+    void mergesThatDoNotShrinkStopTheReduce() throws Exception {
+        List<String> summaries = List.of("aaaaaa", "bbbbbb", "cccccc");
+
+        List<String> reduced = reduce(new SummaryReducer(20), summaries, (prompt, span) ->
+            CompletableFuture.completedFuture(prompt.substring(0, prompt.length() - MERGE.length())));
+        assertEquals(List.of("aaaaaabbbbbb", "cccccc"), reduced);
+    }
+
+    @Test
+    void firstFailureCancelsTheOtherGroups() {
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        SummaryMerger merger = merger(new SummaryReducer(20), (prompt, span) -> {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        });
+        CompletableFuture<List<String>> result = merger.reduce(
+            List.of("aaaaaa", "bbbbbb", "cccccc", "dddddd", "eeeeee", "ffffff"), "1234", MERGE, null);
+        assertEquals(3, calls.size());
+
+        IllegalStateException error = new IllegalStateException("merge failed");
+        calls.get(1).completeExceptionally(error);
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertSame(error, failure.getCause());
+        assertTrue(calls.get(0).isCancelled());
+        assertTrue(calls.get(2).isCancelled());
+    }
+
+    @Test
+    void groupsStartedBeforeAThrowingMergeAreCancelled() {
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        IllegalStateException error = new IllegalStateException("no merge prompt");
+        SummaryMerger merger = merger(new SummaryReducer(20), (prompt, span) -> {
+            if (calls.size() == 2) {
+                throw error;
+            }
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.add(call);
+            return call;
+        });
+
+        CompletableFuture<List<String>> result = merger.reduce(
+            List.of("aaaaaa", "bbbbbb", "cccccc", "dddddd", "eeeeee", "ffffff"), "1234", MERGE, null);
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertSame(error, failure.getCause());
+        assertTrue(calls.stream().allMatch(CompletableFuture::isCancelled));
+    }
+
+    private List<String> reduce(SummaryReducer reducer, List<String> summaries,
+                                BiFunction<String, Span, CompletableFuture<String>> merge) throws Exception {
+        return merger(reducer, merge).reduce(summaries, "1234", MERGE, null).get(5, TimeUnit.SECONDS);
+    }
+
+    private SummaryMerger merger(SummaryReducer reducer, BiFunction<String, Span, CompletableFuture<String>> merge) {
+        return new SummaryMerger(reducer, (prompt, span) -> {
+            mergePrompts.add(prompt);
+            return merge.apply(prompt, span);
+        }, Tracer.NOOP, new SimpleMeterRegistry());
+    }
+
+    // Keeps the first two characters of the merge prompt
+    private static BiFunction<String, Span, CompletableFuture<String>> shorten() {
+        return (prompt, span) -> CompletableFuture.completedFuture(prompt.substring(0, 2));
+    }
+}
@@ -0,0 +1,16 @@
+package com.amazon.aws.batch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BatchSummaryCommandTest {
+
+    @Test
+    void wrongArgumentsReturnTheUsageCode() throws Exception {
+        // The arguments are checked before any client is built
+        assertEquals(BatchSummaryCommand.USAGE, BatchSummaryCommand.run(new String[0], null));
+        assertEquals(BatchSummaryCommand.USAGE,
+            BatchSummaryCommand.run(new String[] {"submit", "records", "batch"}, null));
+    }
+}
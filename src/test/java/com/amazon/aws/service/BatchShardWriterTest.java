@@ -0,0 +1,130 @@
+package com.amazon.aws.service;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchShardWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void newShardStartsAtTheRecordLimit() throws Exception {
+        try (BatchShardWriter writer = writer(1 << 20, 2)) {
+            for (int i = 0; i < 5; i++) {
+                writer.write("id" + i, "key" + i, input(i));
+            }
+        }
+        List<Path> shards = shards();
+        assertEquals(3, shards.size());
+        assertEquals(2, Files.readAllLines(shards.get(0)).size());
+        assertEquals(1, Files.readAllLines(shards.get(2)).size());
+
+        JSONObject first = new JSONObject(Files.readAllLines(shards.get(0)).get(0));
+        assertEquals("id0", first.getString("recordId"));
+        assertEquals(0, first.getJSONObject("modelInput").getInt("n"));
+    }
+
+    @Test
+    void newShardStartsBeforeTheByteLimit() throws Exception {
+        int lineBytes = line("id0", 0).length;
+        try (BatchShardWriter writer = writer(lineBytes * 2L + 1, 100)) {
+            for (int i = 0; i < 4; i++) {
+                writer.write("id" + i, "key" + i, input(i));
+            }
+        }
+        for (Path shard : shards()) {
+            assertTrue(Files.size(shard) <= lineBytes * 2L + 1, shard::toString);
+        }
+        assertEquals(2, shards().size());
+    }
+
+    @Test
+    void recordLargerThanAShardIsRejected() throws Exception {
+        try (BatchShardWriter writer = writer(10, 100)) {
+            assertThrows(IllegalArgumentException.class, () -> writer.write("id0", "key0", input(0)));
+        }
+    }
+
+    @Test
+    void openShardKeepsItsTemporaryName() throws Exception {
+        try (BatchShardWriter writer = writer(1 << 20, 100)) {
+            writer.write("id0", "key0", input(0));
+            assertEquals(List.of(), shards());
+        }
+        assertEquals(1, shards().size());
+    }
+
+    @Test
+    void completeShardsAreKeptAndPartialOnesDropped() throws Exception {
+        try (BatchShardWriter writer = writer(1 << 20, 2)) {
+            for (int i = 0; i < 3; i++) {
+                writer.write("id" + i, "key" + i, input(i));
+            }
+        }
+        // An interrupted run leaves a partial shard behind
+        Files.writeString(directory.resolve("input").resolve("segments-00002.jsonl.partial"), "{\"recordId\"");
+
+        try (BatchShardWriter writer = writer(1 << 20, 2)) {
+            assertEquals(2, writer.getKeptShards());
+            assertEquals(Map.of("id0", "key0", "id1", "key1", "id2", "key2"), writer.getWrittenIds());
+            writer.write("id3", "key3", input(3));
+            assertEquals(1, writer.getTotalRecords());
+            assertEquals(3, writer.getShards().size());
+        }
+
+        List<Path> shards = shards();
+        assertEquals(3, shards.size());
+        assertEquals("segments-00002.jsonl", shards.get(2).getFileName().toString());
+        assertFalse(Files.exists(directory.resolve("input").resolve("segments-00002.jsonl.partial")));
+        assertEquals(List.of("id3\tkey3"), Files.readAllLines(
+            directory.resolve("keys").resolve("segments-00002.jsonl.keys"), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void shardWithoutKeysIsNotKept() throws Exception {
+        try (BatchShardWriter writer = writer(1 << 20, 1)) {
+            writer.write("id0", "key0", input(0));
+            writer.write("id1", "key1", input(1));
+        }
+        Files.delete(directory.resolve("keys").resolve("segments-00001.jsonl.keys"));
+
+        try (BatchShardWriter writer = writer(1 << 20, 1)) {
+            assertEquals(1, writer.getKeptShards());
+            assertEquals(Map.of("id0", "key0"), writer.getWrittenIds());
+        }
+        assertEquals(1, shards().size());
+    }
+
+    private BatchShardWriter writer(long maxBytes, int maxRecords) throws Exception {
+        return new BatchShardWriter(directory.resolve("input"), directory.resolve("keys"), "segments", maxBytes,
+            maxRecords);
+    }
+
+    private List<Path> shards() throws Exception {
+        try (var files = Files.list(directory.resolve("input"))) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".jsonl")).sorted().toList();
+        }
+    }
+
+    private static JSONObject input(int n) {
+        return new JSONObject().put("n", n);
+    }
+
+    private static byte[] line(String id, int n) {
+        return (new JSONObject().put("recordId", id).put("modelInput", input(n)).toString() + "\n")
+            .getBytes(StandardCharsets.UTF_8);
+    }
+}
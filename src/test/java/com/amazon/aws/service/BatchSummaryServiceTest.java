@@ -0,0 +1,199 @@
+package com.amazon.aws.service;
+
+import com.amazon.aws.ClaudeContentGeneration;
+import io.github.cdimascio.dotenv.Dotenv;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchSummaryServiceTest {
+
+    @TempDir
+    Path directory;
+
+    // Summaries already in the segment cache, by segment prompt
+    private final Map<String, String> cached = new ConcurrentHashMap<>();
+    private Path records;
+    private Path work;
+    private ClaudeContentGeneration generation;
+    private BatchSummaryService batch;
+
+    @BeforeEach
+    void start() throws Exception {
+        records = Files.createDirectories(directory.resolve("records"));
+        work = directory.resolve("batch");
+        Files.writeString(directory.resolve(".env"), String.join("\n",
+            "AWS_ACCESS_KEY_ID=test",
+            "AWS_SECRET_ACCESS_KEY=test",
+            "AWS_REGION=us-east-1",
+            "MODEL_NAME=anthropic.claude-3-haiku-20240307-v1:0",
+            "BEDROCK_ENDPOINT=http://127.0.0.1:1",
+            "PROCESSED_PROMPT_FILE=",
+            "BATCH_PREPARE_CONCURRENCY=2",
+            "BATCH_SHARD_MAX_RECORDS=1",
+            "BATCH_INGEST_CHUNK_RECORDS=1",
+            ""));
+        Dotenv dotenv = Dotenv.configure().directory(directory.toString()).load();
+        // Segments are the '|'-separated parts of a record; the model is never called
+        generation = new ClaudeContentGeneration(dotenv) {
+            @Override
+            public List<String> segmentPrompts(String prompt) {
+                List<String> prompts = new ArrayList<>();
+                for (String segment : prompt.split("\\|")) {
+                    prompts.add("P:" + segment);
+                }
+                return prompts;
+            }
+
+            @Override
+            public String segmentSummaryKey(String segmentPrompt) {
+                return sha256(segmentPrompt);
+            }
+
+            @Override
+            public String cachedSegmentSummary(String segmentPrompt) {
+                return cached.get(segmentPrompt);
+            }
+
+            @Override
+            public JSONObject batchModelInput(String segmentPrompt) {
+                return new JSONObject().put("prompt", segmentPrompt);
+            }
+
+            @Override
+            public String parseSegmentSummary(JSONObject modelOutput) {
+                return modelOutput.getString("text");
+            }
+
+            @Override
+            public String generateContent(String prompt, String recordId, List<String> segmentSummaries) {
+                List<String> filled = new ArrayList<>();
+                for (String summary : segmentSummaries) {
+                    filled.add(summary == null ? "live" : summary);
+                }
+                return recordId + "=" + String.join(",", filled);
+            }
+        };
+        batch = new BatchSummaryService(generation, dotenv);
+    }
+
+    @AfterEach
+    void stop() {
+        generation.shutdown();
+    }
+
+    @Test
+    void segmentsSharedByRecordsArePreparedOnce() throws Exception {
+        Files.writeString(records.resolve("r1.txt"), "a|b");
+        Files.writeString(records.resolve("r2.txt"), "b|c");
+
+        BatchSummaryService.PrepareResult result = batch.prepare(records, work);
+        assertEquals(2, result.records());
+        assertEquals(3, result.prompts());
+        assertEquals(3, result.shards().size());
+        assertEquals(0, result.keptShards());
+        assertEquals(Set.of("P:a", "P:b", "P:c"), preparedPrompts().keySet());
+    }
+
+    @Test
+    void cachedSegmentsAndFinishedRecordsAreSkipped() throws Exception {
+        Files.writeString(records.resolve("r1.txt"), "a|b");
+        Files.writeString(records.resolve("r2.txt"), "c");
+        Files.createDirectories(work.resolve("results"));
+        Files.writeString(work.resolve("results").resolve("r2.txt"), "done");
+        cached.put("P:a", "cached a");
+
+        BatchSummaryService.PrepareResult result = batch.prepare(records, work);
+        assertEquals(1, result.skipped());
+        assertEquals(1, result.cached());
+        assertEquals(Set.of("P:b"), preparedPrompts().keySet());
+    }
+
+    @Test
+    void interruptedPrepareKeepsItsCompleteShards() throws Exception {
+        Files.writeString(records.resolve("r1.txt"), "a|b|c");
+        batch.prepare(records, work);
+
+        // The third shard was still being written when the run stopped
+        Path input = work.resolve("input");
+        Files.move(input.resolve("segments-00002.jsonl"), input.resolve("segments-00002.jsonl.partial"));
+        Files.writeString(records.resolve("r2.txt"), "d");
+
+        BatchSummaryService.PrepareResult result = batch.prepare(records, work);
+        assertEquals(2, result.keptShards());
+        assertEquals(2, result.prompts());
+        assertEquals(4, result.shards().size());
+        assertEquals(Set.of("P:a", "P:b", "P:c", "P:d"), preparedPrompts().keySet());
+    }
+
+    @Test
+    void ingestUsesTheBatchOutputAndSummarizesMissingSegmentsLive() throws Exception {
+        Files.writeString(records.resolve("r1.txt"), "a|b");
+        Files.writeString(records.resolve("r2.txt"), "b|c");
+        batch.prepare(records, work);
+
+        // The batch job answered every segment except c
+        Path output = Files.createDirectories(work.resolve("output"));
+        List<String> lines = new ArrayList<>();
+        preparedPrompts().forEach((prompt, id) -> {
+            if (!prompt.equals("P:c")) {
+                lines.add(new JSONObject().put("recordId", id).put("modelInput", new JSONObject())
+                    .put("modelOutput", new JSONObject().put("text", "S" + prompt)).toString());
+            }
+        });
+        Files.write(output.resolve("segments.jsonl.out"), lines, StandardCharsets.UTF_8);
+
+        BatchSummaryService.IngestResult result = batch.ingest(records, work);
+        assertEquals(0, result.failed());
+        assertEquals(3, result.batchSummaries());
+        assertEquals(1, result.missingSummaries());
+        assertEquals("r1=SP:a,SP:b", Files.readString(work.resolve("results").resolve("r1.txt")));
+        assertEquals("r2=SP:b,live", Files.readString(work.resolve("results").resolve("r2.txt")));
+
+        assertEquals(2, batch.ingest(records, work).skipped());
+    }
+
+    // Segment prompt to batch record id of every prepared line, each id written once
+    private Map<String, String> preparedPrompts() throws Exception {
+        Map<String, String> prompts = new ConcurrentHashMap<>();
+        Set<String> ids = new HashSet<>();
+        try (var shards = Files.list(work.resolve("input"))) {
+            for (Path shard : shards.filter(file -> file.getFileName().toString().endsWith(".jsonl")).toList()) {
+                for (String line : Files.readAllLines(shard, StandardCharsets.UTF_8)) {
+                    JSONObject record = new JSONObject(line);
+                    String id = record.getString("recordId");
+                    assertTrue(ids.add(id), id);
+                    assertEquals(11, id.length());
+                    prompts.put(record.getJSONObject("modelInput").getString("prompt"), id);
+                }
+            }
+        }
+        return prompts;
+    }
+
+    private static String sha256(String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.amazon.aws.service;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ExcelStreamReaderTest {
+
+    // Rows of each sheet, as a sheet consumer of FileProcessingService would see them
+    private static final List<String> FIRST_SHEET = List.of("日期\t劑量\t", "2024-01-02\t2.5\t", "", " \t10.0\t");
+    private static final List<String> SECOND_SHEET = List.of("備註\t");
+
+    @TempDir
+    Path directory;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @AfterEach
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void xlsxSheetsAreEmittedInOrder() throws Exception {
+        Path file = write(new XSSFWorkbook(), "record.xlsx");
+        List<String> lines = new CopyOnWriteArrayList<>();
+
+        // A buffer of one character spills every sheet that is not yet due to disk
+        ExcelStreamReader.readXlsx(file.toFile(), sheetIndex -> line -> lines.add(sheetIndex + ":" + line), 1, executor)
+            .get(10, TimeUnit.SECONDS);
+        assertEquals(expected(), lines);
+    }
+
+    @Test
+    void xlsSheetsAreReadInOnePass() throws Exception {
+        Path file = write(new HSSFWorkbook(), "record.xls");
+        List<String> lines = new ArrayList<>();
+
+        ExcelStreamReader.readXls(file.toFile(), sheetIndex -> line -> lines.add(sheetIndex + ":" + line));
+        assertEquals(expected(), lines);
+    }
+
+    private static List<String> expected() {
+        List<String> lines = new ArrayList<>();
+        FIRST_SHEET.forEach(line -> lines.add("0:" + line));
+        SECOND_SHEET.forEach(line -> lines.add("1:" + line));
+        return lines;
+    }
+
+    // The third row is empty but present, the fourth starts with a blank cell
+    private Path write(Workbook workbook, String name) throws Exception {
+        Path file = directory.resolve(name);
+        try (workbook; OutputStream out = Files.newOutputStream(file)) {
+            Sheet first = workbook.createSheet("用藥");
+            Row header = first.createRow(0);
+            header.createCell(0).setCellValue("日期");
+            header.createCell(1).setCellValue("劑量");
+            Row dose = first.createRow(1);
+            dose.createCell(0).setCellValue("2024-01-02");
+            dose.createCell(1).setCellValue(2.5);
+            first.createRow(2);
+            Row blank = first.createRow(3);
+            blank.createCell(0).setBlank();
+            blank.createCell(1).setCellValue(10);
+
+            workbook.createSheet("備註").createRow(0).createCell(0).setCellValue("備註");
+            workbook.write(out);
+        }
+        return file;
+    }
+}
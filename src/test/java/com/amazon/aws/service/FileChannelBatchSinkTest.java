@@ -0,0 +1,70 @@
+package com.amazon.aws.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class FileChannelBatchSinkTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void batchesAreAppendedAsUtf8Lines() throws Exception {
+        Path file = directory.resolve("output.txt");
+        Files.writeString(file, "existing\n");
+        // Longer than the 64 KiB buffer, and multi-byte characters across the buffer boundary
+        String longLine = "病歷".repeat(40000);
+
+        try (FileChannelBatchSink sink = new FileChannelBatchSink(file)) {
+            sink.write(List.of("a", "日期"));
+            sink.write(List.of(longLine));
+        }
+
+        assertEquals("existing\na\n日期\n" + longLine + "\n", Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void requestsAreAppendedWholeWhenTheyClose() throws Exception {
+        Path file = directory.resolve("output.txt");
+        try (FileChannelBatchSink sink = new FileChannelBatchSink(file)) {
+            FileChannelBatchSink.Request first = sink.openRequest();
+            FileChannelBatchSink.Request second = sink.openRequest();
+            first.write(List.of("first 1"));
+            second.write(List.of("second 1"));
+            first.write(List.of("first 2"));
+            second.write(List.of("second 2"));
+
+            second.close();
+            first.close();
+            // Closing twice appends nothing more
+            first.close();
+        }
+
+        assertEquals("second 1\nsecond 2\nfirst 1\nfirst 2\n", Files.readString(file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void requestSpoolIsDeletedOnClose() throws Exception {
+        Path file = directory.resolve("output.txt");
+        long before = countSpools();
+        try (FileChannelBatchSink sink = new FileChannelBatchSink(file)) {
+            FileChannelBatchSink.Request request = sink.openRequest();
+            request.write(List.of("line"));
+            request.close();
+        }
+        assertEquals(before, countSpools());
+    }
+
+    private static long countSpools() throws Exception {
+        try (var files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(path -> path.getFileName().toString().startsWith("upload-output-")).count();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.amazon.aws.service;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void appendedRecordsAreReadBack() throws Exception {
+        Path file = directory.resolve("jobs").resolve("journal.jsonl");
+        try (JobJournal journal = new JobJournal(file)) {
+            journal.append(new JSONObject().put("type", "submitted").put("id", "a"));
+            journal.append(new JSONObject().put("type", "succeeded").put("id", "a").put("result", "摘要"));
+
+            List<JSONObject> records = journal.read();
+            assertEquals(2, records.size());
+            assertEquals("submitted", records.get(0).getString("type"));
+            assertEquals("摘要", records.get(1).getString("result"));
+            assertEquals(Files.size(file), journal.size());
+        }
+    }
+
+    @Test
+    void tornLastLineIsSkipped() throws Exception {
+        Path file = directory.resolve("journal.jsonl");
+        try (JobJournal journal = new JobJournal(file)) {
+            journal.append(new JSONObject().put("type", "submitted").put("id", "a"));
+        }
+        // A crash in the middle of an append leaves half a record behind
+        Files.writeString(file, "{\"type\":\"submit", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (JobJournal journal = new JobJournal(file)) {
+            List<JSONObject> records = journal.read();
+            assertEquals(1, records.size());
+            assertEquals("a", records.get(0).getString("id"));
+        }
+    }
+
+    @Test
+    void rewriteReplacesTheJournalAndKeepsAppending() throws Exception {
+        Path file = directory.resolve("journal.jsonl");
+        try (JobJournal journal = new JobJournal(file)) {
+            for (int i = 0; i < 10; i++) {
+                journal.append(new JSONObject().put("type", "submitted").put("id", "job-" + i));
+            }
+            long before = journal.size();
+
+            journal.rewrite(List.of(new JSONObject().put("type", "submitted").put("id", "job-9")));
+            assertTrue(journal.size() < before);
+
+            journal.append(new JSONObject().put("type", "failed").put("id", "job-9").put("error", "timeout"));
+            List<JSONObject> records = journal.read();
+            assertEquals(2, records.size());
+            assertEquals("job-9", records.get(0).getString("id"));
+            assertEquals("failed", records.get(1).getString("type"));
+        }
+        try (var files = Files.list(directory)) {
+            assertEquals(List.of(file), files.toList());
+        }
+    }
+}
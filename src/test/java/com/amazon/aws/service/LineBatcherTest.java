@@ -0,0 +1,108 @@
+package com.amazon.aws.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LineBatcherTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final BatchMetrics metrics = new BatchMetrics(new SimpleMeterRegistry());
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void stop() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void fullBatchesAreFlushedAndTheRestOnClose() {
+        try (LineBatcher batcher = new LineBatcher(2, 60000, List.of(batches::add), metrics, scheduler)) {
+            batcher.accept("a");
+            batcher.accept("b");
+            batcher.accept("c");
+            assertEquals(List.of(List.of("a", "b")), batches);
+        }
+
+        assertEquals(List.of(List.of("a", "b"), List.of("c")), batches);
+        assertEquals(1L, metrics.stats().get("sizeFlushes"));
+        assertEquals(1L, metrics.stats().get("closeFlushes"));
+        assertEquals(3L, metrics.stats().get("lines"));
+    }
+
+    @Test
+    void stalledBatchIsFlushedOnTime() throws Exception {
+        try (LineBatcher batcher = new LineBatcher(100, 50, List.of(batches::add), metrics, scheduler)) {
+            batcher.accept("a");
+            // No further line arrives, the scheduled flush delivers the waiting one
+            for (int i = 0; i < 100 && batches.isEmpty(); i++) {
+                Thread.sleep(20);
+            }
+            assertEquals(List.of(List.of("a")), batches);
+            assertEquals(1L, metrics.stats().get("timeFlushes"));
+
+            batcher.accept("b");
+        }
+        assertEquals(List.of(List.of("a"), List.of("b")), batches);
+    }
+
+    @Test
+    void scheduledFlushSkipsABatchAlreadyFlushed() throws Exception {
+        try (LineBatcher batcher = new LineBatcher(1, 50, List.of(batches::add), metrics, scheduler)) {
+            batcher.accept("a");
+            Thread.sleep(150);
+        }
+        assertEquals(List.of(List.of("a")), batches);
+        assertEquals(0L, metrics.stats().get("timeFlushes"));
+    }
+
+    @Test
+    void closeableSinksAreClosedWithTheBatcher() {
+        List<String> closed = new CopyOnWriteArrayList<>();
+        class ClosingSink implements BatchSink, AutoCloseable {
+            @Override
+            public void write(List<String> batch) {
+                batches.add(batch);
+            }
+
+            @Override
+            public void close() {
+                closed.add("sink");
+            }
+        }
+        new LineBatcher(10, 60000, List.of(new ClosingSink()), metrics, scheduler).close();
+        assertEquals(List.of("sink"), closed);
+    }
+
+    @Test
+    void failureOfAScheduledFlushReachesTheReader() throws Exception {
+        LineBatcher batcher = new LineBatcher(100, 20, List.of(batch -> {
+            throw new IOException("disk full");
+        }), metrics, scheduler);
+        batcher.accept("a");
+        TimeUnit.MILLISECONDS.sleep(200);
+
+        UncheckedIOException error = assertThrows(UncheckedIOException.class, () -> batcher.accept("b"));
+        assertEquals("disk full", error.getCause().getMessage());
+        assertThrows(UncheckedIOException.class, batcher::close);
+        assertTrue(batches.isEmpty());
+    }
+
+    @Test
+    void batchSizeMustBePositive() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new LineBatcher(0, 1000, List.of(batches::add), metrics, scheduler));
+    }
+}
@@ -0,0 +1,63 @@
+package com.amazon.aws.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SectionBufferTest {
+
+    private final List<String> emitted = new ArrayList<>();
+
+    @Test
+    void linesAreHeldUntilReleased() throws Exception {
+        try (SectionBuffer buffer = new SectionBuffer(emitted::add, 1000)) {
+            buffer.accept("a");
+            buffer.accept("b");
+            assertTrue(emitted.isEmpty());
+
+            buffer.release();
+            assertEquals(List.of("a", "b"), emitted);
+
+            // After the release lines pass straight through
+            buffer.accept("c");
+            assertEquals(List.of("a", "b", "c"), emitted);
+        }
+    }
+
+    @Test
+    void linesBeyondTheLimitAreSpilledAndReplayedInOrder() throws Exception {
+        long before = countSpills();
+        List<String> lines = List.of("第一列\t1.0\t", "", "multi\nline", "x".repeat(100), "最後");
+        try (SectionBuffer buffer = new SectionBuffer(emitted::add, 10)) {
+            lines.forEach(buffer);
+            assertEquals(before + 1, countSpills());
+
+            buffer.release();
+            assertEquals(before, countSpills());
+        }
+        assertEquals(lines, emitted);
+    }
+
+    @Test
+    void closeWithoutReleaseDiscardsTheSpill() throws Exception {
+        long before = countSpills();
+        SectionBuffer buffer = new SectionBuffer(emitted::add, 1);
+        buffer.accept("abc");
+        buffer.close();
+
+        assertEquals(before, countSpills());
+        assertTrue(emitted.isEmpty());
+    }
+
+    private static long countSpills() throws Exception {
+        try (var files = Files.list(Path.of(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(path -> path.getFileName().toString().startsWith("upload-section-")).count();
+        }
+    }
+}
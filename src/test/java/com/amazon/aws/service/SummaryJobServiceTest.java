@@ -0,0 +1,173 @@
+package com.amazon.aws.service;
+
+import com.amazon.aws.ClaudeContentGeneration;
+import com.amazon.aws.SummaryProgressListener;
+import io.github.cdimascio.dotenv.Dotenv;
+import io.micrometer.tracing.Tracer;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SummaryJobServiceTest {
+
+    @TempDir
+    Path directory;
+
+    private final List<String> prompts = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private Path journalFile;
+    private ClaudeContentGeneration generation;
+    private SummaryJobService service;
+
+    @BeforeEach
+    void start() throws Exception {
+        journalFile = directory.resolve("journal.jsonl");
+        Files.writeString(directory.resolve(".env"), String.join("\n",
+            "AWS_ACCESS_KEY_ID=test",
+            "AWS_SECRET_ACCESS_KEY=test",
+            "AWS_REGION=us-east-1",
+            "MODEL_NAME=anthropic.claude-3-haiku-20240307-v1:0",
+            "BEDROCK_ENDPOINT=http://127.0.0.1:1",
+            "PROCESSED_PROMPT_FILE=",
+            "JOB_WORKERS=1",
+            "JOB_JOURNAL_FILE=" + journalFile,
+            ""));
+        // The model is never called, each job records its prompt and answers with it
+        generation = new ClaudeContentGeneration(dotenv()) {
+            @Override
+            public String generateContent(String prompt, String recordId, SummaryProgressListener progress) {
+                prompts.add(prompt);
+                if (prompt.equals("blocker")) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return "summary of " + prompt;
+            }
+        };
+    }
+
+    @AfterEach
+    void stop() throws Exception {
+        release.countDown();
+        if (service != null) {
+            service.shutdown();
+        }
+        generation.shutdown();
+    }
+
+    @Test
+    void higherPriorityJobsRunFirst() throws Exception {
+        service = newService();
+        SummaryJob blocker = service.submit("blocker", null, 0);
+        awaitPrompts(1);
+
+        // The only worker is busy, so these three wait in the queue
+        SummaryJob low = service.submit("low", null, 1);
+        SummaryJob high = service.submit("high", null, 9);
+        SummaryJob mid = service.submit("mid", null, 5);
+        release.countDown();
+
+        for (SummaryJob job : List.of(blocker, low, high, mid)) {
+            awaitFinished(job);
+        }
+        assertEquals(List.of("blocker", "high", "mid", "low"), prompts);
+        assertEquals("summary of mid", mid.getResult());
+    }
+
+    @Test
+    void unfinishedJobsAreRequeuedOnRecovery() throws Exception {
+        Files.writeString(journalFile, String.join("\n",
+            record("submitted", "done").put("sequence", 0).put("priority", 0).put("prompt", "old")
+                .put("submittedAt", 1L).toString(),
+            new JSONObject().put("type", "succeeded").put("id", "done").put("result", "old summary").toString(),
+            record("submitted", "pending").put("sequence", 1).put("priority", 0).put("prompt", "new")
+                .put("submittedAt", 2L).toString(),
+            ""), StandardCharsets.UTF_8);
+
+        service = newService();
+        service.recover();
+
+        SummaryJob done = service.get("done");
+        assertEquals(SummaryJob.Status.SUCCEEDED, done.getStatus());
+        assertEquals("old summary", done.getResult());
+
+        SummaryJob pending = service.get("pending");
+        awaitFinished(pending);
+        assertEquals("summary of new", pending.getResult());
+        assertEquals(List.of("new"), prompts);
+
+        // Recovery compacts the journal, finished jobs are written back without their prompt
+        SummaryJobService restarted = newService();
+        try {
+            restarted.recover();
+            assertEquals("summary of new", restarted.get("pending").getResult());
+        } finally {
+            restarted.shutdown();
+        }
+        for (String line : Files.readAllLines(journalFile, StandardCharsets.UTF_8)) {
+            JSONObject stored = new JSONObject(line);
+            if (stored.getString("type").equals("submitted") && stored.getString("id").equals("done")) {
+                assertFalse(stored.has("prompt"), line);
+            }
+        }
+        assertEquals(List.of("new"), prompts);
+    }
+
+    @Test
+    void jobsRunInMemoryWithoutAJournal() throws Exception {
+        Path env = directory.resolve(".env");
+        Files.writeString(env, Files.readString(env).replace("JOB_JOURNAL_FILE=" + journalFile, "JOB_JOURNAL_FILE="));
+        service = newService();
+        service.recover();
+
+        SummaryJob job = service.submit("memory only", "record-1", 0);
+        awaitFinished(job);
+        assertEquals("summary of memory only", job.getResult());
+        assertNull(job.getPrompt());
+        assertFalse(Files.exists(journalFile));
+    }
+
+    private SummaryJobService newService() throws Exception {
+        return new SummaryJobService(dotenv(), generation, Tracer.NOOP);
+    }
+
+    private Dotenv dotenv() {
+        return Dotenv.configure().directory(directory.toString()).load();
+    }
+
+    private static JSONObject record(String type, String id) {
+        return new JSONObject().put("type", type).put("id", id);
+    }
+
+    private void awaitPrompts(int count) throws InterruptedException {
+        for (int i = 0; i < 250 && prompts.size() < count; i++) {
+            Thread.sleep(20);
+        }
+        assertEquals(count, prompts.size());
+    }
+
+    private static void awaitFinished(SummaryJob job) throws InterruptedException {
+        for (int i = 0; i < 250 && !job.isFinished(); i++) {
+            Thread.sleep(20);
+        }
+        assertTrue(job.isFinished(), job.getId());
+    }
+}
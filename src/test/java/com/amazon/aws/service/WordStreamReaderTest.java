@@ -0,0 +1,72 @@
+package com.amazon.aws.service;
+
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.apache.poi.xwpf.usermodel.XWPFTableCell;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WordStreamReaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void docxIsReadInDocumentOrder() throws Exception {
+        Path file = directory.resolve("record.docx");
+        try (XWPFDocument document = new XWPFDocument(); OutputStream out = Files.newOutputStream(file)) {
+            document.createParagraph().createRun().setText("病歷摘要");
+            XWPFTable table = document.createTable(2, 2);
+            table.getRow(0).getCell(0).setText("日期");
+            table.getRow(0).getCell(1).setText("診斷");
+            table.getRow(1).getCell(0).setText("2024-01-02");
+            XWPFTableCell cell = table.getRow(1).getCell(1);
+            cell.setText("第一段");
+            cell.addParagraph().createRun().setText("第二段");
+            document.createParagraph().createRun().setText("結尾");
+            document.write(out);
+        }
+
+        List<String> lines = new ArrayList<>();
+        WordStreamReader.readDocx(file.toFile(), lines::add);
+        assertEquals(List.of("病歷摘要", "日期\t診斷\t", "2024-01-02\t第一段\n第二段\t", "", "結尾"), lines);
+    }
+
+    @Test
+    void docCellParagraphsAreSeparatedLikeDocx() {
+        List<String> lines = new ArrayList<>();
+        WordStreamReader.DocParagraphs paragraphs = new WordStreamReader.DocParagraphs(lines::add);
+        // HWPF paragraph texts: '\r' ends a paragraph, '\u0007' ends a cell, a row ends with its own mark
+        paragraphs.accept("病歷摘要\r", false, false);
+        paragraphs.accept("日期\u0007", true, false);
+        paragraphs.accept("診斷\u0007", true, false);
+        paragraphs.accept("\u0007", true, true);
+        paragraphs.accept("2024-01-02\u0007", true, false);
+        paragraphs.accept("第一段\r", true, false);
+        paragraphs.accept("第二段\u0007", true, false);
+        paragraphs.accept("\u0007", true, true);
+        paragraphs.accept("結尾\r", false, false);
+        paragraphs.finish();
+
+        assertEquals(List.of("病歷摘要", "日期\t診斷\t", "2024-01-02\t第一段\n第二段\t", "", "結尾"), lines);
+    }
+
+    @Test
+    void tableAtTheEndOfADocIsClosed() {
+        List<String> lines = new ArrayList<>();
+        WordStreamReader.DocParagraphs paragraphs = new WordStreamReader.DocParagraphs(lines::add);
+        paragraphs.accept("a\u0007", true, false);
+        paragraphs.accept("\u0007", true, true);
+        paragraphs.finish();
+
+        assertEquals(List.of("a\t", ""), lines);
+    }
+}
@@ -0,0 +1,230 @@
+package com.amazon.aws.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    void waitersAreGrantedInArrivalOrder() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        AdaptiveConcurrencyLimiter.Permit held = limiter.acquireAsync().join();
+        List<Integer> order = new ArrayList<>();
+        List<CompletableFuture<AdaptiveConcurrencyLimiter.Permit>> waiters = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int index = i;
+            CompletableFuture<AdaptiveConcurrencyLimiter.Permit> waiter = limiter.acquireAsync();
+            waiter.thenAccept(permit -> order.add(index));
+            waiters.add(waiter);
+        }
+        assertEquals(3, limiter.getQueueDepth());
+
+        held.onDropped();
+        for (CompletableFuture<AdaptiveConcurrencyLimiter.Permit> waiter : waiters) {
+            waiter.join().onDropped();
+        }
+
+        assertEquals(List.of(0, 1, 2), order);
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    void callsBeyondTheLimitWait() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10);
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> first = limiter.acquireAsync();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> second = limiter.acquireAsync();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> third = limiter.acquireAsync();
+
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertFalse(third.isDone());
+        assertEquals(2, limiter.getInFlight());
+
+        first.join().onDropped();
+        assertTrue(third.isDone());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void successRaisesTheLimitByOneOverTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 10);
+        limiter.acquireAsync().join().onSuccess();
+        assertEquals(2, limiter.getLimit());
+
+        AdaptiveConcurrencyLimiter capped = new AdaptiveConcurrencyLimiter(3, 1, 3);
+        capped.acquireAsync().join().onSuccess();
+        assertEquals(3, capped.getLimit());
+    }
+
+    @Test
+    void throttlingHalvesTheLimitDownToTheMinimum() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(8, 3, 10);
+        limiter.acquireAsync().join().onThrottled();
+        assertEquals(4, limiter.getLimit());
+        limiter.acquireAsync().join().onThrottled();
+        assertEquals(3, limiter.getLimit());
+        assertEquals(2, limiter.getThrottles());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void slowCallLowersTheLimit() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+        limiter.acquireAsync().join().onSuccess();
+        assertEquals(10, limiter.getLimit());
+
+        // Far slower than the first call, 10.1 * 0.9
+        AdaptiveConcurrencyLimiter.Permit slow = limiter.acquireAsync().join();
+        Thread.sleep(50);
+        slow.onSuccess();
+        assertEquals(9, limiter.getLimit());
+    }
+
+    @Test
+    void longStreamIsJudgedByItsFirstByte() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+        limiter.acquireAsync().join().onSuccess();
+
+        // The stream outlasts the first call by far, but its first byte came at once
+        AdaptiveConcurrencyLimiter.Permit stream = limiter.acquireAsync().join();
+        stream.onFirstByte();
+        Thread.sleep(50);
+        stream.onSuccess();
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void streamsAndWholeCallsKeepSeparateAverages() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 100);
+        AdaptiveConcurrencyLimiter.Permit stream = limiter.acquireAsync().join();
+        stream.onFirstByte();
+        stream.onSuccess();
+
+        // A whole call slower than the first byte of the stream is the first call of its own average
+        AdaptiveConcurrencyLimiter.Permit call = limiter.acquireAsync().join();
+        Thread.sleep(50);
+        call.onSuccess();
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    void droppedCallLeavesTheLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 10);
+        limiter.acquireAsync().join().onDropped();
+        assertEquals(4, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getThrottles());
+    }
+
+    @Test
+    void permitIsReleasedOnlyOnce() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquireAsync().join();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> waiter = limiter.acquireAsync();
+
+        permit.onSuccess();
+        permit.onDropped();
+        permit.onThrottled();
+
+        assertTrue(waiter.isDone());
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(0, limiter.getThrottles());
+    }
+
+    @Test
+    void cancelledWaiterLeavesTheQueue() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        AdaptiveConcurrencyLimiter.Permit held = limiter.acquireAsync().join();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> cancelled = limiter.acquireAsync();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> next = limiter.acquireAsync();
+
+        cancelled.cancel(false);
+        assertEquals(1, limiter.getQueueDepth());
+
+        held.onDropped();
+        assertTrue(next.isDone());
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    void permitOfACancelledDependentMustBeHandedBack() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        AdaptiveConcurrencyLimiter.Permit held = limiter.acquireAsync().join();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> slot = limiter.acquireAsync();
+        CompletableFuture<Void> dependent = slot.thenAccept(AdaptiveConcurrencyLimiter.Permit::onSuccess);
+
+        // Cancelling the dependent does not withdraw the waiter, its permit is granted but never released
+        dependent.cancel(true);
+        held.onDropped();
+        assertTrue(slot.isDone());
+        assertEquals(1, limiter.getInFlight());
+
+        slot.join().onDropped();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void interruptedAcquireLeavesNothingBehind() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1);
+        AdaptiveConcurrencyLimiter.Permit held = limiter.acquireAsync().join();
+
+        Thread.currentThread().interrupt();
+        assertThrows(InterruptedException.class, limiter::acquire);
+        assertEquals(0, limiter.getQueueDepth());
+
+        held.onDropped();
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void waitersLetThroughByAReleaseAreCompletedOnTheGrantExecutor() {
+        List<Runnable> grants = new ArrayList<>();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, grants::add);
+        // Nothing is held, the caller gets its permit at once
+        AdaptiveConcurrencyLimiter.Permit held = limiter.acquireAsync().join();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> waiter = limiter.acquireAsync();
+
+        held.onSuccess();
+        assertFalse(waiter.isDone());
+        assertEquals(1, grants.size());
+        assertEquals(1, limiter.getInFlight());
+
+        grants.get(0).run();
+        assertTrue(waiter.isDone());
+    }
+
+    @Test
+    void grantToAWaiterCancelledMeanwhileGoesToTheNext() {
+        List<Runnable> grants = new ArrayList<>();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, grants::add);
+        AdaptiveConcurrencyLimiter.Permit held = limiter.acquireAsync().join();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> cancelled = limiter.acquireAsync();
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> next = limiter.acquireAsync();
+
+        held.onDropped();
+        cancelled.cancel(false);
+        grants.get(0).run();
+
+        assertTrue(next.isDone());
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    void limitsAreValidated() {
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(1, 0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(1, 2, 3));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(4, 1, 3));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptiveConcurrencyLimiter(2, 3, 2));
+    }
+}
@@ -0,0 +1,108 @@
+package com.amazon.aws.util;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class BedrockRequestBodyTest {
+
+    // Characters JSONObject.quote treats specially, plus multi-byte UTF-8 and surrogates
+    private static final String PALETTE = "a<>/\\\"\b\t\n\f\r\u0000\u0001\u001f\u007f\u0080\u009f\u00a0\u00e9"
+        + "\u07ff\u0800\u1fff\u2000\u2028\u2029\u20ac\u20ff\u2100\u4e2d\ud83d\ude00\ufffd\uffff";
+
+    private static final List<String> ADVERSARIAL = List.of(
+        "",
+        "</script>",
+        "<</",
+        "<\\/",
+        "a/b</c>/",
+        "\u0000\u0001\u0002\u0003\u0004\u0005\u0006\u0007\b\t\n\u000b\f\r\u000e\u000f\u0010\u001f",
+        "\u007f\u0080\u0085\u009f\u00a0",
+        "\u2000\u2028\u2029\u20ac\u20ff\u2100",
+        "\ud83d\ude00 \ud83c\udfe5",
+        "\ud83d",
+        "\ude00",
+        "x\ud83d",
+        "\ude00\ud83d",
+        "<\ud83d\ude00/",
+        "\"quoted\" \\backslash\\",
+        "\u75c5\u6b77\u6458\u8981\uff1a\t2024-01-01\t08\uff1a00\t",
+        "__BEDROCK_PROMPT_PLACEHOLDER__");
+
+    private static final Map<String, Map<String, Object>> MODELS = Map.of(
+        "anthropic.claude-3-sonnet-20240229-v1:0", Map.of("max_tokens", 2048, "temperature", 0.5, "top_k", 250),
+        "anthropic.claude-v2", Map.of(),
+        "amazon.titan-text-express-v1", Map.of("maxTokenCount", 1024),
+        "ai21.j2-mid-v1", Map.of("maxTokens", 300),
+        "cohere.command-text-v14", Map.of("max_tokens", 200));
+
+    @Test
+    void templateEscapesLikeJsonObject() {
+        BodyTemplate template = BodyTemplate.compile(
+            new JSONObject(Map.of("text", BodyTemplate.PLACEHOLDER)).toString());
+        for (String prompt : prompts()) {
+            assertArrayEquals(new JSONObject(Map.of("text", prompt)).toString().getBytes(StandardCharsets.UTF_8),
+                template.render(prompt), () -> "prompt " + describe(prompt));
+        }
+    }
+
+    @Test
+    void buildMatchesCommandOutput() {
+        for (Map.Entry<String, Map<String, Object>> model : MODELS.entrySet()) {
+            for (String prompt : prompts()) {
+                BedrockRequestBody.BedrockRequestBodyBuilder builder = BedrockRequestBody.builder()
+                    .withModelId(model.getKey())
+                    .withPrompt(prompt)
+                    .withRole("user")
+                    .withContentType("application/json")
+                    .withAccept("application/json");
+                model.getValue().forEach(builder::withInferenceParameter);
+
+                assertArrayEquals(expected(model.getKey(), prompt, model.getValue()), builder.buildBytes(),
+                    () -> model.getKey() + " prompt " + describe(prompt));
+            }
+        }
+    }
+
+    private static byte[] expected(String modelId, String prompt, Map<String, Object> parameters) {
+        Map<String, Object> inferenceParameters = new HashMap<>(parameters);
+        BedrockBodyCommand command = switch (ModelProfile.of(modelId)) {
+            case TITAN -> new AmazonTitanCommand(prompt, inferenceParameters, null, "user");
+            case JURASSIC -> new AI21LabsCommand(prompt, inferenceParameters, null, "user");
+            case CLAUDE_3, CLAUDE -> new AnthropicCommand(prompt, inferenceParameters, null, "user",
+                "application/json", "application/json");
+            case COMMAND -> new CohereCommand(prompt, inferenceParameters, null, "user");
+        };
+        return command.execute().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> prompts() {
+        List<String> prompts = new ArrayList<>(ADVERSARIAL);
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder prompt = new StringBuilder();
+            int length = random.nextInt(24);
+            for (int j = 0; j < length; j++) {
+                prompt.append(random.nextInt(4) == 0
+                    ? (char) random.nextInt(Character.MAX_VALUE + 1)
+                    : PALETTE.charAt(random.nextInt(PALETTE.length())));
+            }
+            prompts.add(prompt.toString());
+        }
+        return prompts;
+    }
+
+    private static String describe(String prompt) {
+        StringBuilder description = new StringBuilder();
+        prompt.chars().forEach(c -> description.append(String.format("\\u%04x", c)));
+        return description.toString();
+    }
+}
@@ -0,0 +1,60 @@
+package com.amazon.aws.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IncrementalSummaryStoreTest {
+
+    private final IncrementalSummaryStore store = new IncrementalSummaryStore(2);
+
+    @Test
+    void unchangedSegmentsReuseTheirSummaries() {
+        store.update("r1", List.of("seg a", "seg b"), List.of("sum a", "sum b"));
+
+        assertEquals("sum a", store.stableSummary("r1", 0, "seg a"));
+        assertEquals("sum b", store.stableSummary("r1", 1, "seg b"));
+    }
+
+    @Test
+    void changedOrNewSegmentsAreMisses() {
+        store.update("r1", List.of("seg a", "seg b"), List.of("sum a", "sum b"));
+
+        assertNull(store.stableSummary("r1", 1, "seg b grew"));
+        assertNull(store.stableSummary("r1", 2, "seg c"));
+        assertNull(store.stableSummary("r2", 0, "seg a"));
+    }
+
+    @Test
+    void recordsWithoutAnIdAreNotKept() {
+        store.update(null, List.of("seg a"), List.of("sum a"));
+        store.update(" ", List.of("seg a"), List.of("sum a"));
+
+        assertNull(store.stableSummary(null, 0, "seg a"));
+        assertNull(store.stableSummary(" ", 0, "seg a"));
+    }
+
+    @Test
+    void leastRecentlyUsedRecordIsDropped() {
+        store.update("r1", List.of("a"), List.of("1"));
+        store.update("r2", List.of("b"), List.of("2"));
+        store.stableSummary("r1", 0, "a");
+        store.update("r3", List.of("c"), List.of("3"));
+
+        assertEquals("1", store.stableSummary("r1", 0, "a"));
+        assertNull(store.stableSummary("r2", 0, "b"));
+        assertEquals("3", store.stableSummary("r3", 0, "c"));
+    }
+
+    @Test
+    void latestUpdateReplacesTheRecord() {
+        store.update("r1", List.of("a", "b"), List.of("1", "2"));
+        store.update("r1", List.of("a", "b2"), List.of("1", "2b"));
+
+        assertEquals("2b", store.stableSummary("r1", 1, "b2"));
+        assertNull(store.stableSummary("r1", 1, "b"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.amazon.aws.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelRouteTest {
+
+    private static final String HAIKU = "anthropic.claude-3-haiku-20240307-v1:0";
+    private static final String CLAUDE_V2 = "anthropic.claude-v2";
+    private static final String TITAN = "amazon.titan-text-express-v1";
+
+    private static final Map<String, Object> DEFAULTS = new LinkedHashMap<>();
+    static {
+        DEFAULTS.put("temperature", 0.5);
+        DEFAULTS.put("top_k", 250);
+    }
+
+    @Test
+    void overridesReplaceTheDefaults() {
+        ModelRoute route = ModelRoute.of(HAIKU, CLAUDE_V2, DEFAULTS, "{\"max_tokens\":1024,\"top_k\":10}");
+
+        assertEquals(Map.of("temperature", 0.5, "top_k", 10, "max_tokens", 1024), route.parameters());
+        assertEquals(List.of(HAIKU, CLAUDE_V2), route.models());
+    }
+
+    @Test
+    void misspelledParameterRejectsTheRoute() {
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class,
+            () -> ModelRoute.of(HAIKU, "", DEFAULTS, "{\"max_token\":1024}"));
+        assertTrue(error.getMessage().contains("'max_token'"), error::getMessage);
+    }
+
+    @Test
+    void parameterTheFallbackDoesNotTakeRejectsTheRoute() {
+        assertThrows(IllegalArgumentException.class, () -> ModelRoute.of(HAIKU, TITAN, Map.of(), "{\"top_k\":10}"));
+    }
+
+    @Test
+    void defaultsTheModelDoesNotTakeAreLeftOut() {
+        ModelRoute route = ModelRoute.of(TITAN, "", DEFAULTS, "{\"maxTokenCount\":512}");
+
+        assertEquals(Map.of("temperature", 0.5, "maxTokenCount", 512), route.parameters());
+        assertFalse(route.hasFallback());
+    }
+
+    @Test
+    void unknownModelRejectsTheRoute() {
+        assertThrows(IllegalArgumentException.class, () -> ModelRoute.of("anthropic.claude-9", "", DEFAULTS, ""));
+    }
+}
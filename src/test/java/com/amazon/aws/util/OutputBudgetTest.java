@@ -0,0 +1,61 @@
+package com.amazon.aws.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutputBudgetTest {
+
+    private static final String CLAUDE_3 = "anthropic.claude-3-haiku-20240307-v1:0";
+    private static final String TITAN = "amazon.titan-text-express-v1";
+
+    private final OutputBudget budget = new OutputBudget(new TokenEstimator(), 0.25, 256);
+
+    @Test
+    void expectedSummaryIsRoundedUpToAMultipleOf256() {
+        Map<String, Object> parameters = Map.of("temperature", 0.5);
+
+        // 256 + 1000 * 0.25 = 506
+        assertEquals(Map.of("temperature", 0.5, "max_tokens", 512), budget.parameters(CLAUDE_3, parameters, 1000));
+        assertEquals(Map.of("max_tokens", 256), budget.parameters(CLAUDE_3, Map.of(), 0));
+        assertEquals(Map.of("temperature", 0.5), parameters);
+    }
+
+    @Test
+    void budgetIsCappedByTheModelOutputLimitAndTheRemainingContext() {
+        assertEquals(Map.of("max_tokens", 4096), budget.parameters(CLAUDE_3, Map.of(), 100000));
+        // 8192 - 7000 tokens left in the context, under the expected 2048
+        assertEquals(Map.of("maxTokenCount", 1192), budget.parameters(TITAN, Map.of(), 7000));
+    }
+
+    @Test
+    void explicitCapIsKept() {
+        Map<String, Object> parameters = Map.of("max_tokens", 100);
+        assertSame(parameters, budget.parameters(CLAUDE_3, parameters, 50000));
+    }
+
+    @Test
+    void promptThatLeavesNoRoomForTheSummaryIsRejected() {
+        assertTrue(budget.fits(TITAN, 8192 - 256));
+        assertFalse(budget.fits(TITAN, 8192 - 255));
+
+        PromptTooLargeException error = assertThrows(PromptTooLargeException.class,
+            () -> budget.parameters(TITAN, Map.of("maxTokenCount", 100), 8000));
+        assertEquals(TITAN, error.getModelId());
+        assertEquals(8000, error.getEstimatedTokens());
+        assertEquals(8192, error.getContextTokens());
+    }
+
+    @Test
+    void inputTokensUseTheEstimator() {
+        assertEquals(new TokenEstimator().estimate("病歷摘要 abc"), budget.inputTokens("病歷摘要 abc"));
+        assertThrows(IllegalArgumentException.class, () -> new OutputBudget(new TokenEstimator(), 0.25, 0));
+        assertThrows(IllegalArgumentException.class, () -> budget.parameters("meta.llama2-13b-chat-v1", Map.of(), 1));
+    }
+}
@@ -0,0 +1,94 @@
+package com.amazon.aws.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RecordSegmenterTest {
+
+    @Test
+    void incrementalMatchesBatchSegmentation() {
+        Random random = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            List<String> lines = record(random);
+            for (int budget : new int[] {40, 200, 1000, 100000}) {
+                for (int overlap : new int[] {0, 1, 2, 3, 50}) {
+                    assertSameSegments(new RecordSegmenter(budget, overlap), lines);
+                    assertSameSegments(new RecordSegmenter(budget, overlap, new TokenEstimator()), lines);
+                }
+            }
+        }
+    }
+
+    @Test
+    void emptyRecordHasNoSegments() {
+        assertSameSegments(new RecordSegmenter(100, 1), List.of());
+        assertSameSegments(new RecordSegmenter(100, 1), List.of(""));
+    }
+
+    @Test
+    void oversizedEntryBecomesItsOwnSegment() {
+        List<String> lines = List.of("2024-01-01\t08：00\tshort", "2024-01-01\t09：00\t" + "x".repeat(500),
+            "2024-01-01\t10：00\tshort");
+        RecordSegmenter segmenter = new RecordSegmenter(100, 0);
+
+        assertEquals(3, segmenter.segment(joined(lines)).size());
+        assertSameSegments(segmenter, lines);
+    }
+
+    @Test
+    void overlapIsCappedAtHalfASegment() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            lines.add(String.format("2024-01-01\t08：%02d\t%s", i, "x".repeat(7)));
+        }
+        // Four entries of 25 characters fit in a segment
+        RecordSegmenter segmenter = new RecordSegmenter(100, 10);
+
+        List<String> segments = segmenter.segment(joined(lines));
+        assertEquals(9, segments.size());
+        assertEquals(4, RecordSegmenter.splitEntries(segments.get(0)).size());
+        assertEquals(RecordSegmenter.splitEntries(segments.get(0)).subList(2, 4),
+            RecordSegmenter.splitEntries(segments.get(1)).subList(0, 2));
+        assertSameSegments(segmenter, lines);
+    }
+
+    private static void assertSameSegments(RecordSegmenter segmenter, List<String> lines) {
+        List<String> segments = new ArrayList<>();
+        try (RecordSegmenter.Incremental incremental = segmenter.incremental(segments::add)) {
+            lines.forEach(incremental);
+        }
+        assertEquals(segmenter.segment(joined(lines)), segments,
+            () -> "budget " + segmenter.getBudget() + " lines " + lines);
+    }
+
+    private static String joined(List<String> lines) {
+        StringBuilder text = new StringBuilder();
+        lines.forEach(line -> text.append(line).append('\n'));
+        return text.toString();
+    }
+
+    // Lines with text before the first entry, blank lines, several entries on one line and entries of any size
+    private static List<String> record(Random random) {
+        List<String> lines = new ArrayList<>();
+        int count = random.nextInt(30);
+        for (int i = 0; i < count; i++) {
+            StringBuilder line = new StringBuilder();
+            int parts = random.nextInt(3);
+            for (int j = 0; j < parts; j++) {
+                if (random.nextInt(3) > 0) {
+                    line.append(String.format("2024-%02d-%02d\t%02d：%02d\t", 1 + random.nextInt(12),
+                        1 + random.nextInt(28), random.nextInt(24), random.nextInt(60)));
+                }
+                line.append("護理紀錄 衛教指導 ".repeat(random.nextInt(4)))
+                    .append("x".repeat(random.nextInt(random.nextInt(10) == 0 ? 400 : 60)));
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+}
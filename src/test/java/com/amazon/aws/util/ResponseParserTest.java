@@ -0,0 +1,140 @@
+package com.amazon.aws.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResponseParserTest {
+
+    private static final String CLAUDE_3 = "anthropic.claude-3-haiku-20240307-v1:0";
+    private static final String CLAUDE = "anthropic.claude-v2";
+    private static final String TITAN = "amazon.titan-text-express-v1";
+    private static final String COHERE = "cohere.command-text-v14";
+    private static final String AI21 = "ai21.j2-mid-v1";
+
+    @Test
+    void anthropicMessagesJoinTheTextBlocks() {
+        ResponseParser.ModelResponse response = parse(CLAUDE_3, "{\"id\":\"msg_1\",\"type\":\"message\","
+            + "\"content\":[{\"type\":\"text\",\"text\":\"病歷\"},{\"type\":\"tool_use\",\"id\":\"t\",\"input\":{\"a\":[1]}},"
+            + "{\"type\":\"text\",\"text\":\"摘要\"}],\"stop_sequence\":null,"
+            + "\"usage\":{\"input_tokens\":10,\"output_tokens\":6},\"stop_reason\":\"end_turn\"}");
+
+        assertEquals(new ResponseParser.ModelResponse("病歷摘要", 10, 6, "end_turn"), response);
+    }
+
+    @Test
+    void anthropicTextCompletion() {
+        assertEquals(new ResponseParser.ModelResponse(" summary", 0, 0, "stop_sequence"),
+            parse(CLAUDE, "{\"completion\":\" summary\",\"stop_reason\":\"stop_sequence\",\"stop\":\"\\n\\nHuman:\"}"));
+    }
+
+    @Test
+    void titanResults() {
+        assertEquals(new ResponseParser.ModelResponse("titan", 12, 40, "FINISH"),
+            parse(TITAN, "{\"inputTextTokenCount\":12,"
+                + "\"results\":[{\"tokenCount\":40,\"outputText\":\"titan\",\"completionReason\":\"FINISH\"}]}"));
+    }
+
+    @Test
+    void cohereGenerations() {
+        assertEquals(new ResponseParser.ModelResponse("cohere", 5, 20, "COMPLETE"),
+            parse(COHERE, "{\"id\":\"c\",\"generations\":[{\"id\":\"g\",\"text\":\"cohere\",\"finish_reason\":\"COMPLETE\"}],"
+                + "\"prompt\":\"p\",\"meta\":{\"api_version\":{\"version\":\"1\"},"
+                + "\"billed_units\":{\"input_tokens\":5,\"output_tokens\":20}}}"));
+    }
+
+    @Test
+    void ai21CountsTheTokenArrays() {
+        assertEquals(new ResponseParser.ModelResponse("jurassic", 2, 3, "endoftext"),
+            parse(AI21, "{\"id\":1,\"prompt\":{\"text\":\"p\",\"tokens\":[{\"token\":\"a\"},{\"token\":\"b\"}]},"
+                + "\"completions\":[{\"data\":{\"text\":\"jurassic\",\"tokens\":[{},{},{\"t\":[1,2]}]},"
+                + "\"finishReason\":{\"reason\":\"endoftext\"}}]}"));
+    }
+
+    @Test
+    void emptyResultIsAValidAnswer() {
+        assertEquals("", parse(CLAUDE_3, "{\"content\":[],\"stop_reason\":\"max_tokens\"}").text());
+        assertEquals("", parse(TITAN, "{\"results\":[]}").text());
+    }
+
+    @Test
+    void extractTextFromResponseReadsAnthropicResponses() {
+        assertEquals("text", ResponseParser.extractTextFromResponse("{\"content\":[{\"type\":\"text\",\"text\":\"text\"}]}"));
+    }
+
+    @Test
+    void malformedJson() {
+        assertReason(ResponseParseException.Reason.MALFORMED_JSON, CLAUDE_3, "not json");
+        assertReason(ResponseParseException.Reason.MALFORMED_JSON, CLAUDE_3, "");
+        assertReason(ResponseParseException.Reason.MALFORMED_JSON, CLAUDE_3, "{\"content\":[{\"type\":\"text\",\"text\":\"cut");
+        assertReason(ResponseParseException.Reason.MALFORMED_JSON, TITAN, "{\"results\":[{\"outputText\":\"t\"}]");
+    }
+
+    @Test
+    void unexpectedShape() {
+        assertReason(ResponseParseException.Reason.UNEXPECTED_SHAPE, CLAUDE_3, "[]");
+        assertReason(ResponseParseException.Reason.UNEXPECTED_SHAPE, CLAUDE_3, "{\"content\":\"text\"}");
+        assertReason(ResponseParseException.Reason.UNEXPECTED_SHAPE, CLAUDE_3,
+            "{\"content\":[],\"usage\":{\"input_tokens\":\"10\"}}");
+        assertReason(ResponseParseException.Reason.UNEXPECTED_SHAPE, TITAN, "{\"results\":[{\"outputText\":1}]}");
+        assertReason(ResponseParseException.Reason.UNEXPECTED_SHAPE, COHERE, "{\"generations\":{\"text\":\"c\"}}");
+        assertReason(ResponseParseException.Reason.UNEXPECTED_SHAPE, AI21, "{\"completions\":[{\"data\":\"text\"}]}");
+    }
+
+    @Test
+    void missingTextKeepsTheModelMessage() {
+        ResponseParseException error = assertReason(ResponseParseException.Reason.MISSING_TEXT, CLAUDE_3,
+            "{\"message\":\"Too many input tokens\"}");
+        assertTrue(error.getMessage().contains("Too many input tokens"), error.getMessage());
+
+        assertReason(ResponseParseException.Reason.MISSING_TEXT, TITAN, "{\"inputTextTokenCount\":12}");
+        assertReason(ResponseParseException.Reason.MISSING_TEXT, COHERE, "{\"meta\":{}}");
+        assertReason(ResponseParseException.Reason.MISSING_TEXT, AI21, "{}");
+    }
+
+    @Test
+    void unsupportedModel() {
+        assertThrows(IllegalArgumentException.class, () -> parse("meta.llama2-13b-chat-v1", "{}"));
+    }
+
+    @Test
+    void streamChunks() {
+        assertEquals("病歷", chunk(CLAUDE_3, "{\"type\":\"content_block_delta\",\"index\":0,"
+            + "\"delta\":{\"type\":\"text_delta\",\"text\":\"病歷\"}}"));
+        assertEquals("", chunk(CLAUDE_3, "{\"type\":\"message_start\",\"message\":{\"id\":\"m\",\"content\":[]}}"));
+        assertEquals("", chunk(CLAUDE_3, "{\"type\":\"message_stop\"}"));
+        assertEquals(" hi", chunk(CLAUDE, "{\"completion\":\" hi\",\"stop_reason\":null}"));
+        assertEquals("titan", chunk(TITAN, "{\"outputText\":\"titan\",\"index\":0,\"totalOutputTextTokenCount\":1}"));
+        assertEquals("cohere", chunk(COHERE, "{\"text\":\"cohere\",\"is_finished\":false}"));
+        assertEquals("g", chunk(COHERE, "{\"is_finished\":true,\"generations\":[{\"text\":\"g\",\"finish_reason\":\"COMPLETE\"}]}"));
+    }
+
+    @Test
+    void streamChunkErrors() {
+        assertThrows(IllegalArgumentException.class, () -> chunk(AI21, "{\"completion\":\"x\"}"));
+
+        ResponseParseException malformed = assertThrows(ResponseParseException.class, () -> chunk(CLAUDE_3, "{\"type\":"));
+        assertEquals(ResponseParseException.Reason.MALFORMED_JSON, malformed.getReason());
+
+        ResponseParseException shape = assertThrows(ResponseParseException.class, () -> chunk(CLAUDE_3, "[]"));
+        assertEquals(ResponseParseException.Reason.UNEXPECTED_SHAPE, shape.getReason());
+    }
+
+    private static ResponseParser.ModelResponse parse(String modelId, String body) {
+        return ResponseParser.parse(modelId, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String chunk(String modelId, String body) {
+        return ResponseParser.extractTextFromStreamChunk(modelId, body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ResponseParseException assertReason(ResponseParseException.Reason reason, String modelId, String body) {
+        ResponseParseException error = assertThrows(ResponseParseException.class, () -> parse(modelId, body));
+        assertEquals(reason, error.getReason(), () -> body + ": " + error.getMessage());
+        return error;
+    }
+}
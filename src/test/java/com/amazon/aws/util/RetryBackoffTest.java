@@ -0,0 +1,86 @@
+package com.amazon.aws.util;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+
+import java.io.IOException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryBackoffTest {
+
+    @Test
+    void delayStaysUnderTheExponentialCeiling() {
+        RetryBackoff backoff = new RetryBackoff(6, 100, 5000);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(backoff.delayMillis(0) <= 100);
+            assertTrue(backoff.delayMillis(3) <= 800);
+            assertTrue(backoff.delayMillis(10) <= 5000);
+            // Large attempts must not overflow the shift
+            long delay = backoff.delayMillis(100);
+            assertTrue(delay >= 0 && delay <= 5000);
+        }
+    }
+
+    @Test
+    void throttlingIsRecognizedThroughWrappers() {
+        AwsServiceException throttled = serviceException(429, "ThrottlingException");
+
+        assertTrue(RetryBackoff.isThrottling(throttled));
+        assertTrue(RetryBackoff.isThrottling(new CompletionException(new ExecutionException(throttled))));
+        assertTrue(RetryBackoff.isRetryable(new CompletionException(throttled)));
+        assertFalse(RetryBackoff.isThrottling(serviceException(500, "InternalServerException")));
+    }
+
+    @Test
+    void serverAndClientErrorsAreRetryable() {
+        assertTrue(RetryBackoff.isRetryable(serviceException(500, "InternalServerException")));
+        assertTrue(RetryBackoff.isRetryable(serviceException(503, "ServiceUnavailableException")));
+        assertTrue(RetryBackoff.isRetryable(
+            SdkClientException.create("Unable to execute HTTP request", new IOException("Connection reset"))));
+        assertTrue(RetryBackoff.isRetryable(SdkClientException.create("Unable to execute HTTP request",
+            new CompletionException(new TimeoutException("Read timed out")))));
+        assertTrue(RetryBackoff.isRetryable(ApiCallAttemptTimeoutException.create(1000)));
+        assertTrue(RetryBackoff.isRetryable(ApiCallTimeoutException.create(1000)));
+    }
+
+    @Test
+    void clientErrorsWithoutAnIoCauseAreNotRetried() {
+        assertFalse(RetryBackoff.isRetryable(SdkClientException.create("Unable to load credentials")));
+        assertFalse(RetryBackoff.isRetryable(
+            SdkClientException.create("Unable to marshall request", new IllegalArgumentException("bad body"))));
+        assertFalse(RetryBackoff.isRetryable(new CompletionException(SdkClientException.create("No region"))));
+    }
+
+    @Test
+    void rejectedRequestsAreNotRetried() {
+        assertFalse(RetryBackoff.isRetryable(serviceException(400, "ValidationException")));
+        assertFalse(RetryBackoff.isRetryable(new IllegalStateException("bad response")));
+    }
+
+    @Test
+    void unwrapReturnsTheInnermostCause() {
+        IllegalStateException cause = new IllegalStateException("cause");
+        assertSame(cause, RetryBackoff.unwrap(new CompletionException(new ExecutionException(cause))));
+        assertSame(cause, RetryBackoff.unwrap(cause));
+
+        CompletionException empty = new CompletionException("no cause", null);
+        assertSame(empty, RetryBackoff.unwrap(empty));
+    }
+
+    private static AwsServiceException serviceException(int status, String errorCode) {
+        return AwsServiceException.builder()
+            .statusCode(status)
+            .awsErrorDetails(AwsErrorDetails.builder().errorCode(errorCode).errorMessage(errorCode).build())
+            .build();
+    }
+}
@@ -0,0 +1,140 @@
+package com.amazon.aws.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String> flights = new SingleFlight<>();
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void concurrentCallsShareOneExecution() throws Exception {
+        CompletableFuture<String> work = new CompletableFuture<>();
+        CompletableFuture<String> leader = flights.execute("key", () -> start(work));
+        CompletableFuture<String> follower = flights.execute("key", () -> start(new CompletableFuture<>()));
+
+        assertEquals(1, calls.get());
+        assertEquals(1, flights.size());
+        assertFalse(follower.isDone());
+
+        work.complete("summary");
+        assertEquals("summary", leader.get());
+        assertEquals("summary", follower.get());
+        assertEquals(1, flights.getLeaders());
+        assertEquals(1, flights.getCoalesced());
+        assertEquals(0, flights.size());
+    }
+
+    @Test
+    void differentKeysRunSeparately() {
+        flights.execute("a", () -> start(new CompletableFuture<>()));
+        flights.execute("b", () -> start(new CompletableFuture<>()));
+
+        assertEquals(2, calls.get());
+        assertEquals(2, flights.size());
+    }
+
+    @Test
+    void completedFlightIsNotReused() throws Exception {
+        assertEquals("first", flights.execute("key", () -> start(CompletableFuture.completedFuture("first"))).get());
+        assertEquals("second", flights.execute("key", () -> start(CompletableFuture.completedFuture("second"))).get());
+
+        assertEquals(2, calls.get());
+        assertEquals(0, flights.getCoalesced());
+    }
+
+    @Test
+    void failureReachesEveryCaller() {
+        CompletableFuture<String> work = new CompletableFuture<>();
+        CompletableFuture<String> leader = flights.execute("key", () -> start(work));
+        CompletableFuture<String> follower = flights.execute("key", () -> start(new CompletableFuture<>()));
+
+        IllegalStateException failure = new IllegalStateException("throttled");
+        work.completeExceptionally(failure);
+
+        assertSame(failure, assertThrows(ExecutionException.class, leader::get).getCause());
+        assertSame(failure, assertThrows(ExecutionException.class, follower::get).getCause());
+        assertEquals(0, flights.size());
+    }
+
+    @Test
+    void throwingSupplierFailsTheFlight() {
+        CompletableFuture<String> result = flights.execute("key", () -> {
+            throw new IllegalArgumentException("bad prompt");
+        });
+
+        assertTrue(assertThrows(ExecutionException.class, result::get).getCause() instanceof IllegalArgumentException);
+        assertEquals(0, flights.size());
+    }
+
+    @Test
+    void cancellingOneCallerKeepsTheWorkForOthers() throws Exception {
+        CompletableFuture<String> work = new CompletableFuture<>();
+        CompletableFuture<String> leader = flights.execute("key", () -> start(work));
+        CompletableFuture<String> follower = flights.execute("key", () -> start(new CompletableFuture<>()));
+
+        leader.cancel(true);
+        assertFalse(work.isCancelled());
+
+        work.complete("summary");
+        assertEquals("summary", follower.get());
+    }
+
+    @Test
+    void cancelledWorkIsRestartedForWaitingCallers() throws Exception {
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        flights.execute("key", () -> start(first));
+        CompletableFuture<String> follower = flights.execute("key", () -> start(second));
+
+        first.cancel(true);
+        assertEquals(2, calls.get());
+
+        second.complete("summary");
+        assertEquals("summary", follower.get());
+        assertEquals(0, flights.size());
+    }
+
+    @Test
+    void stateLivesAndDiesWithTheFlight() throws Exception {
+        CompletableFuture<String> work = new CompletableFuture<>();
+        List<List<String>> states = new ArrayList<>();
+        CompletableFuture<String> leader = flights.execute("key", ArrayList<String>::new, state -> state.add("leader"),
+            state -> {
+                states.add(state);
+                return start(work);
+            });
+        flights.execute("key", ArrayList<String>::new, state -> state.add("follower"),
+            state -> start(new CompletableFuture<>()));
+        assertEquals(List.of(List.of("leader", "follower")), states);
+
+        work.complete("summary");
+        assertEquals("summary", leader.get());
+
+        // A caller after completion gets a new flight with a new state
+        flights.execute("key", ArrayList<String>::new, state -> state.add("late"),
+            state -> {
+                states.add(state);
+                return start(CompletableFuture.completedFuture("again"));
+            });
+        assertEquals(List.of(List.of("leader", "follower"), List.of("late")), states);
+        assertEquals(2, calls.get());
+    }
+
+    private CompletableFuture<String> start(CompletableFuture<String> work) {
+        calls.incrementAndGet();
+        return work;
+    }
+}
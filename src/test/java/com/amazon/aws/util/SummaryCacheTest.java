@@ -0,0 +1,116 @@
+package com.amazon.aws.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SummaryCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void keyDependsOnModelParametersAndPromptButNotParameterOrder() {
+        String key = SummaryCache.key("model", Map.of("a", 1, "b", 2), "prompt");
+
+        assertEquals(key, SummaryCache.key("model", Map.of("b", 2, "a", 1), "prompt"));
+        assertNotEquals(key, SummaryCache.key("other", Map.of("a", 1, "b", 2), "prompt"));
+        assertNotEquals(key, SummaryCache.key("model", Map.of("a", 1), "prompt"));
+        assertNotEquals(key, SummaryCache.key("model", Map.of("a", 1, "b", 2), "prompt2"));
+    }
+
+    @Test
+    void hitsAndMissesAreCounted() {
+        SummaryCache cache = new SummaryCache(10, Duration.ofMinutes(1), null);
+        assertNull(cache.get("a"));
+        cache.put("a", "summary");
+        assertEquals("summary", cache.get("a"));
+
+        assertEquals(1, cache.getMemoryHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void peekDoesNotCount() {
+        SummaryCache cache = new SummaryCache(10, Duration.ofMinutes(1), directory);
+        assertNull(cache.peek("a"));
+        cache.put("a", "summary");
+        assertEquals("summary", cache.peek("a"));
+        assertEquals("summary", new SummaryCache(10, Duration.ofMinutes(1), directory).peek("a"));
+
+        assertEquals(0, cache.getMemoryHits());
+        assertEquals(0, cache.getDiskHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    void leastRecentlyUsedEntryLeavesMemory() {
+        SummaryCache cache = new SummaryCache(2, Duration.ofMinutes(1), null);
+        cache.put("a", "1");
+        cache.put("b", "2");
+        cache.get("a");
+        cache.put("c", "3");
+
+        assertEquals(2, cache.size());
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    void diskEntriesSurviveARestart() {
+        new SummaryCache(10, Duration.ofMinutes(1), directory).put("a", "病歷摘要");
+
+        SummaryCache restarted = new SummaryCache(10, Duration.ofMinutes(1), directory);
+        assertEquals("病歷摘要", restarted.get("a"));
+        assertEquals(1, restarted.getDiskHits());
+    }
+
+    @Test
+    void expiredDiskEntriesAreDropped() throws Exception {
+        new SummaryCache(10, Duration.ofMinutes(1), directory).put("a", "summary");
+        Files.setLastModifiedTime(directory.resolve("a.txt"), FileTime.from(Instant.now().minusSeconds(120)));
+
+        assertNull(new SummaryCache(10, Duration.ofMinutes(1), directory).get("a"));
+        assertFalse(Files.exists(directory.resolve("a.txt")));
+    }
+
+    @Test
+    void sweepKeepsTheDiskUnderTheCap() throws Exception {
+        SummaryCache unbounded = new SummaryCache(10, Duration.ofMinutes(10), directory);
+        for (int i = 0; i < 5; i++) {
+            unbounded.put("k" + i, "x".repeat(300));
+            // Distinct write times, oldest first
+            Files.setLastModifiedTime(directory.resolve("k" + i + ".txt"),
+                FileTime.from(Instant.now().minusSeconds(60 - i)));
+        }
+
+        // The startup sweep brings the 1500 bytes down to 90% of the cap, so the three most recent entries stay
+        SummaryCache capped = new SummaryCache(10, Duration.ofMinutes(10), directory, 1000);
+        assertFalse(Files.exists(directory.resolve("k0.txt")));
+        assertFalse(Files.exists(directory.resolve("k1.txt")));
+        assertTrue(Files.exists(directory.resolve("k2.txt")));
+        assertTrue(Files.exists(directory.resolve("k4.txt")));
+        assertEquals(2, capped.getDiskEvictions());
+    }
+
+    @Test
+    void startupSweepRemovesStaleTemporaryFiles() throws Exception {
+        Path stale = Files.writeString(directory.resolve("a123.tmp"), "partial");
+        Files.setLastModifiedTime(stale, FileTime.from(Instant.now().minusSeconds(7200)));
+
+        new SummaryCache(10, Duration.ofDays(1), directory);
+        assertFalse(Files.exists(stale));
+    }
+}
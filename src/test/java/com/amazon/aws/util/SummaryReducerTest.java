@@ -0,0 +1,119 @@
+package com.amazon.aws.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SummaryReducerTest {
+
+    @Test
+    void fitsCountsTheInstructions() {
+        SummaryReducer reducer = new SummaryReducer(10);
+        assertTrue(reducer.fits(List.of("abc", "def"), "1234"));
+        assertFalse(reducer.fits(List.of("abc", "def"), "12345"));
+        assertEquals(6, reducer.size(List.of("abc", "def")));
+    }
+
+    @Test
+    void consecutiveSummariesArePackedIntoGroupsThatFit() {
+        SummaryReducer reducer = new SummaryReducer(20);
+        List<List<String>> groups = reducer.groups(List.of("aaaa", "bbbb", "cccc", "dddd", "eeee"), "1234567890");
+
+        assertEquals(List.of(List.of("aaaa", "bbbb"), List.of("cccc", "dddd"), List.of("eeee")), groups);
+    }
+
+    @Test
+    void groupsNeverGoOverTheBudget() {
+        SummaryReducer reducer = new SummaryReducer(20);
+        // Two summaries of 9 do not fit the 10 left by the instructions together, so each is cut in two
+        List<String> summaries = List.of("a".repeat(9), "b".repeat(9), "cc");
+        List<List<String>> groups = reducer.groups(summaries, "1234567890");
+
+        assertEquals(List.of(List.of("aaaaa", "aaaa"), List.of("bbbbb", "bbbb"), List.of("cc")), groups);
+        for (List<String> group : groups) {
+            assertTrue(reducer.fits(group, "1234567890"), group::toString);
+        }
+    }
+
+    @Test
+    void everyGroupButTheLastMergesAtLeastTwoSummaries() {
+        Random random = new Random(5);
+        TokenEstimator estimator = new TokenEstimator();
+        for (int budget : new int[] {60, 200, 1000}) {
+            SummaryReducer reducer = new SummaryReducer(budget, estimator);
+            for (int i = 0; i < 200; i++) {
+                List<String> summaries = new ArrayList<>();
+                for (int j = random.nextInt(12); j > 0; j--) {
+                    summaries.add("病人主訴頭痛 BP 120/80\n".repeat(1 + random.nextInt(budget / 10)));
+                }
+                List<List<String>> groups = reducer.groups(summaries, "請合併");
+
+                assertEquals(String.join("", summaries),
+                    String.join("", groups.stream().map(group -> String.join("", group)).toList()));
+                for (int g = 0; g < groups.size(); g++) {
+                    assertTrue(reducer.fits(groups.get(g), "請合併"), groups.get(g)::toString);
+                    assertTrue(g == groups.size() - 1 || groups.get(g).size() >= 2, groups::toString);
+                }
+            }
+        }
+    }
+
+    @Test
+    void loneOversizedSummaryIsSplitIntoGroups() {
+        List<List<String>> groups = new SummaryReducer(24).groups(List.of("x".repeat(50)), "1234");
+        assertEquals(List.of(List.of("x".repeat(10), "x".repeat(10)), List.of("x".repeat(10), "x".repeat(10)),
+            List.of("x".repeat(10))), groups);
+    }
+
+    @Test
+    void budgetUnitFollowsTheMeasure() {
+        assertEquals("chars", new SummaryReducer(10).getUnit());
+        assertEquals("tokens", new SummaryReducer(10, new TokenEstimator()).getUnit());
+    }
+
+    @Test
+    void oversizedSummaryIsSplitIntoMergeablePieces() {
+        SummaryReducer reducer = new SummaryReducer(24);
+        String summary = "x".repeat(50);
+
+        // (24 - 4) / 2 characters per piece
+        List<String> pieces = reducer.split(summary, "1234");
+        assertEquals(List.of("x".repeat(10), "x".repeat(10), "x".repeat(10), "x".repeat(10), "x".repeat(10)), pieces);
+    }
+
+    @Test
+    void splitPrefersLineBreaks() {
+        SummaryReducer reducer = new SummaryReducer(20);
+        List<String> pieces = reducer.split("aaaaaaa\nbbbbbbb\nccccc", "");
+        assertEquals(List.of("aaaaaaa\n", "bbbbbbb\n", "ccccc"), pieces);
+    }
+
+    @Test
+    void splitByTokensKeepsEveryPieceInBudget() {
+        TokenEstimator estimator = new TokenEstimator();
+        SummaryReducer reducer = new SummaryReducer(200, estimator);
+        StringBuilder summary = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            summary.append("2024-01-").append(10 + i % 20).append(" 病人主訴頭痛，BP 120/80 mmHg 😀\n");
+        }
+
+        List<String> pieces = reducer.split(summary.toString(), "請合併以下摘要");
+        assertEquals(summary.toString(), String.join("", pieces));
+        int limit = (200 - estimator.estimate("請合併以下摘要")) / 2;
+        for (String piece : pieces) {
+            assertTrue(estimator.estimate(piece) <= limit, piece);
+            assertFalse(Character.isLowSurrogate(piece.charAt(0)), piece);
+        }
+    }
+
+    @Test
+    void summaryIsKeptWhenTheInstructionsLeaveNoRoom() {
+        assertEquals(List.of("abc"), new SummaryReducer(5).split("abc", "12345"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.amazon.aws.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TextPreprocessorTest {
+
+    // The regex chain ClaudeContentGeneration applied to every segment before the single-pass pipeline
+    private static final String DATE_TIME_PATTERN = "\\d{4}-\\d{2}-\\d{2}\t\\d{2}：\\d{2}\t";
+    private static final Pattern EDUCATION_SECTION = Pattern.compile("衛教指導.*?(?=" + DATE_TIME_PATTERN + ")", Pattern.DOTALL);
+
+    private static final String[] PIECES = {
+        "2024-01-01\t08：00\t", "2024-12-31\t23：59\t", "衛教指導", "衛教", "指導", "護理紀錄", "病人主訴頭痛",
+        " ", "\t", "\n", "\r\n", "\u000B", "\f", "　", " ", "x", "1", "：", "-",
+        "2024-01-01 08：00\t", "2024-1-01\t08：00\t"
+    };
+
+    private final TextPreprocessor preprocessor = TextPreprocessor.defaultPipeline();
+
+    @Test
+    void matchesTheBaselineRegexChain() {
+        Random random = new Random(11);
+        for (int i = 0; i < 20000; i++) {
+            StringBuilder input = new StringBuilder();
+            int pieces = random.nextInt(40);
+            for (int j = 0; j < pieces; j++) {
+                input.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            assertMatchesBaseline(input.toString());
+        }
+    }
+
+    @Test
+    void educationSectionEdgeCases() {
+        for (String input : List.of(
+            "",
+            "衛教指導",
+            "衛教指導 before the first entry\n2024-01-01\t08：00\tkept\n",
+            "2024-01-01\t08：00\t護理 紀錄 衛教指導 dropped\n2024-01-01\t09：00\tkept\n",
+            // The last entry has no timestamp after it, so the baseline kept its section
+            "2024-01-01\t08：00\t衛教指導 dropped\n2024-01-01\t09：00\t衛教指導 kept\n",
+            "2024-01-01\t08：00\t衛教指導 衛教指導 twice\n2024-01-01\t09：00\t",
+            "2024-01-01\t08：00\t衛教 指導 split by a space\n2024-01-01\t09：00\tx",
+            "衛教指導2024-01-01\t08：00\t")) {
+            assertMatchesBaseline(input);
+        }
+    }
+
+    @Test
+    void segmentsOfTheSampleRecordMatchTheBaseline() {
+        Random random = new Random(3);
+        StringBuilder record = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            record.append(String.format("2024-%02d-%02d\t%02d：%02d\t", 1 + random.nextInt(12), 1 + random.nextInt(28),
+                    random.nextInt(24), random.nextInt(60)))
+                .append("生命徵象穩定 ".repeat(random.nextInt(3)))
+                .append(random.nextInt(4) == 0 ? "衛教指導：多休息、 按時服藥\n" : "")
+                .append("護理紀錄\t完成\n");
+        }
+        for (String segment : new RecordSegmenter(2000, 1).segment(record.toString())) {
+            assertMatchesBaseline(segment);
+        }
+    }
+
+    @Test
+    void processIntoAppendsAfterTheExistingPrompt() {
+        StringBuilder prompt = new StringBuilder("preprompt ");
+        preprocessor.processInto("2024-01-01\t08：00\t衛教指導 x\n2024-01-01\t09：00\ta b\n", prompt);
+        assertEquals("preprompt 2024-01-0108：002024-01-0109：00ab", prompt.toString());
+    }
+
+    @Test
+    void entryStagesMustComeFirst() {
+        // After stripWhitespace the education stage would see pieces of an entry and keep the rest of the section
+        assertThrows(IllegalArgumentException.class, () -> new TextPreprocessor(List.of(
+            TextPreprocessor.stripWhitespace(), TextPreprocessor.dropEducationSections())));
+        new TextPreprocessor(List.of(TextPreprocessor.dropEducationSections(), TextPreprocessor.dropEducationSections(),
+            TextPreprocessor.stripWhitespace()));
+    }
+
+    private void assertMatchesBaseline(String input) {
+        assertEquals(baseline(input), preprocessor.process(input), () -> "input: " + input);
+    }
+
+    private static String baseline(String input) {
+        return EDUCATION_SECTION.matcher(input).replaceAll("").replaceAll("\\s+", "");
+    }
+}
@@ -0,0 +1,44 @@
+package com.amazon.aws.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TokenEstimatorTest {
+
+    private final TokenEstimator estimator = new TokenEstimator();
+
+    @Test
+    void asciiRunsAreSplitIntoShortChunks() {
+        assertEquals(0, estimator.estimate(""));
+        assertEquals(1, estimator.estimate("abcd"));
+        assertEquals(2, estimator.estimate("abcde"));
+        assertEquals(2, estimator.estimate("12345"));
+        // A letter run and a digit run are chunked separately
+        assertEquals(2, estimator.estimate("mg12"));
+        assertEquals(2, estimator.estimate("BP:"));
+    }
+
+    @Test
+    void whitespaceRunIsOneToken() {
+        assertEquals(3, estimator.estimate("a b"));
+        assertEquals(3, estimator.estimate("a \t\n b"));
+    }
+
+    @Test
+    void chineseCostsMoreThanOneTokenPerCharacter() {
+        assertEquals(3, estimator.estimate("病歷"));
+        assertEquals(12, estimator.estimate("病".repeat(10)));
+        assertEquals(2, estimator.estimate("，："));
+        assertEquals(2, estimator.estimate("😀"));
+        assertEquals(2, estimator.estimate("é"));
+    }
+
+    @Test
+    void factorScalesTheEstimate() {
+        assertEquals(2, new TokenEstimator(2.0).estimate("abcd"));
+        assertEquals(5, new TokenEstimator(2.0).estimate("病歷"));
+        assertThrows(IllegalArgumentException.class, () -> new TokenEstimator(0));
+    }
+}